@@ -23,22 +23,47 @@ package com.devicehive.application;
 import com.devicehive.eventbus.FilterRegistry;
 import com.devicehive.eventbus.SubscriberRegistry;
 import com.devicehive.json.GsonFactory;
+import com.devicehive.service.history.FileHistoryStore;
+import com.devicehive.service.history.HistoryStore;
 import com.google.gson.Gson;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import com.devicehive.eventbus.EventBus;
 import com.devicehive.shim.api.server.RpcServer;
 import org.springframework.context.annotation.DependsOn;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.UUID;
+
 @Configuration
 public class BackendConfig {
 
+    @Value("${rpc.server.response.batching:false}")
+    private boolean batchResponses;
+
     @Bean
     public Gson gson() {
         return GsonFactory.createGson();
     }
 
+    @Bean(destroyMethod = "shutdown")
+    public HistoryStore historyStore(Gson gson,
+                                     @Value("${history.store.path:}") String path,
+                                     @Value("${history.store.writer:}") String writer,
+                                     @Value("${history.store.queue-size:65536}") int queueSize,
+                                     @Value("${history.store.batch-size:512}") int batchSize,
+                                     @Value("${history.store.retention:604800000}") long retention) throws IOException {
+        if (path.isEmpty()) {
+            return HistoryStore.NONE;
+        }
+        // segments of a node are never appended to by another one, also not by a restart of the node itself
+        final String writerId = writer.isEmpty() ? UUID.randomUUID().toString() : writer;
+        return new FileHistoryStore(Paths.get(path), writerId, gson, queueSize, batchSize, retention);
+    }
+
     @Bean
     @DependsOn("hazelcast")
     public FilterRegistry filterRegistry() {
@@ -54,6 +79,6 @@ public class BackendConfig {
     @Bean
     @DependsOn("subscriberRegistry")
     public EventBus eventBus(RpcServer rpcServer, SubscriberRegistry subscriberRegistry) {
-        return new EventBus(rpcServer.getDispatcher(), subscriberRegistry);
+        return new EventBus(rpcServer.getDispatcher(), subscriberRegistry, batchResponses);
     }
 }
@@ -21,8 +21,11 @@ package com.devicehive.application.hazelcast;
  */
 
 import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.service.HazelcastService;
+import com.devicehive.service.helpers.HazelcastLocalCaches;
 import com.hazelcast.client.HazelcastClient;
 import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -31,6 +34,9 @@ import org.springframework.context.annotation.PropertySource;
 
 import java.util.List;
 
+import static com.devicehive.model.enums.SearchableField.DEVICE_ID;
+import static com.devicehive.model.enums.SearchableField.TIMESTAMP;
+
 @Configuration
 @PropertySource("classpath:application.properties")
 public class HazelcastConfiguration {
@@ -43,9 +49,17 @@ public class HazelcastConfiguration {
     private List<String> clusterMembers;
     @Value("${hazelcast.client.event.thread.count:5}")
     private String eventThreadCount;
+    @Value("${hazelcast.near-cache.max-size:10000}")
+    private int nearCacheMaxSize;
+    @Value("${hazelcast.near-cache.time-to-live-seconds:120}")
+    private int nearCacheTimeToLive;
+    @Value("${hazelcast.query-cache.batch-size:1}")
+    private int queryCacheBatchSize;
+    @Value("${hazelcast.query-cache.delay-seconds:0}")
+    private int queryCacheDelay;
 
     @Bean
-    public HazelcastInstance hazelcast() throws Exception {
+    public HazelcastInstance hazelcast(HazelcastLocalCaches localCaches) throws Exception {
         ClientConfig clientConfig = new ClientConfig();
         clientConfig.getGroupConfig()
                 .setName(groupName)
@@ -56,6 +70,39 @@ public class HazelcastConfiguration {
                 .addPortableFactory(1, new DevicePortableFactory());
         clientConfig.setProperty("hazelcast.client.event.thread.count", eventThreadCount);
 
+        for (String mapName : new String[]{HazelcastService.NOTIFICATIONS_MAP, HazelcastService.COMMANDS_MAP}) {
+            if (localCaches.isNearCacheEnabled()) {
+                clientConfig.addNearCacheConfig(nearCacheConfig(mapName));
+            }
+            if (localCaches.isQueryCacheEnabled()) {
+                clientConfig.addQueryCacheConfig(mapName, queryCacheConfig(localCaches));
+            }
+        }
+
         return HazelcastClient.newHazelcastClient(clientConfig);
     }
+
+    private NearCacheConfig nearCacheConfig(String mapName) {
+        return new NearCacheConfig(mapName)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                .setInvalidateOnChange(true)
+                .setTimeToLiveSeconds(nearCacheTimeToLive)
+                .setEvictionConfig(new EvictionConfig(nearCacheMaxSize, EvictionConfig.MaxSizePolicy.ENTRY_COUNT,
+                        EvictionPolicy.LRU));
+    }
+
+    private QueryCacheConfig queryCacheConfig(HazelcastLocalCaches localCaches) {
+        return new QueryCacheConfig(HazelcastLocalCaches.QUERY_CACHE_NAME)
+                .setPredicateConfig(new PredicateConfig(localCaches.queryCacheScope()))
+                .setIncludeValue(true)
+                .setPopulate(true)
+                .setBatchSize(queryCacheBatchSize)
+                .setDelaySeconds(queryCacheDelay)
+                .setInMemoryFormat(InMemoryFormat.OBJECT)
+                // an evicted entry would be missing from history answered by the cache
+                .setEvictionConfig(new EvictionConfig(Integer.MAX_VALUE, EvictionConfig.MaxSizePolicy.ENTRY_COUNT,
+                        EvictionPolicy.NONE))
+                .addIndexConfig(new MapIndexConfig(DEVICE_ID.getField(), false))
+                .addIndexConfig(new MapIndexConfig(TIMESTAMP.getField(), true));
+    }
 }
@@ -29,6 +29,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Central class for interaction with devicehive-backend subscription mechanism.
@@ -38,20 +42,35 @@ public class EventBus {
 
     private final SubscriberRegistry registry;
     private final MessageDispatcher dispatcher;
+    private final boolean batchResponses;
 
     /**
      * Creates new instance of EventBus
      * @param dispatcher - interface, that controls message delivery strategy
      */
     public EventBus(MessageDispatcher dispatcher, SubscriberRegistry registry) {
+        this(dispatcher, registry, false);
+    }
+
+    /**
+     * Creates new instance of EventBus
+     * @param dispatcher - interface, that controls message delivery strategy
+     * @param batchResponses - deliver an event once per reply topic, carrying correlation ids of all its subscribers
+     */
+    public EventBus(MessageDispatcher dispatcher, SubscriberRegistry registry, boolean batchResponses) {
         this.dispatcher = dispatcher;
         this.registry = registry;
+        this.batchResponses = batchResponses;
     }
 
     public void subscribe(Subscriber subscriber, Subscription subscription) {
         registry.register(subscriber, subscription);
     }
 
+    public void subscribe(Subscriber subscriber, Collection<Subscription> subscriptions) {
+        registry.register(subscriber, subscriptions);
+    }
+
     public void unsubscribe(Subscriber subscriber) {
         registry.unregister(subscriber);
     }
@@ -73,6 +92,10 @@ public class EventBus {
     }
 
     public void publish(Event event) {
+        if (batchResponses) {
+            publishBatched(event);
+            return;
+        }
         event.getApplicableSubscriptions()
                 .stream()
                 .flatMap(subscription -> registry.getSubscribers(subscription).stream())
@@ -85,4 +108,23 @@ public class EventBus {
                     dispatcher.send(subscriber.getReplyTo(), response);
                 });
     }
+
+    private void publishBatched(Event event) {
+        Map<String, List<String>> correlationIdsByTopic = event.getApplicableSubscriptions()
+                .stream()
+                .flatMap(subscription -> registry.getSubscribers(subscription).stream())
+                .collect(Collectors.groupingBy(Subscriber::getReplyTo, LinkedHashMap::new,
+                        Collectors.mapping(Subscriber::getCorrelationId, Collectors.toList())));
+
+        correlationIdsByTopic.forEach((replyTo, correlationIds) -> {
+            Response.Builder builder = Response.newBuilder()
+                    .withBody(event)
+                    .withCorrelationId(correlationIds.get(0))
+                    .withLast(false);
+            if (correlationIds.size() > 1) {
+                builder.withCorrelationIds(correlationIds);
+            }
+            dispatcher.send(replyTo, builder.buildSuccess());
+        });
+    }
 }
@@ -23,26 +23,56 @@ package com.devicehive.eventbus;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.model.eventbus.Filter;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ISet;
 import com.hazelcast.core.MultiMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Class for handling all subscriber's filters
  */
 public class FilterRegistry {
 
-    private MultiMap<Filter, Long> filterSubscriptionsMap;
-    private final String FILTER_SUBSCRIPTION_MAP = "FILTER-SUBSCRIPTION-MAP";
+    /**
+     * Filter of each subscription. The KEY is subscription id and the VALUE is its filter.
+     */
+    private IMap<Long, Filter> subscriptionFilterMap;
+    private final String SUBSCRIPTION_FILTER_MAP = "SUBSCRIPTION-FILTER-MAP";
+
+    /**
+     * Inverted index of non-global filters. The KEY is network id and the VALUE is a set of subscription ids
+     * with this network in their filter.
+     */
+    private MultiMap<Long, Long> networkSubscriptionsMap;
+    private final String NETWORK_SUBSCRIPTIONS_MAP = "NETWORK-SUBSCRIPTIONS-MAP";
+
+    /**
+     * Ids of subscriptions with global filter, these match any network.
+     */
+    private ISet<Long> globalSubscriptions;
+    private final String GLOBAL_SUBSCRIPTIONS_SET = "GLOBAL-SUBSCRIPTIONS-SET";
 
     @Autowired
     public void getHazelcastMaps(HazelcastInstance hazelcastClient) {
-        filterSubscriptionsMap = hazelcastClient.getMultiMap(FILTER_SUBSCRIPTION_MAP);
+        subscriptionFilterMap = hazelcastClient.getMap(SUBSCRIPTION_FILTER_MAP);
+        networkSubscriptionsMap = hazelcastClient.getMultiMap(NETWORK_SUBSCRIPTIONS_MAP);
+        globalSubscriptions = hazelcastClient.getSet(GLOBAL_SUBSCRIPTIONS_SET);
     }
 
     public void register(Filter filter, Long subscriptionId) {
+        register(filter, subscriptionId, true);
+    }
+
+    /**
+     * @param trackNewDevices - whether the subscription should be returned by {@link #getSubscriptions(Long)}, so
+     *                        devices created later in its networks get subscribed too. Network and global scoped
+     *                        subscriptions match such devices by themselves and only keep the filter.
+     */
+    public void register(Filter filter, Long subscriptionId, boolean trackNewDevices) {
         HivePrincipal principal = filter.getPrincipal();
         if (filter.isGlobal() && principal.areAllDevicesAvailable()) {
             if (!principal.areAllNetworksAvailable()) {
@@ -50,29 +80,43 @@ public class FilterRegistry {
                 filter.setNetworkIds(principal.getNetworkIds());
             }
         }
-        filterSubscriptionsMap.put(filter, subscriptionId);
+        subscriptionFilterMap.set(subscriptionId, filter);
+        if (!trackNewDevices) {
+            return;
+        }
+        if (filter.isGlobal()) {
+            globalSubscriptions.add(subscriptionId);
+        } else if (filter.getNetworkIds() != null) {
+            filter.getNetworkIds().forEach(networkId -> networkSubscriptionsMap.put(networkId, subscriptionId));
+        }
     }
 
     public void unregister(Long subscriptionId) {
-        filterSubscriptionsMap.keySet().forEach(filter -> filterSubscriptionsMap.remove(filter, subscriptionId));
+        Filter filter = subscriptionFilterMap.remove(subscriptionId);
+        if (filter == null) {
+            return;
+        }
+        if (filter.isGlobal()) {
+            globalSubscriptions.remove(subscriptionId);
+        } else if (filter.getNetworkIds() != null) {
+            filter.getNetworkIds().forEach(networkId -> networkSubscriptionsMap.remove(networkId, subscriptionId));
+        }
     }
 
     public Filter getFilter(Long subscriptionId) {
-        for (Map.Entry<Filter, Long> entry : filterSubscriptionsMap.entrySet()) {
-            if (entry.getValue().equals(subscriptionId)) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        return subscriptionFilterMap.get(subscriptionId);
     }
 
     public Set<Pair<Long, Filter>> getSubscriptions(Long networkId) {
-        Set<Pair<Long, Filter>> subs = new HashSet<>();
-        filterSubscriptionsMap.keySet().forEach( filter -> {
-            if (filter.isGlobal() || (filter.getNetworkIds() != null && filter.getNetworkIds().contains(networkId))) {
-                filterSubscriptionsMap.get(filter).forEach(subId -> subs.add(Pair.of(subId, filter)));
-            }
-        });
-        return subs;
+        Set<Long> subIds = new HashSet<>(globalSubscriptions);
+        if (networkId != null) {
+            subIds.addAll(networkSubscriptionsMap.get(networkId));
+        }
+        if (subIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return subscriptionFilterMap.getAll(subIds).entrySet().stream()
+                .map(entry -> Pair.of(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toSet());
     }
 }
@@ -0,0 +1,192 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.eventbus.Subscriber;
+import com.devicehive.model.eventbus.Subscription;
+import com.hazelcast.core.EntryAdapter;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.MapEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-local copy of subscription routing maps of {@link SubscriberRegistry}.
+ * Kept coherent with the cluster by Hazelcast entry listeners, so that event routing does not make remote calls.
+ */
+class SubscriberIndex {
+
+    private final Map<Subscription, Set<Long>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+
+    void addSubscription(Subscription subscription, Long subscriberId) {
+        subscriptions.computeIfAbsent(subscription, s -> ConcurrentHashMap.newKeySet()).add(subscriberId);
+    }
+
+    void addSubscriptions(Long subscriberId, Collection<Subscription> subs) {
+        subs.forEach(subscription -> addSubscription(subscription, subscriberId));
+    }
+
+    void removeSubscription(Subscription subscription, Long subscriberId) {
+        subscriptions.computeIfPresent(subscription, (s, ids) -> {
+            ids.remove(subscriberId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    void removeSubscription(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    void putSubscriber(Subscriber subscriber) {
+        subscribers.put(subscriber.getId(), subscriber);
+    }
+
+    void removeSubscriber(Long subscriberId) {
+        subscribers.remove(subscriberId);
+    }
+
+    /**
+     * @return ids of subscribers for subscription, empty when nobody is subscribed
+     */
+    Collection<Long> getSubscriberIds(Subscription subscription) {
+        Set<Long> ids = subscriptions.get(subscription);
+        if (ids == null) {
+            misses.increment();
+            return Collections.emptySet();
+        }
+        hits.increment();
+        return ids;
+    }
+
+    /**
+     * @return subscriber or null if its entry has not reached this node yet
+     */
+    Subscriber getSubscriber(Long subscriberId) {
+        Subscriber subscriber = subscribers.get(subscriberId);
+        if (subscriber == null) {
+            staleReads.increment();
+        }
+        return subscriber;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getStaleReads() {
+        return staleReads.sum();
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return all subscriptions that have at least one subscriber
+     */
+    Set<Subscription> getSubscriptions() {
+        return Collections.unmodifiableSet(subscriptions.keySet());
+    }
+
+    EntryAdapter<Long, HashSet<Subscription>> subscriberSubscriptionsListener() {
+        return new EntryAdapter<Long, HashSet<Subscription>>() {
+            @Override
+            public void entryAdded(EntryEvent<Long, HashSet<Subscription>> event) {
+                addSubscriptions(event.getKey(), event.getValue());
+            }
+
+            @Override
+            public void entryUpdated(EntryEvent<Long, HashSet<Subscription>> event) {
+                if (event.getOldValue() != null) {
+                    event.getOldValue().stream()
+                            .filter(s -> !event.getValue().contains(s))
+                            .forEach(s -> removeSubscription(s, event.getKey()));
+                }
+                addSubscriptions(event.getKey(), event.getValue());
+            }
+
+            @Override
+            public void entryRemoved(EntryEvent<Long, HashSet<Subscription>> event) {
+                removeSubscriptions(event);
+            }
+
+            @Override
+            public void entryEvicted(EntryEvent<Long, HashSet<Subscription>> event) {
+                removeSubscriptions(event);
+            }
+
+            @Override
+            public void mapCleared(MapEvent event) {
+                subscriptions.clear();
+            }
+
+            private void removeSubscriptions(EntryEvent<Long, HashSet<Subscription>> event) {
+                if (event.getOldValue() != null) {
+                    event.getOldValue().forEach(s -> removeSubscription(s, event.getKey()));
+                }
+            }
+        };
+    }
+
+    EntryAdapter<Long, Subscriber> subscribersListener() {
+        return new EntryAdapter<Long, Subscriber>() {
+            @Override
+            public void entryAdded(EntryEvent<Long, Subscriber> event) {
+                putSubscriber(event.getValue());
+            }
+
+            @Override
+            public void entryUpdated(EntryEvent<Long, Subscriber> event) {
+                putSubscriber(event.getValue());
+            }
+
+            @Override
+            public void entryRemoved(EntryEvent<Long, Subscriber> event) {
+                removeSubscriber(event.getKey());
+            }
+
+            @Override
+            public void entryEvicted(EntryEvent<Long, Subscriber> event) {
+                removeSubscriber(event.getKey());
+            }
+
+            @Override
+            public void mapCleared(MapEvent event) {
+                subscribers.clear();
+            }
+        };
+    }
+}
@@ -23,103 +23,153 @@ package com.devicehive.eventbus;
 import com.devicehive.model.eventbus.Subscriber;
 import com.devicehive.model.eventbus.Subscription;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.MultiMap;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
  * Class for handling all subscribe, unsubscribe and get subscribers tricky logic
  */
 public class SubscriberRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriberRegistry.class);
 
     /**
      * Map for holding subscriptions for particular subscription request id (i.e. subscriber).
      * The KEY in this map is an id of subscriber (subscription request) and the VALUE is a set of subscriptions for this subscriber.
      *
-     * This map keeps track of all subscriptions for single subscriber so that it is possible to remove all of them
-     * from {@link SubscriberRegistry#subscriptions} map during {@link SubscriberRegistry#unregister(Subscriber)} call
+     * The whole set is stored under one key, so that a subscriber with any number of subscriptions is registered
+     * with a single write. Routing by subscription is answered by {@link SubscriberRegistry#index}, which every node
+     * builds from the entry events of this map.
      */
-    private MultiMap<Long, Subscription> subscriberSubscriptions;
-    private final String SUBSCRIBER_SUBSCRIPTIONS_MAP = "SUBSCRIBER-SUBSCRIPTIONS-MAP";
+    private IMap<Long, HashSet<Subscription>> subscriberSubscriptions;
+    private final String SUBSCRIBER_SUBSCRIPTIONS_MAP = "SUBSCRIBER-SUBSCRIPTIONS";
+
+    private IMap<Long, Subscriber> subscribers;
+    private final String SUBSCRIBERS_MAP = "SUBSCRIBERS-MAP";
 
     /**
-     * Map that contains an information about subscribers for single subscription.
-     * The KEY is subscription (e.g. subscription on device notifications) and the VALUE is a set of all subscriber's ids.
-     * This map is used for actual routing of messages through the event bus
+     * Local copy of {@link SubscriberRegistry#subscriberSubscriptions} inverted by subscription, and of
+     * {@link SubscriberRegistry#subscribers}, used by {@link SubscriberRegistry#getSubscribers(Subscription)},
+     * so that publishing an event makes no remote calls.
      */
-    private MultiMap<Subscription, Long> subscriptions;
-    private final String SUBSCRIPTIONS_MAP = "SUBSCRIPTIONS-MAP";
-
-    private Map<Long, Subscriber> subscribers;
-    private final String SUBSCRIBERS_MAP = "SUBSCRIBERS-MAP";
+    private final SubscriberIndex index = new SubscriberIndex();
 
     @Autowired
     public void getHazelcastMaps(HazelcastInstance hazelcastClient) {
-        subscriberSubscriptions = hazelcastClient.getMultiMap(SUBSCRIBER_SUBSCRIPTIONS_MAP);
-        subscriptions = hazelcastClient.getMultiMap(SUBSCRIPTIONS_MAP);
+        subscriberSubscriptions = hazelcastClient.getMap(SUBSCRIBER_SUBSCRIPTIONS_MAP);
         subscribers = hazelcastClient.getMap(SUBSCRIBERS_MAP);
+
+        // listeners go first, so that nothing registered during the initial load is lost
+        subscriberSubscriptions.addEntryListener(index.subscriberSubscriptionsListener(), true);
+        subscribers.addEntryListener(index.subscribersListener(), true);
+        subscribers.values().forEach(index::putSubscriber);
+        subscriberSubscriptions.entrySet().forEach(entry -> index.addSubscriptions(entry.getKey(), entry.getValue()));
     }
 
     /**
      * Registers subscription and subscriber in registry maps.
-     * Performs following steps:
-     *  - if subscriber doesn't have any subscriptions in {@link SubscriberRegistry#subscriberSubscriptions} - creates an empty list for him;
-     *  - adds subscription into subscriber's list in {@link SubscriberRegistry#subscriberSubscriptions};
-     *  - if nobody is subscribed to this subscription in {@link SubscriberRegistry#subscriptions} - initializes the list;
-     *  - adds subscriber to this subscription's list in {@link SubscriberRegistry#subscriptions}
+     * Subscriber's set in {@link SubscriberRegistry#subscriberSubscriptions} is updated under the key lock,
+     * so that concurrent registrations for the same subscriber are not lost.
      *
      * @param subscriber - subscriber
      * @param subscription - subscription to subscribe to
      */
     void register(Subscriber subscriber, Subscription subscription) {
-        subscriberSubscriptions.put(subscriber.getId(), subscription);
-        subscriptions.put(subscription, subscriber.getId());
-        subscribers.put(subscriber.getId(), subscriber);
+        Long id = subscriber.getId();
+        subscribers.put(id, subscriber);
+        index.putSubscriber(subscriber);
+        subscriberSubscriptions.lock(id);
+        try {
+            HashSet<Subscription> subs = subscriberSubscriptions.get(id);
+            if (subs == null) {
+                subs = new HashSet<>();
+            }
+            if (subs.add(subscription)) {
+                subscriberSubscriptions.set(id, subs);
+            }
+        } finally {
+            subscriberSubscriptions.unlock(id);
+        }
+        index.addSubscription(subscription, id);
+    }
+
+    /**
+     * Registers all subscriptions of a new subscriber at once: the subscriber and its subscriptions are
+     * stored with one write each, whatever the number of subscriptions.
+     *
+     * @param subscriber - subscriber, not registered before
+     * @param subscriptions - subscriptions to subscribe to
+     */
+    void register(Subscriber subscriber, Collection<Subscription> subscriptions) {
+        Long id = subscriber.getId();
+        subscribers.put(id, subscriber);
+        subscriberSubscriptions.set(id, new HashSet<>(subscriptions));
+        index.putSubscriber(subscriber);
+        index.addSubscriptions(id, subscriptions);
     }
 
     /**
      * Unregisters subscriber from registry maps:
-     *  - gets all subscriber's subscriptions from {@link SubscriberRegistry#subscriberSubscriptions}
-     *  - removes subscriber from each subscription's list in {@link SubscriberRegistry#subscriptions}
-     *  - removes entry from {@link SubscriberRegistry#subscriberSubscriptions}
+     *  - removes subscriber's entry from {@link SubscriberRegistry#subscriberSubscriptions}
+     *  - removes subscriber from each of its subscriptions in the local index
      *
      * @param subscriber - subscriber
      */
     void unregister(Subscriber subscriber) {
         Long id = subscriber.getId();
-        Collection<Subscription> subs = subscriberSubscriptions.get(id);
+        HashSet<Subscription> subs = subscriberSubscriptions.remove(id);
         if (subs != null) {
-            subs.forEach(s -> subscriptions.remove(s, id));
+            subs.forEach(s -> index.removeSubscription(s, id));
         }
         subscribers.remove(id);
-        subscriberSubscriptions.remove(id);
+        index.removeSubscriber(id);
     }
 
     void unregister(Subscription subscription) {
-        Collection<Long> subIds = subscriptions.get(subscription);
-        if (subIds != null) {
-            subIds.forEach(subId -> subscriberSubscriptions.remove(subId, subscription));
-        }
-        subscriptions.remove(subscription);
+        new ArrayList<>(index.getSubscriberIds(subscription)).forEach(id -> {
+            subscriberSubscriptions.lock(id);
+            try {
+                HashSet<Subscription> subs = subscriberSubscriptions.get(id);
+                if (subs != null && subs.remove(subscription)) {
+                    subscriberSubscriptions.set(id, subs);
+                }
+            } finally {
+                subscriberSubscriptions.unlock(id);
+            }
+        });
+        index.removeSubscription(subscription);
     }
 
     /**
+     * Resolves subscribers from the local index. Subscribers whose entries have not reached this node yet
+     * are read from {@link SubscriberRegistry#subscribers} map.
+     *
      * @param subscription - subscription
      * @return - list of subscribers for subscription
      */
     Collection<Subscriber> getSubscribers(Subscription subscription) {
         Assert.notNull(subscription);
-        Collection<Long> subIds = subscriptions.get(subscription);
-        if (subIds != null) {
-            return subIds.stream().map(subscribers::get).collect(Collectors.toList());
-        } else {
+        Collection<Long> subIds = index.getSubscriberIds(subscription);
+        if (subIds.isEmpty()) {
             return Collections.emptyList();
         }
+        return subIds.stream()
+                .map(id -> {
+                    Subscriber subscriber = index.getSubscriber(id);
+                    return subscriber != null ? subscriber : subscribers.get(id);
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -133,10 +183,16 @@ public class SubscriberRegistry {
     Collection<Subscription> getSubscriptions(Subscriber subscriber) {
         Assert.notNull(subscriber);
         Collection<Subscription> subs = subscriberSubscriptions.get(subscriber.getId());
-        return subs != null ? subs : Collections.emptyList();
+        return subs != null ? subs : Collections.emptySet();
     }
 
     Collection<Subscription> getAllSubscriptions() {
-        return subscriptions.keySet();
+        return index.getSubscriptions();
+    }
+
+    @Scheduled(fixedDelayString = "${eventbus.index.stats.period:60000}")
+    public void logIndexStats() {
+        logger.info("Subscription index: {} subscriptions, hits={}, misses={}, stale={}",
+                index.size(), index.getHits(), index.getMisses(), index.getStaleReads());
     }
 }
@@ -62,7 +62,8 @@ public class DeviceCreateHandler implements RequestHandler {
 
         if (req.getOldNetwork() != null && !req.getOldNetwork().equals(device.getNetworkId())) {
             eventBus.getAllSubscriptions().stream()
-                    .filter(subscription -> subscription.getEntityId().equals(device.getDeviceId()))
+                    .filter(subscription -> subscription.getScope() == Subscription.Scope.DEVICE
+                            && device.getDeviceId().equals(subscription.getEntityId()))
                     .forEach(eventBus::unsubscribe);
         }
 
@@ -34,6 +34,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Component("request-dispatcher")
 public class RequestDispatcher implements RequestHandler {
@@ -57,11 +58,29 @@ public class RequestDispatcher implements RequestHandler {
                     .map(handler -> handler.handle(request))
                     .orElseThrow(() -> new RuntimeException("Action '" + action + "' is not supported."));
         } catch (Exception e) {
-            logger.error("Unable to handle request.", e);
-            return Response.newBuilder()
-                    .withBody(new ErrorResponse(e.getMessage()))
-                    .withLast(true)
-                    .buildFailed(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return errorResponse(e);
         }
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Response> handleAsync(Request request) {
+        final Action action = request.getBody().getAction();
+        try {
+            return Optional.ofNullable(requestHandlersMapper.requestHandlerMap().get(action))
+                    .map(handler -> handler.handleAsync(request))
+                    .orElseThrow(() -> new RuntimeException("Action '" + action + "' is not supported."))
+                    .exceptionally(this::errorResponse);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(e));
+        }
+    }
+
+    private Response errorResponse(Throwable e) {
+        logger.error("Unable to handle request.", e);
+        return Response.newBuilder()
+                .withBody(new ErrorResponse(e.getMessage()))
+                .withLast(true)
+                .buildFailed(HttpStatus.INTERNAL_SERVER_ERROR.value());
+    }
 }
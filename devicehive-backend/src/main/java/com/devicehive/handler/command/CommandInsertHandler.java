@@ -32,6 +32,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class CommandInsertHandler implements RequestHandler {
 
@@ -50,15 +52,19 @@ public class CommandInsertHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
-        DeviceCommand deviceCommand = request.getBody().cast(CommandInsertRequest.class).getDeviceCommand();
-        CommandEvent commandEvent = new CommandEvent(deviceCommand);
+        return handleAsync(request).join();
+    }
 
-        eventBus.publish(commandEvent);
-        hazelcastService.store(deviceCommand);
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
+        CommandInsertRequest insertRequest = request.getBody().cast(CommandInsertRequest.class);
+        DeviceCommand deviceCommand = insertRequest.getDeviceCommand();
+        CommandEvent commandEvent = new CommandEvent(deviceCommand, insertRequest.getNetworkId());
 
-        CommandInsertResponse payload = new CommandInsertResponse(deviceCommand);
-        return Response.newBuilder()
-                .withBody(payload)
-                .buildSuccess();
+        eventBus.publish(commandEvent);
+        return hazelcastService.storeAsync(deviceCommand)
+                .thenApply(v -> Response.newBuilder()
+                        .withBody(new CommandInsertResponse(deviceCommand))
+                        .buildSuccess());
     }
 }
@@ -20,7 +20,9 @@ package com.devicehive.handler.command;
  * #L%
  */
 
+import com.devicehive.model.CommandResponseFilterAndSort;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.rpc.CommandSearchRequest;
 import com.devicehive.model.rpc.CommandSearchResponse;
 import com.devicehive.service.HazelcastService;
@@ -71,6 +73,22 @@ public class CommandSearchHandler implements RequestHandler {
 
     private CommandSearchResponse searchMultipleCommands(CommandSearchRequest searchRequest) {
         final CommandSearchResponse commandSearchResponse = new CommandSearchResponse();
+        final HistoryCursor.Position after = searchRequest.getAfter();
+        if (after != null) {
+            final boolean ascending = Boolean.FALSE.equals(CommandResponseFilterAndSort.isReverse(searchRequest.getSortOrder()));
+            commandSearchResponse.setCommands(hazelcastService.findAfter(
+                    searchRequest.getDeviceId(),
+                    searchRequest.getNames(),
+                    searchRequest.getTimestampStart(),
+                    searchRequest.getTimestampEnd(),
+                    searchRequest.isReturnUpdated(),
+                    searchRequest.getStatus(),
+                    after,
+                    ascending,
+                    searchRequest.getTake() != null ? searchRequest.getTake() : 0,
+                    DeviceCommand.class));
+            return commandSearchResponse;
+        }
         final Collection<DeviceCommand> commands = hazelcastService.find(
                 searchRequest.getDeviceId(),
                 searchRequest.getNames(),
@@ -82,7 +100,18 @@ public class CommandSearchHandler implements RequestHandler {
                 searchRequest.getStatus(),
                 DeviceCommand.class);
 
-        commandSearchResponse.setCommands(new ArrayList<>(commands));
+        commandSearchResponse.setCommands(orderAndLimit(commands, searchRequest));
         return commandSearchResponse;
     }
+
+    private List<DeviceCommand> orderAndLimit(Collection<DeviceCommand> commands, CommandSearchRequest searchRequest) {
+        if (searchRequest.getTake() == null) {
+            return new ArrayList<>(commands);
+        }
+        final int skip = searchRequest.getSkip() == null ? 0 : searchRequest.getSkip();
+        return CommandResponseFilterAndSort.boundedOrderAndLimit(commands,
+                CommandResponseFilterAndSort.buildDeviceCommandComparator(searchRequest.getSortField()),
+                CommandResponseFilterAndSort.isReverse(searchRequest.getSortOrder()),
+                skip, searchRequest.getTake());
+    }
 }
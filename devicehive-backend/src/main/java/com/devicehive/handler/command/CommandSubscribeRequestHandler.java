@@ -20,9 +20,11 @@ package com.devicehive.handler.command;
  * #L%
  */
 
+import com.devicehive.dao.DeviceDao;
 import com.devicehive.eventbus.EventBus;
 import com.devicehive.eventbus.FilterRegistry;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.Subscriber;
 import com.devicehive.model.eventbus.Subscription;
 import com.devicehive.model.rpc.CommandSubscribeRequest;
@@ -31,12 +33,14 @@ import com.devicehive.service.HazelcastService;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.vo.DeviceVO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.devicehive.shim.api.Action.COMMANDS_UPDATE_EVENT;
 import static com.devicehive.shim.api.Action.COMMAND_EVENT;
@@ -47,6 +51,7 @@ public class CommandSubscribeRequestHandler implements RequestHandler {
     private EventBus eventBus;
     private FilterRegistry filterRegistry;
     private HazelcastService hazelcastService;
+    private DeviceDao deviceDao;
 
     @Autowired
     public void setEventBus(EventBus eventBus) {
@@ -63,6 +68,11 @@ public class CommandSubscribeRequestHandler implements RequestHandler {
         this.hazelcastService = hazelcastService;
     }
 
+    @Autowired
+    public void setDeviceDao(DeviceDao deviceDao) {
+        this.deviceDao = deviceDao;
+    }
+
     @Override
     public Response handle(Request request) {
         CommandSubscribeRequest body = (CommandSubscribeRequest) request.getBody();
@@ -70,23 +80,45 @@ public class CommandSubscribeRequestHandler implements RequestHandler {
 
         Subscriber subscriber = new Subscriber(body.getSubscriptionId(), request.getReplyTo(), request.getCorrelationId());
 
+        Set<String> names = body.getFilter().getNames();
         Set<Subscription> subscriptions = new HashSet<>();
         String eventName = body.isReturnUpdated() ? COMMANDS_UPDATE_EVENT.name() : COMMAND_EVENT.name();
         body.getFilter().setEventName(eventName);
-        if (CollectionUtils.isEmpty(body.getFilter().getNames())) {
-            Subscription subscription = new Subscription(eventName, body.getDevice());
-            subscriptions.add(subscription);
-        } else {
-            for (String name : body.getFilter().getNames()) {
-                Subscription subscription = new Subscription(eventName, body.getDevice(), name);
+        for (String device : body.getAllDevices()) {
+            if (CollectionUtils.isEmpty(names)) {
+                Subscription subscription = new Subscription(eventName, device);
                 subscriptions.add(subscription);
+            } else {
+                for (String name : names) {
+                    Subscription subscription = new Subscription(eventName, device, name);
+                    subscriptions.add(subscription);
+                }
+            }
+        }
+        if (body.getNetworks() != null) {
+            for (Long network : body.getNetworks()) {
+                if (CollectionUtils.isEmpty(names)) {
+                    subscriptions.add(Subscription.network(eventName, network, null));
+                } else {
+                    names.forEach(name -> subscriptions.add(Subscription.network(eventName, network, name)));
+                }
+            }
+        }
+        if (body.isGlobal()) {
+            if (CollectionUtils.isEmpty(names)) {
+                subscriptions.add(Subscription.global(eventName, null));
+            } else {
+                names.forEach(name -> subscriptions.add(Subscription.global(eventName, name)));
             }
         }
 
-        subscriptions.forEach(subscription -> eventBus.subscribe(subscriber, subscription));
-        filterRegistry.register(body.getFilter(), body.getSubscriptionId());
+        eventBus.subscribe(subscriber, subscriptions);
+        // network and global subscriptions already match devices created later, so they are not patched on device creation
+        filterRegistry.register(body.getFilter(), body.getSubscriptionId(), !isScoped(body));
 
-        Collection<DeviceCommand> commands = findCommands(body.getDevice(), body.getFilter().getNames(), body.getTimestamp(), body.isReturnUpdated(), body.getLimit());
+        Collection<DeviceCommand> commands = body.getTimestamp() == null
+                ? Collections.emptyList()
+                : findCommands(getHistoryDevices(body), names, body.getTimestamp(), body.isReturnUpdated(), body.getLimit());
         CommandSubscribeResponse subscribeResponse = new CommandSubscribeResponse(body.getSubscriptionId(), commands);
 
         return Response.newBuilder()
@@ -98,13 +130,37 @@ public class CommandSubscribeRequestHandler implements RequestHandler {
 
     private void validate(CommandSubscribeRequest request) {
         Assert.notNull(request, "Request body is null");
-        Assert.notNull(request.getDevice(), "Device deviceId is null");
+        Assert.isTrue(!request.getAllDevices().isEmpty() || isScoped(request), "Device deviceId is null");
+        // command update events carry no network, so they can only be matched by device
+        Assert.isTrue(!request.isReturnUpdated() || !isScoped(request), "Updated commands can be subscribed by device only");
         Assert.notNull(request.getSubscriptionId(), "Subscription id not provided");
     }
 
-    private Collection<DeviceCommand> findCommands(String device, Collection<String> names, Date timestamp, boolean returnUpdated, Integer limit) {
-        return Optional.ofNullable(timestamp)
-                .map(t -> hazelcastService.find(null, names, Collections.singleton(device), limit, t, null, returnUpdated, null, DeviceCommand.class))
-                .orElse(Collections.emptyList());
+    private static boolean isScoped(CommandSubscribeRequest request) {
+        return request.isGlobal() || !CollectionUtils.isEmpty(request.getNetworks());
+    }
+
+    /**
+     * Network and global subscriptions are not expanded to devices, only the history lookup needs their devices.
+     */
+    private Set<String> getHistoryDevices(CommandSubscribeRequest request) {
+        Set<String> devices = new HashSet<>(request.getAllDevices());
+        Filter filter = request.getFilter();
+        if (request.isGlobal()) {
+            devices.addAll(listDevices(null, filter));
+        } else if (request.getNetworks() != null) {
+            request.getNetworks().forEach(network -> devices.addAll(listDevices(network, filter)));
+        }
+        return devices;
+    }
+
+    private Set<String> listDevices(Long networkId, Filter filter) {
+        return deviceDao.list(null, null, networkId, null, null, true, null, null, filter.getPrincipal()).stream()
+                .map(DeviceVO::getDeviceId)
+                .collect(Collectors.toSet());
+    }
+
+    private Collection<DeviceCommand> findCommands(Set<String> devices, Collection<String> names, Date timestamp, boolean returnUpdated, Integer limit) {
+        return hazelcastService.findPerDevice(names, devices, limit, timestamp, returnUpdated, DeviceCommand.class);
     }
 }
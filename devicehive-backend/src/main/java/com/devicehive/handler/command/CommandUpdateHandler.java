@@ -23,6 +23,7 @@ package com.devicehive.handler.command;
 import com.devicehive.eventbus.EventBus;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.eventbus.events.CommandUpdateEvent;
+import com.devicehive.model.eventbus.events.CommandsUpdateEvent;
 import com.devicehive.model.rpc.CommandUpdateRequest;
 import com.devicehive.service.HazelcastService;
 import com.devicehive.shim.api.Request;
@@ -31,6 +32,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class CommandUpdateHandler implements RequestHandler {
 
@@ -49,11 +52,23 @@ public class CommandUpdateHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
+        return handleAsync(request).join();
+    }
+
+    /**
+     * Stores the updated command once and notifies both the subscribers waiting for this command
+     * and the subscribers following all command updates of its device.
+     * Subscribers are notified before the map owner acknowledges the write, so they may see an update
+     * that a failed write never stored; the requester gets the failure in the response.
+     */
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
         final DeviceCommand command = request.getBody().cast(CommandUpdateRequest.class).getDeviceCommand();
-        hazelcastService.store(command);
+        final CompletableFuture<Void> stored = hazelcastService.storeAsync(command);
 
         eventBus.publish(new CommandUpdateEvent(command));
+        eventBus.publish(new CommandsUpdateEvent(command));
 
-        return Response.newBuilder().buildSuccess();
+        return stored.thenApply(v -> Response.newBuilder().buildSuccess());
     }
 }
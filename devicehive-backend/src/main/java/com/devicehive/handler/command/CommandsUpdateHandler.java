@@ -20,40 +20,22 @@ package com.devicehive.handler.command;
  * #L%
  */
 
-import com.devicehive.eventbus.EventBus;
-import com.devicehive.model.DeviceCommand;
-import com.devicehive.model.eventbus.events.CommandsUpdateEvent;
-import com.devicehive.model.rpc.CommandsUpdateRequest;
-import com.devicehive.service.HazelcastService;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+/**
+ * @deprecated frontends released before command updates were sent once still send this request next to
+ * {@link com.devicehive.model.rpc.CommandUpdateRequest}, which has already stored the command and notified the
+ * update subscribers. The request is only acknowledged, so that subscribers see every update once.
+ */
+@Deprecated
 @Component
 public class CommandsUpdateHandler implements RequestHandler {
 
-    private HazelcastService hazelcastService;
-    private EventBus eventBus;
-
-    @Autowired
-    public void setHazelcastService(HazelcastService hazelcastService) {
-        this.hazelcastService = hazelcastService;
-    }
-
-    @Autowired
-    public void setEventBus(EventBus eventBus) {
-        this.eventBus = eventBus;
-    }
-
     @Override
     public Response handle(Request request) {
-        final DeviceCommand command = request.getBody().cast(CommandsUpdateRequest.class).getDeviceCommand();
-        hazelcastService.store(command);
-
-        eventBus.publish(new CommandsUpdateEvent(command));
-
         return Response.newBuilder().buildSuccess();
     }
 }
@@ -32,6 +32,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class NotificationInsertHandler implements RequestHandler {
 
@@ -50,15 +52,19 @@ public class NotificationInsertHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
-        DeviceNotification notification = ((NotificationInsertRequest) request.getBody()).getDeviceNotification();
-        NotificationEvent notificationEvent = new NotificationEvent(notification);
+        return handleAsync(request).join();
+    }
 
-        eventBus.publish(notificationEvent);
-        hazelcastService.store(notification);
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
+        NotificationInsertRequest insertRequest = (NotificationInsertRequest) request.getBody();
+        DeviceNotification notification = insertRequest.getDeviceNotification();
+        NotificationEvent notificationEvent = new NotificationEvent(notification, insertRequest.getNetworkId());
 
-        NotificationInsertResponse payload = new NotificationInsertResponse(notification);
-        return Response.newBuilder()
-                .withBody(payload)
-                .buildSuccess();
+        eventBus.publish(notificationEvent);
+        return hazelcastService.storeAsync(notification)
+                .thenApply(v -> Response.newBuilder()
+                        .withBody(new NotificationInsertResponse(notification))
+                        .buildSuccess());
     }
 }
@@ -20,7 +20,9 @@ package com.devicehive.handler.notification;
  * #L%
  */
 
+import com.devicehive.model.CommandResponseFilterAndSort;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.rpc.NotificationSearchRequest;
 import com.devicehive.model.rpc.NotificationSearchResponse;
 import com.devicehive.service.HazelcastService;
@@ -61,6 +63,21 @@ public class NotificationSearchHandler implements RequestHandler {
 
     private NotificationSearchResponse searchMultipleNotifications(NotificationSearchRequest searchRequest) {
         //TODO [rafa] has response is quite bad, instead we should separate command and reply into two separate collections.
+        final HistoryCursor.Position after = searchRequest.getAfter();
+        if (after != null) {
+            final boolean ascending = Boolean.FALSE.equals(CommandResponseFilterAndSort.isReverse(searchRequest.getSortOrder()));
+            return new NotificationSearchResponse(storageService.findAfter(
+                    searchRequest.getDeviceId(),
+                    searchRequest.getNames(),
+                    searchRequest.getTimestampStart(),
+                    searchRequest.getTimestampEnd(),
+                    false,
+                    null,
+                    after,
+                    ascending,
+                    searchRequest.getTake() != null ? searchRequest.getTake() : 0,
+                    DeviceNotification.class));
+        }
         final Collection<DeviceNotification> notifications = storageService.find(
                 searchRequest.getDeviceId(),
                 searchRequest.getNames(),
@@ -72,7 +89,7 @@ public class NotificationSearchHandler implements RequestHandler {
                 null,
                 DeviceNotification.class);
 
-        return new NotificationSearchResponse(new ArrayList<>(notifications));
+        return new NotificationSearchResponse(orderAndLimit(notifications, searchRequest));
     }
 
     private NotificationSearchResponse searchSingleNotificationByDeviceAndId(long id, String deviceId) {
@@ -81,4 +98,15 @@ public class NotificationSearchHandler implements RequestHandler {
                 .orElse(Collections.emptyList());
         return new NotificationSearchResponse(notifications);
     }
+
+    private List<DeviceNotification> orderAndLimit(Collection<DeviceNotification> notifications, NotificationSearchRequest searchRequest) {
+        if (searchRequest.getTake() == null) {
+            return new ArrayList<>(notifications);
+        }
+        final int skip = searchRequest.getSkip() == null ? 0 : searchRequest.getSkip();
+        return CommandResponseFilterAndSort.boundedOrderAndLimit(notifications,
+                CommandResponseFilterAndSort.buildDeviceNotificationComparator(searchRequest.getSortField()),
+                CommandResponseFilterAndSort.isReverse(searchRequest.getSortOrder()),
+                skip, searchRequest.getTake());
+    }
 }
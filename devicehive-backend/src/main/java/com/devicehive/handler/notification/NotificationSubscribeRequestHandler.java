@@ -20,9 +20,11 @@ package com.devicehive.handler.notification;
  * #L%
  */
 
+import com.devicehive.dao.DeviceDao;
 import com.devicehive.eventbus.EventBus;
 import com.devicehive.eventbus.FilterRegistry;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.Subscriber;
 import com.devicehive.model.eventbus.Subscription;
 import com.devicehive.shim.api.Action;
@@ -32,12 +34,14 @@ import com.devicehive.service.HazelcastService;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.vo.DeviceVO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Component
 public class NotificationSubscribeRequestHandler implements RequestHandler {
@@ -47,6 +51,7 @@ public class NotificationSubscribeRequestHandler implements RequestHandler {
     private EventBus eventBus;
     private FilterRegistry filterRegistry;
     private HazelcastService hazelcastService;
+    private DeviceDao deviceDao;
 
     @Autowired
     public void setEventBus(EventBus eventBus) {
@@ -63,6 +68,11 @@ public class NotificationSubscribeRequestHandler implements RequestHandler {
         this.hazelcastService = hazelcastService;
     }
 
+    @Autowired
+    public void setDeviceDao(DeviceDao deviceDao) {
+        this.deviceDao = deviceDao;
+    }
+
     @Override
     public Response handle(Request request) {
         NotificationSubscribeRequest body = (NotificationSubscribeRequest) request.getBody();
@@ -70,21 +80,43 @@ public class NotificationSubscribeRequestHandler implements RequestHandler {
 
         Subscriber subscriber = new Subscriber(body.getSubscriptionId(), request.getReplyTo(), request.getCorrelationId());
 
+        Set<String> names = body.getFilter().getNames();
         Set<Subscription> subscriptions = new HashSet<>();
-        if (CollectionUtils.isEmpty(body.getFilter().getNames())) {
-            Subscription subscription = new Subscription(Action.NOTIFICATION_EVENT.name(), body.getDevice());
-            subscriptions.add(subscription);
-        } else {
-            for (String name : body.getFilter().getNames()) {
-                Subscription subscription = new Subscription(Action.NOTIFICATION_EVENT.name(), body.getDevice(), name);
+        for (String device : body.getAllDevices()) {
+            if (CollectionUtils.isEmpty(names)) {
+                Subscription subscription = new Subscription(Action.NOTIFICATION_EVENT.name(), device);
                 subscriptions.add(subscription);
+            } else {
+                for (String name : names) {
+                    Subscription subscription = new Subscription(Action.NOTIFICATION_EVENT.name(), device, name);
+                    subscriptions.add(subscription);
+                }
+            }
+        }
+        if (body.getNetworks() != null) {
+            for (Long network : body.getNetworks()) {
+                if (CollectionUtils.isEmpty(names)) {
+                    subscriptions.add(Subscription.network(Action.NOTIFICATION_EVENT.name(), network, null));
+                } else {
+                    names.forEach(name -> subscriptions.add(Subscription.network(Action.NOTIFICATION_EVENT.name(), network, name)));
+                }
+            }
+        }
+        if (body.isGlobal()) {
+            if (CollectionUtils.isEmpty(names)) {
+                subscriptions.add(Subscription.global(Action.NOTIFICATION_EVENT.name(), null));
+            } else {
+                names.forEach(name -> subscriptions.add(Subscription.global(Action.NOTIFICATION_EVENT.name(), name)));
             }
         }
 
-        subscriptions.forEach(subscription -> eventBus.subscribe(subscriber, subscription));
-        filterRegistry.register(body.getFilter(), body.getSubscriptionId());
+        eventBus.subscribe(subscriber, subscriptions);
+        // network and global subscriptions already match devices created later, so they are not patched on device creation
+        filterRegistry.register(body.getFilter(), body.getSubscriptionId(), !isScoped(body));
 
-        Collection<DeviceNotification> notifications = findNotifications(body.getDevice(), body.getFilter().getNames(), body.getTimestamp());
+        Collection<DeviceNotification> notifications = body.getTimestamp() == null
+                ? Collections.emptyList()
+                : findNotifications(getHistoryDevices(body), names, body.getTimestamp());
         NotificationSubscribeResponse subscribeResponse = new NotificationSubscribeResponse(body.getSubscriptionId(), notifications);
 
         return Response.newBuilder()
@@ -96,17 +128,37 @@ public class NotificationSubscribeRequestHandler implements RequestHandler {
 
     private void validate(NotificationSubscribeRequest request) {
         Assert.notNull(request, "Request body is null");
-        Assert.notNull(request.getDevice(), "Device id is null");
+        Assert.isTrue(!request.getAllDevices().isEmpty() || isScoped(request), "Device id is null");
         Assert.notNull(request.getSubscriptionId(), "Subscription id not provided");
     }
 
-    private Collection<DeviceNotification> findNotifications(String device, Collection<String> names, Date timestamp) {
-        Collection<DeviceNotification> notifications = Collections.emptyList();
-        if (timestamp != null) {
-            notifications =
-                    hazelcastService.find(null, names, Collections.singleton(device), LIMIT, timestamp, null, false, null, DeviceNotification.class);
+    private static boolean isScoped(NotificationSubscribeRequest request) {
+        return request.isGlobal() || !CollectionUtils.isEmpty(request.getNetworks());
+    }
+
+    /**
+     * Network and global subscriptions are not expanded to devices, only the history lookup needs their devices.
+     */
+    private Set<String> getHistoryDevices(NotificationSubscribeRequest request) {
+        Set<String> devices = new HashSet<>(request.getAllDevices());
+        Filter filter = request.getFilter();
+        if (request.isGlobal()) {
+            devices.addAll(listDevices(null, filter));
+        } else if (request.getNetworks() != null) {
+            request.getNetworks().forEach(network -> devices.addAll(listDevices(network, filter)));
         }
-        return notifications;
+        return devices;
+    }
+
+    private Set<String> listDevices(Long networkId, Filter filter) {
+        return deviceDao.list(null, null, networkId, null, null, true, null, null, filter.getPrincipal()).stream()
+                .map(DeviceVO::getDeviceId)
+                .collect(Collectors.toSet());
+    }
+
+    private Collection<DeviceNotification> findNotifications(Set<String> devices, Collection<String> names, Date timestamp) {
+        // history is limited per device, as it was when each device was subscribed by its own request
+        return hazelcastService.findPerDevice(names, devices, LIMIT, timestamp, false, DeviceNotification.class);
     }
 
 }
@@ -22,20 +22,34 @@ package com.devicehive.service;
 
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.EntityIdLayout;
 import com.devicehive.model.HazelcastEntity;
 import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.HazelcastEntityKey;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.service.helpers.HazelcastHelper;
+import com.devicehive.service.helpers.HazelcastLocalCaches;
+import com.devicehive.service.history.HistoryCache;
+import com.devicehive.service.history.HistoryStore;
+import com.hazelcast.core.ExecutionCallback;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
 import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.PartitionPredicate;
 import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 import static com.devicehive.model.enums.SearchableField.LAST_UPDATED;
 import static com.devicehive.model.enums.SearchableField.TIMESTAMP;
@@ -44,36 +58,80 @@ import static com.devicehive.model.enums.SearchableField.TIMESTAMP;
 public class HazelcastService {
     private static final Logger logger = LoggerFactory.getLogger(HazelcastService.class);
 
-    private static final String NOTIFICATIONS_MAP = "NOTIFICATIONS-MAP";
-    private static final String COMMANDS_MAP = "COMMANDS-MAP";
+    public static final String NOTIFICATIONS_MAP = "NOTIFICATIONS-MAP";
+    public static final String COMMANDS_MAP = "COMMANDS-MAP";
 
     private final HazelcastInstance hazelcastClient;
 
     private final HazelcastHelper hazelcastHelper;
 
-    private Map<Class, IMap<String, HazelcastEntity>> mapsHolder = new HashMap<>(2);
+    private final HistoryCache historyCache;
+
+    private final HistoryStore historyStore;
+
+    private final HazelcastLocalCaches localCaches;
+
+    /**
+     * How far back the Hazelcast maps are complete, i.e. their time-to-live. Older ranges are read from the history store.
+     */
+    private final long memoryWindow;
+
+    /**
+     * Permits for asynchronous writes not yet acknowledged by the map owner. When they run out, {@link #storeAsync}
+     * waits for one, so a slow cluster slows down the request handlers instead of piling up pending operations.
+     */
+    private final Semaphore asyncWrites;
+
+    private Map<Class, IMap<HazelcastEntityKey, HazelcastEntity>> mapsHolder = new HashMap<>(2);
 
     @Autowired
-    public HazelcastService(HazelcastInstance hazelcastClient, HazelcastHelper hazelcastHelper) {
+    public HazelcastService(HazelcastInstance hazelcastClient,
+                            HazelcastHelper hazelcastHelper,
+                            HistoryCache historyCache,
+                            HistoryStore historyStore,
+                            HazelcastLocalCaches localCaches,
+                            @Value("${history.store.window:120000}") long memoryWindow,
+                            @Value("${hazelcast.async-writes.max-in-flight:1024}") int maxAsyncWrites) {
         this.hazelcastClient = hazelcastClient;
         this.hazelcastHelper = hazelcastHelper;
+        this.historyCache = historyCache;
+        this.historyStore = historyStore;
+        this.localCaches = localCaches;
+        this.memoryWindow = memoryWindow;
+        this.asyncWrites = new Semaphore(maxAsyncWrites);
     }
 
     @PostConstruct
     protected void init() {
-        final IMap<String, HazelcastEntity> notificationsMap = hazelcastClient.getMap(NOTIFICATIONS_MAP);
+        final IMap<HazelcastEntityKey, HazelcastEntity> notificationsMap = hazelcastClient.getMap(NOTIFICATIONS_MAP);
         notificationsMap.addIndex(TIMESTAMP.getField(), true);
 
-        final IMap<String, HazelcastEntity> commandsMap = hazelcastClient.getMap(COMMANDS_MAP);
+        final IMap<HazelcastEntityKey, HazelcastEntity> commandsMap = hazelcastClient.getMap(COMMANDS_MAP);
         commandsMap.addIndex(TIMESTAMP.getField(), true);
         commandsMap.addIndex(LAST_UPDATED.getField(), true);
         
         mapsHolder.put(DeviceNotification.class, notificationsMap);
         mapsHolder.put(DeviceCommand.class, commandsMap);
+
+        historyCache.listenNotifications(notificationsMap);
+        historyCache.listenCommands(commandsMap);
+
+        localCaches.register(DeviceNotification.class, notificationsMap);
+        localCaches.register(DeviceCommand.class, commandsMap);
     }
 
 
+    @SuppressWarnings("unchecked")
     public <T extends HazelcastEntity> Optional<T> find(Long id, String deviceId, Class<T> entityClass) {
+        if (id != null && StringUtils.isNotEmpty(deviceId)) {
+            final HazelcastEntityKey key = new HazelcastEntityKey(id, deviceId);
+            final T entity = (T) mapsHolder.get(entityClass).get(key);
+            if (entity != null || !historyStore.isEnabled()) {
+                return Optional.ofNullable(entity);
+            }
+            // expired from the map, the log is read from the creation time encoded in the id on
+            return historyStore.find(entityClass, key, createdAt(id));
+        }
         final Predicate filters = hazelcastHelper.prepareFilters(id, deviceId);
         return find(filters, 1, entityClass).stream().findFirst();
     }
@@ -87,14 +145,220 @@ public class HazelcastService {
                                                           boolean returnUpdated,
                                                           String status,
                                                           Class<T> entityClass) {
-        final Predicate filters = hazelcastHelper.prepareFilters(deviceId,  names, devices, timestampSt, timestampEnd,
-               returnUpdated, status, entityClass);
-        return find(filters, take, entityClass);
+        final Collection<T> recent = findRecent(deviceId, names, devices, take, timestampSt, timestampEnd,
+                returnUpdated, status, entityClass);
+        if (!reachesHistoryStore(timestampSt)) {
+            return recent;
+        }
+
+        // the range starts before the maps' window, the store has the older part; map entries are fresher
+        final Map<HazelcastEntityKey, T> merged = new LinkedHashMap<>();
+        historyStore.find(entityClass, timestampSt, hazelcastHelper.prepareLocalFilter(deviceId, names, devices,
+                timestampSt, timestampEnd, returnUpdated, status), take != null ? take : 0)
+                .forEach(entity -> merged.put(entity.getHazelcastKey(), entity));
+        recent.forEach(entity -> merged.put(entity.getHazelcastKey(), entity));
+        return merged.values().stream()
+                .sorted(Comparator.comparing(HazelcastEntity::getTimestamp))
+                .limit(take != null && take > 0 ? take : Long.MAX_VALUE)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Entities of a device that follow the cursor position in the given direction, ordered by timestamp with ties
+     * broken by id, the first take of them. The position and the direction are part of the partition query, so
+     * entries before the position are neither returned nor sorted; the partition still evaluates the rest of the
+     * time range, so a page costs the entries left after the position, not the entries before it.
+     */
+    public <T extends HazelcastEntity> List<T> findAfter(String deviceId,
+                                                         Collection<String> names,
+                                                         Date timestampSt,
+                                                         Date timestampEnd,
+                                                         boolean returnUpdated,
+                                                         String status,
+                                                         HistoryCursor.Position after,
+                                                         boolean ascending,
+                                                         int take,
+                                                         Class<T> entityClass) {
+        final Date start = after.narrowStart(timestampSt, ascending);
+        final Date end = after.narrowEnd(timestampEnd, ascending);
+        final Comparator<T> byPosition = Comparator.<T, Date>comparing(HazelcastEntity::getTimestamp)
+                .thenComparingLong(entity -> entity.getHazelcastKey().getId());
+        final Comparator<T> order = ascending ? byPosition : byPosition.reversed();
+        if (reachesHistoryStore(start)) {
+            return find(deviceId, names, null, 0, start, end, returnUpdated, status, entityClass).stream()
+                    .filter(entity -> after.precedes(entity, ascending))
+                    .sorted(order)
+                    .limit(take > 0 ? take : Long.MAX_VALUE)
+                    .collect(Collectors.toList());
+        }
+        final Predicate filters = Predicates.and(
+                hazelcastHelper.prepareFilters(deviceId, names, null, start, end, returnUpdated, status, entityClass),
+                hazelcastHelper.prepareAfterFilter(after, ascending));
+        return new ArrayList<>(findInPartition(deviceId, filters, take, order, entityClass));
+    }
+
+    /**
+     * Oldest entities of each device since the timestamp, at most take per device, e.g. the initial history of a
+     * subscription. Devices covered by the history rings are answered locally and all other devices by a single query,
+     * which Hazelcast runs on all partitions in parallel, instead of one query per device.
+     */
+    public <T extends HazelcastEntity> Collection<T> findPerDevice(Collection<String> names,
+                                                                   Collection<String> devices,
+                                                                   Integer take,
+                                                                   Date timestampSt,
+                                                                   boolean returnUpdated,
+                                                                   Class<T> entityClass) {
+        final int limit = take != null && take > 0 ? take : 0;
+        final List<T> result = new ArrayList<>();
+        final Set<String> remaining = new HashSet<>();
+        for (String device : devices) {
+            final Optional<Collection<T>> cached = returnUpdated
+                    ? Optional.empty()
+                    : findLatest(device, names, timestampSt, limit, entityClass);
+            if (cached.isPresent()) {
+                result.addAll(cached.get());
+            } else {
+                remaining.add(device);
+            }
+        }
+        if (remaining.size() == 1) {
+            result.addAll(find(null, names, remaining, take, timestampSt, null, returnUpdated, null, entityClass));
+        } else if (!remaining.isEmpty()) {
+            find(null, names, remaining, 0, timestampSt, null, returnUpdated, null, entityClass).stream()
+                    .collect(Collectors.groupingBy(entity -> entity.getHazelcastKey().getDeviceId()))
+                    .values()
+                    .forEach(entities -> entities.stream()
+                            .sorted(Comparator.comparing(HazelcastEntity::getTimestamp))
+                            .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                            .forEach(result::add));
+        }
+        return result;
     }
 
     public <T extends HazelcastEntity> void store(final T hzEntity) {
         logger.debug("Saving entity into hazelcast. [Entity: {}]", hzEntity);
         mapsHolder.get(hzEntity.getClass()).set(hzEntity.getHazelcastKey(), hzEntity);
+        historyStore.append(hzEntity);
+    }
+
+    /**
+     * Same as {@link #store(HazelcastEntity)}, but does not wait for the map owner to acknowledge the write.
+     */
+    public <T extends HazelcastEntity> CompletableFuture<Void> storeAsync(final T hzEntity) {
+        logger.debug("Saving entity into hazelcast asynchronously. [Entity: {}]", hzEntity);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        asyncWrites.acquireUninterruptibly();
+        try {
+            mapsHolder.get(hzEntity.getClass()).setAsync(hzEntity.getHazelcastKey(), hzEntity)
+                    .andThen(new ExecutionCallback<Void>() {
+                        @Override
+                        public void onResponse(Void response) {
+                            asyncWrites.release();
+                            future.complete(null);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            asyncWrites.release();
+                            future.completeExceptionally(t);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            asyncWrites.release();
+            throw e;
+        }
+        historyStore.append(hzEntity);
+        return future;
+    }
+
+    private boolean reachesHistoryStore(Date timestampSt) {
+        return historyStore.isEnabled() && timestampSt != null
+                && timestampSt.getTime() < System.currentTimeMillis() - memoryWindow;
+    }
+
+    /**
+     * @return creation time of the entity with the given id, or the epoch for ids that do not encode a plausible one
+     */
+    private static Date createdAt(long id) {
+        final long created = EntityIdLayout.timestampOf(id);
+        return new Date(created <= System.currentTimeMillis() ? created : 0);
+    }
+
+    private <T extends HazelcastEntity> Collection<T> findRecent(String deviceId,
+                                                                 Collection<String> names,
+                                                                 Collection<String> devices,
+                                                                 Integer take,
+                                                                 Date timestampSt,
+                                                                 Date timestampEnd,
+                                                                 boolean returnUpdated,
+                                                                 String status,
+                                                                 Class<T> entityClass) {
+        final String singleDevice = StringUtils.isNotEmpty(deviceId) ? deviceId
+                : devices != null && devices.size() == 1 ? devices.iterator().next() : null;
+        // latest entities of one device, the shape of subscribe and poll requests, are served by the history rings
+        if (singleDevice != null && (devices == null || devices.isEmpty() || devices.contains(singleDevice)) && timestampSt != null
+                && timestampEnd == null && !returnUpdated && StringUtils.isEmpty(status)) {
+            final Optional<Collection<T>> cached = findLatest(singleDevice, names, timestampSt,
+                    take != null ? take : 0, entityClass);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+
+        final Predicate filters = hazelcastHelper.prepareFilters(deviceId,  names, devices, timestampSt, timestampEnd,
+               returnUpdated, status, entityClass);
+        if (StringUtils.isNotEmpty(deviceId)) {
+            return findInPartition(deviceId, filters, take, Comparator.comparing(HazelcastEntity::getTimestamp), entityClass);
+        }
+        if (devices != null && devices.size() == 1) {
+            return findInPartition(devices.iterator().next(), filters, take,
+                    Comparator.comparing(HazelcastEntity::getTimestamp), entityClass);
+        }
+        return find(filters, take, entityClass);
+    }
+
+    /**
+     * Latest entities of a device after the timestamp in ascending order, read from its history ring up to the point
+     * the ring is settled and from the device's partition after it, as the newest writes may not have reached the
+     * ring yet. The partition is not queried when the ring alone fills the page.
+     *
+     * @return empty if the ring does not cover the request
+     */
+    private <T extends HazelcastEntity> Optional<Collection<T>> findLatest(String deviceId, Collection<String> names,
+                                                                           Date timestampSt, int take, Class<T> entityClass) {
+        final long settled = historyCache.settledUntil();
+        final Optional<Collection<T>> cached = historyCache.find(deviceId, names, timestampSt, settled, take, entityClass);
+        if (!cached.isPresent() || (take > 0 && cached.get().size() >= take)) {
+            return cached;
+        }
+        final Date recentFrom = new Date(Math.max(timestampSt.getTime(), settled));
+        final Predicate filters = hazelcastHelper.prepareFilters(deviceId, names, null, recentFrom, null,
+                false, null, entityClass);
+        final List<T> result = new ArrayList<>(cached.get());
+        findInPartition(deviceId, filters, 0, Comparator.comparing(HazelcastEntity::getTimestamp), entityClass).stream()
+                .sorted(Comparator.comparing(HazelcastEntity::getTimestamp))
+                .limit(take > 0 ? take - result.size() : Long.MAX_VALUE)
+                .forEach(result::add);
+        return Optional.of(result);
+    }
+
+    /**
+     * Entries of a device share its partition, so the query runs on that partition only, or locally when the device
+     * is mirrored by the query cache. The page is sorted here in the given order instead of with
+     * {@link PagingPredicate}, which does not combine with a {@link PartitionPredicate}.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends HazelcastEntity> Collection<T> findInPartition(String deviceId, Predicate predicate, int pageSize,
+                                                                      Comparator<T> order, Class<T> tClass) {
+        final Collection<T> values = localCaches.find(deviceId, predicate, tClass)
+                .orElseGet(() -> (Collection<T>) mapsHolder.get(tClass).values(new PartitionPredicate(deviceId, predicate)));
+        if (pageSize <= 0) {
+            return values;
+        }
+        return values.stream()
+                .sorted(order)
+                .limit(pageSize)
+                .collect(Collectors.toList());
     }
 
     @SuppressWarnings("unchecked")
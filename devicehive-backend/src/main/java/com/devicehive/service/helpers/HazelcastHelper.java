@@ -23,6 +23,7 @@ package com.devicehive.service.helpers;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HistoryCursor;
 import com.hazelcast.query.Predicate;
 import com.hazelcast.query.Predicates;
 import org.apache.commons.lang3.StringUtils;
@@ -107,4 +108,57 @@ public class HazelcastHelper {
 
         return Predicates.and(predicatesArray);
     }
+
+    /**
+     * Entities that come after the cursor position when history is listed in the given direction,
+     * ordered by timestamp with ties broken by id.
+     */
+    public Predicate prepareAfterFilter(final HistoryCursor.Position after, final boolean ascending) {
+        final Predicate sameTimestamp = Predicates.equal(TIMESTAMP.getField(), after.getTimestamp());
+        if (ascending) {
+            return Predicates.or(Predicates.greaterThan(TIMESTAMP.getField(), after.getTimestamp()),
+                    Predicates.and(sameTimestamp, Predicates.greaterThan(ID.getField(), after.getId())));
+        }
+        return Predicates.or(Predicates.lessThan(TIMESTAMP.getField(), after.getTimestamp()),
+                Predicates.and(sameTimestamp, Predicates.lessThan(ID.getField(), after.getId())));
+    }
+
+    /**
+     * Same conditions as {@link #prepareFilters(String, Collection, Collection, Date, Date, boolean, String, Class)},
+     * evaluated in memory on entities read outside of Hazelcast.
+     */
+    public <T extends HazelcastEntity> java.util.function.Predicate<T> prepareLocalFilter(final String deviceId,
+                                                                                         final Collection<String> names,
+                                                                                         final Collection<String> devices,
+                                                                                         final Date timestampSt, final Date timestampEnd,
+                                                                                         final boolean returnUpdated,
+                                                                                         final String status) {
+        return entity -> {
+            String entityDevice;
+            String entityName;
+            Date time;
+            if (entity instanceof DeviceCommand) {
+                DeviceCommand command = (DeviceCommand) entity;
+                if (returnUpdated && !Boolean.TRUE.equals(command.getIsUpdated())) {
+                    return false;
+                }
+                if (StringUtils.isNotEmpty(status) && !status.equals(command.getStatus())) {
+                    return false;
+                }
+                entityDevice = command.getDeviceId();
+                entityName = command.getCommand();
+                time = returnUpdated ? command.getLastUpdated() : command.getTimestamp();
+            } else {
+                DeviceNotification notification = (DeviceNotification) entity;
+                entityDevice = notification.getDeviceId();
+                entityName = notification.getNotification();
+                time = notification.getTimestamp();
+            }
+            return (StringUtils.isEmpty(deviceId) || deviceId.equals(entityDevice))
+                    && (devices == null || devices.isEmpty() || devices.contains(entityDevice))
+                    && (names == null || names.isEmpty() || names.contains(entityName))
+                    && (timestampSt == null || (time != null && time.after(timestampSt)))
+                    && (timestampEnd == null || (time != null && time.before(timestampEnd)));
+        };
+    }
 }
@@ -0,0 +1,145 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.QueryCache;
+import com.hazelcast.monitor.NearCacheStats;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.devicehive.model.enums.SearchableField.DEVICE_ID;
+
+/**
+ * Client side copies of the notification and command maps. Near caches serve lookups by key; the continuous query
+ * cache, indexed by device, serves history queries of the covered devices without a round trip to the cluster.
+ * The caches themselves are declared on the client config, see {@code HazelcastConfiguration}.
+ *
+ * A query cache can only answer history queries if it holds every entry of the device, so it never evicts and
+ * it is only used when {@code hazelcast.query-cache.devices} limits it to a known set of devices. Mirroring every
+ * device would need eviction, after which the cache could silently miss entries, so it is not created then.
+ */
+@Component
+public class HazelcastLocalCaches {
+
+    private static final Logger logger = LoggerFactory.getLogger(HazelcastLocalCaches.class);
+
+    public static final String QUERY_CACHE_NAME = "DEVICE-HISTORY";
+
+    private final boolean nearCacheEnabled;
+    private final boolean queryCacheEnabled;
+    private final Set<String> queryCacheDevices;
+
+    private final Map<Class, IMap<HazelcastEntityKey, HazelcastEntity>> maps = new HashMap<>(2);
+    private final Map<Class, QueryCache<HazelcastEntityKey, HazelcastEntity>> queryCaches = new HashMap<>(2);
+
+    private final LongAdder queryCacheHits = new LongAdder();
+    private final LongAdder queryCacheMisses = new LongAdder();
+
+    public HazelcastLocalCaches(@Value("${hazelcast.near-cache.enabled:false}") boolean nearCacheEnabled,
+                                @Value("${hazelcast.query-cache.enabled:false}") boolean queryCacheEnabled,
+                                @Value("${hazelcast.query-cache.devices:}") String queryCacheDevices) {
+        this.nearCacheEnabled = nearCacheEnabled;
+        this.queryCacheDevices = new HashSet<>(Arrays.asList(StringUtils.split(queryCacheDevices, ',')));
+        if (queryCacheEnabled && this.queryCacheDevices.isEmpty()) {
+            logger.warn("Query cache is disabled: hazelcast.query-cache.devices is empty, and a cache of every device " +
+                    "would have to evict entries it is expected to return");
+        }
+        this.queryCacheEnabled = queryCacheEnabled && !this.queryCacheDevices.isEmpty();
+    }
+
+    public boolean isNearCacheEnabled() {
+        return nearCacheEnabled;
+    }
+
+    public boolean isQueryCacheEnabled() {
+        return queryCacheEnabled;
+    }
+
+    /**
+     * Entries mirrored by the query cache: those of the configured devices.
+     */
+    public Predicate queryCacheScope() {
+        return Predicates.in(DEVICE_ID.getField(), queryCacheDevices.toArray(new String[queryCacheDevices.size()]));
+    }
+
+    public void register(Class<? extends HazelcastEntity> entityClass, IMap<HazelcastEntityKey, HazelcastEntity> map) {
+        maps.put(entityClass, map);
+        if (queryCacheEnabled) {
+            queryCaches.put(entityClass, map.getQueryCache(QUERY_CACHE_NAME));
+        }
+    }
+
+    /**
+     * Entries of {@code deviceId} matching {@code predicate}, empty when the device is not mirrored locally.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends HazelcastEntity> Optional<Collection<T>> find(String deviceId, Predicate predicate, Class<T> entityClass) {
+        final QueryCache<HazelcastEntityKey, HazelcastEntity> queryCache = queryCaches.get(entityClass);
+        if (queryCache == null) {
+            return Optional.empty();
+        }
+        if (!queryCacheDevices.contains(deviceId)) {
+            queryCacheMisses.increment();
+            return Optional.empty();
+        }
+        queryCacheHits.increment();
+        return Optional.of((Collection<T>) queryCache.values(predicate));
+    }
+
+    @Scheduled(fixedDelayString = "${hazelcast.local-cache.stats.period:60000}")
+    public void logStats() {
+        if (nearCacheEnabled) {
+            maps.forEach((entityClass, map) -> {
+                final NearCacheStats stats = nearCacheStats(map);
+                if (stats != null) {
+                    logger.info("Near cache of {}: entries={}, hits={}, misses={}, ratio={}",
+                            map.getName(), stats.getOwnedEntryCount(), stats.getHits(), stats.getMisses(), stats.getRatio());
+                }
+            });
+        }
+        if (queryCacheEnabled) {
+            logger.info("Query cache: {}, hits={}, misses={}", queryCaches.values().stream()
+                            .map(cache -> cache.getName() + " entries=" + cache.size())
+                            .reduce((a, b) -> a + ", " + b).orElse("none"),
+                    queryCacheHits.sum(), queryCacheMisses.sum());
+        }
+    }
+
+    private static NearCacheStats nearCacheStats(IMap<?, ?> map) {
+        try {
+            return map.getLocalMapStats().getNearCacheStats();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
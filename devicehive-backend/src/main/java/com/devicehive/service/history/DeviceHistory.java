@@ -0,0 +1,173 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Bounded ring of the latest entities of one device, ordered by timestamp.
+ *
+ * The ring holds every entity of the device with timestamp after {@link #coveredFrom}; older entities were either
+ * evicted or written before the ring started listening, and such requests have to go to Hazelcast.
+ * A ring that expired completely can be closed and dropped, see {@link #close(long)}.
+ */
+class DeviceHistory<T extends HazelcastEntity> {
+
+    private final Object[] ring;
+    private int head;
+    private int size;
+    private long coveredFrom;
+    private boolean closed;
+
+    DeviceHistory(int depth, long coveredFrom) {
+        this.ring = new Object[depth];
+        this.coveredFrom = coveredFrom;
+    }
+
+    /**
+     * @return false if the ring is closed and the entity has to go to a new ring
+     */
+    synchronized boolean add(T entity, long minTimestamp) {
+        if (closed) {
+            return false;
+        }
+        evictOlderThan(minTimestamp);
+        long timestamp = timestampOf(entity);
+        if (timestamp <= coveredFrom) {
+            return true;
+        }
+        if (size == ring.length) {
+            evictFirst();
+            if (timestamp <= coveredFrom) {
+                return true;
+            }
+        }
+        // entities mostly come in order, so the insertion point is found from the tail
+        int position = size;
+        while (position > 0 && timestampOf(get(position - 1)) > timestamp) {
+            set(position, get(position - 1));
+            position--;
+        }
+        set(position, entity);
+        size++;
+        return true;
+    }
+
+    /**
+     * Replaces an updated entity in place, its timestamp is not changed by updates.
+     */
+    synchronized void replace(T entity) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (get(i).getHazelcastKey().equals(entity.getHazelcastKey())) {
+                set(i, entity);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return entities with timestamp after the first given one and up to the second one in ascending order, or null
+     * if the ring does not cover the first one
+     */
+    synchronized List<T> find(long after, long until, Collection<String> names, int take, long minTimestamp,
+                              Function<T, String> nameOf) {
+        evictOlderThan(minTimestamp);
+        if (after < coveredFrom) {
+            return null;
+        }
+        List<T> found = new ArrayList<>();
+        for (int i = firstAfter(after); i < size && (take <= 0 || found.size() < take); i++) {
+            T entity = get(i);
+            if (timestampOf(entity) > until) {
+                break;
+            }
+            if (names == null || names.isEmpty() || names.contains(nameOf.apply(entity))) {
+                found.add(entity);
+            }
+        }
+        return found;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Closes the ring if none of its entities are newer than the given timestamp. A closed ring accepts no more
+     * entities, so it can be dropped without losing a concurrent {@link #add}.
+     *
+     * @return true if the ring was closed
+     */
+    synchronized boolean close(long minTimestamp) {
+        evictOlderThan(minTimestamp);
+        closed = size == 0;
+        return closed;
+    }
+
+    synchronized long coveredFrom() {
+        return coveredFrom;
+    }
+
+    private int firstAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestampOf(get(middle)) <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void evictOlderThan(long minTimestamp) {
+        while (size > 0 && timestampOf(get(0)) < minTimestamp) {
+            evictFirst();
+        }
+    }
+
+    private void evictFirst() {
+        coveredFrom = Math.max(coveredFrom, timestampOf(get(0)));
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) ring[(head + index) % ring.length];
+    }
+
+    private void set(int index, T entity) {
+        ring[(head + index) % ring.length] = entity;
+    }
+
+    private static long timestampOf(HazelcastEntity entity) {
+        return entity.getTimestamp() != null ? entity.getTimestamp().getTime() : 0;
+    }
+}
@@ -0,0 +1,354 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Append-only log of notifications and commands in a directory shared by all backend nodes, e.g. a network volume,
+ * split into hourly segments per entity kind and writer. Every node appends only to its own segments and reads the
+ * segments of all nodes, so history stored through any node is found through every other one.
+ *
+ * Entities are written behind by a single thread in batches, each synced to the disk, so storing never waits for it;
+ * when the queue is full entities are dropped from the log (they are still in Hazelcast) and counted. Every line
+ * carries its write time, updated commands are appended again and the latest written version wins on reads, even
+ * when the versions were written by different nodes. Segments older than the retention period are deleted by
+ * whichever node rolls over first.
+ */
+public class FileHistoryStore implements HistoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(FileHistoryStore.class);
+
+    private static final DateTimeFormatter SEGMENT_HOUR = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final char WRITE_TIME_SEPARATOR = '\t';
+
+    private final Path directory;
+    private final String writerId;
+    private final Gson gson;
+    private final int batchSize;
+    private final long retention;
+    private final BlockingQueue<HazelcastEntity> queue;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running = true;
+    private String currentHour;
+
+    /**
+     * @param writerId unique among the nodes sharing the directory, names the segments this node appends to
+     */
+    public FileHistoryStore(Path directory, String writerId, Gson gson, int queueSize, int batchSize, long retention)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.writerId = writerId;
+        this.gson = gson;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.writer = new Thread(this::writeLoop, "history-store-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void append(HazelcastEntity entity) {
+        if (!queue.offer(entity)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Reads the hours newest first and stops at the first one holding the entity, which has its latest version.
+     */
+    @Override
+    public <T extends HazelcastEntity> Optional<T> find(Class<T> entityClass, HazelcastEntityKey key, Date from) {
+        String firstHour = firstHour(from);
+        // cheap check before parsing, the key is compared on the parsed entity anyway
+        String idToken = "\"id\":" + key.getId();
+        List<Path> segments = segments(kindOf(entityClass));
+        int end = segments.size();
+        while (end > 0 && hourOf(segments.get(end - 1)).compareTo(firstHour) >= 0) {
+            String hour = hourOf(segments.get(end - 1));
+            int start = end - 1;
+            while (start > 0 && hourOf(segments.get(start - 1)).equals(hour)) {
+                start--;
+            }
+            Map<HazelcastEntityKey, Written<T>> latest = new HashMap<>(1);
+            for (Path segment : segments.subList(start, end)) {
+                read(segment, entityClass, line -> line.contains(idToken), written -> {
+                    if (key.equals(written.entity.getHazelcastKey())) {
+                        keepLatest(latest, written);
+                    }
+                });
+            }
+            if (!latest.isEmpty()) {
+                return Optional.of(latest.get(key).entity);
+            }
+            end = start;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads segments oldest first. Entities are never filed before their timestamp minus the slack, so once take
+     * matching entities are older than that bound of the next segment, the rest of the log cannot change the page.
+     * Commands can be updated in any later segment, so their whole range is read.
+     */
+    @Override
+    public <T extends HazelcastEntity> List<T> find(Class<T> entityClass, Date from, Predicate<T> filter, int take) {
+        String firstHour = firstHour(from);
+        boolean updatable = DeviceCommand.class.equals(entityClass);
+        Map<HazelcastEntityKey, Written<T>> latest = new HashMap<>();
+        for (Path segment : segments(kindOf(entityClass))) {
+            String hour = hourOf(segment);
+            if (hour.compareTo(firstHour) < 0) {
+                continue;
+            }
+            if (take > 0 && !updatable && countFiledBefore(latest.values(), hour) >= take) {
+                break;
+            }
+            read(segment, entityClass, line -> true, written -> {
+                // entities that are never updated are filtered right away, so only matches are kept
+                if (updatable || filter.test(written.entity)) {
+                    keepLatest(latest, written);
+                }
+            });
+        }
+        List<T> found = new ArrayList<>();
+        for (Written<T> written : latest.values()) {
+            if (!updatable || filter.test(written.entity)) {
+                found.add(written.entity);
+            }
+        }
+        found.sort(Comparator.comparing(HazelcastEntity::getTimestamp));
+        return take > 0 && found.size() > take ? new ArrayList<>(found.subList(0, take)) : found;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<HazelcastEntity> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                HazelcastEntity first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                }
+                rollIfNeeded();
+            } catch (InterruptedException e) {
+                // shutdown flag decides whether to stop, the rest of the queue is still written
+            } catch (RuntimeException | IOException e) {
+                logger.error("Failed to write {} history entries", batch.size(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<HazelcastEntity> batch) throws IOException {
+        Instant now = Instant.now();
+        String hour = SEGMENT_HOUR.format(now);
+        Map<String, StringBuilder> lines = new HashMap<>(2);
+        for (HazelcastEntity entity : batch) {
+            lines.computeIfAbsent(kindOf(entity.getClass()), kind -> new StringBuilder())
+                    .append(now.toEpochMilli()).append(WRITE_TIME_SEPARATOR)
+                    .append(gson.toJson(entity)).append('\n');
+        }
+        for (Map.Entry<String, StringBuilder> entry : lines.entrySet()) {
+            Path segment = directory.resolve(entry.getKey() + "-" + hour + "-" + writerId + SEGMENT_SUFFIX);
+            ByteBuffer bytes = ByteBuffer.wrap(entry.getValue().toString().getBytes(StandardCharsets.UTF_8));
+            try (FileChannel out = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(false);
+            }
+        }
+    }
+
+    /**
+     * Passes the entities of the segment's lines accepted by the line filter to the consumer. A line that does not
+     * parse is skipped, as the last line of a segment another node is appending to may not be complete yet; a segment
+     * deleted by the retention of another node meanwhile is skipped too.
+     */
+    private <T extends HazelcastEntity> void read(Path segment, Class<T> entityClass, Predicate<String> lineFilter,
+                                                  Consumer<Written<T>> consumer) {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!lineFilter.test(line)) {
+                    continue;
+                }
+                int separator = line.indexOf(WRITE_TIME_SEPARATOR);
+                try {
+                    long writtenAt = Long.parseLong(line.substring(0, separator));
+                    T entity = gson.fromJson(line.substring(separator + 1), entityClass);
+                    if (entity != null) {
+                        consumer.accept(new Written<>(writtenAt, entity));
+                    }
+                } catch (JsonParseException | IndexOutOfBoundsException | NumberFormatException e) {
+                    logger.debug("Skipped incomplete line of history segment {}", segment);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug("History segment {} was deleted while reading", segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read history segment " + segment, e);
+        }
+    }
+
+    /**
+     * Keeps the version written last; on equal write times the one read later, which is the later line of a segment.
+     */
+    private static <T extends HazelcastEntity> void keepLatest(Map<HazelcastEntityKey, Written<T>> latest,
+                                                                Written<T> written) {
+        latest.merge(written.entity.getHazelcastKey(), written,
+                (kept, candidate) -> candidate.writtenAt >= kept.writtenAt ? candidate : kept);
+    }
+
+    private void rollIfNeeded() throws IOException {
+        String hour = SEGMENT_HOUR.format(Instant.now());
+        if (hour.equals(currentHour)) {
+            return;
+        }
+        currentHour = hour;
+        String oldestKept = SEGMENT_HOUR.format(Instant.now().minusMillis(retention));
+        for (String kind : Arrays.asList(kindOf(DeviceNotification.class), kindOf(DeviceCommand.class))) {
+            for (Path segment : segments(kind)) {
+                if (hourOf(segment).compareTo(oldestKept) < 0) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        }
+    }
+
+    private List<Path> segments(String kind) {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, kind + "-*" + SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list history segments", e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Entities are filed by write time, which is not before their timestamp; an hour of slack covers clock skew.
+     */
+    private static String firstHour(Date from) {
+        return SEGMENT_HOUR.format(from.toInstant().minus(1, ChronoUnit.HOURS));
+    }
+
+    /**
+     * @return number of entities that could not have been filed in the segment of the given hour or later
+     */
+    private static long countFiledBefore(Collection<? extends Written<?>> entities, String hour) {
+        return entities.stream()
+                .map(written -> written.entity.getTimestamp().toInstant().plus(1, ChronoUnit.HOURS))
+                .filter(bound -> SEGMENT_HOUR.format(bound).compareTo(hour) < 0)
+                .count();
+    }
+
+    /**
+     * Segments are named kind-hour-writer, the writer id may contain dashes itself.
+     */
+    private static String hourOf(Path segment) {
+        String name = segment.getFileName().toString();
+        int start = name.indexOf('-') + 1;
+        return name.substring(start, name.indexOf('-', start));
+    }
+
+    private static String kindOf(Class<?> entityClass) {
+        if (DeviceNotification.class.equals(entityClass)) {
+            return "notification";
+        }
+        if (DeviceCommand.class.equals(entityClass)) {
+            return "command";
+        }
+        throw new IllegalArgumentException("No history kept for " + entityClass);
+    }
+
+    private static class Written<T extends HazelcastEntity> {
+        private final long writtenAt;
+        private final T entity;
+
+        private Written(long writtenAt, T entity) {
+            this.writtenAt = writtenAt;
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import com.hazelcast.core.EntryAdapter;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Node-local history of the latest notifications and commands of each device, fed by Hazelcast entry listeners.
+ * Answers "everything of a device after timestamp T, limit N" with a binary search in the device ring instead of a
+ * cluster-wide predicate query. Requests the rings do not cover fall back to Hazelcast.
+ *
+ * Listener events arrive asynchronously, so a write that was just acknowledged may not be in the ring yet. Rings only
+ * answer up to {@link #settledUntil()}, {@code history.ring.listener-lag} ms ago, and the caller reads the newer
+ * entities from Hazelcast. A device without a ring is a miss as well, since its first entity may still be on its way.
+ *
+ * Every backend node listens to the whole notification and command maps with values, so each write is delivered
+ * to every node: the listener traffic is the cluster write rate times the number of backend nodes. Where that is
+ * too much, set {@code history.ring.depth} to 0 and history requests go to Hazelcast as before. Rings of devices
+ * that wrote nothing for {@code history.ring.max-age} are dropped by {@link #prune()}.
+ */
+@Component
+public class HistoryCache {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryCache.class);
+
+    private final int depth;
+    private final long maxAge;
+    private final long listenerLag;
+
+    private final Kind<DeviceNotification> notifications = new Kind<>(DeviceNotification::getNotification);
+    private final Kind<DeviceCommand> commands = new Kind<>(DeviceCommand::getCommand);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public HistoryCache(@Value("${history.ring.depth:100}") int depth,
+                        @Value("${history.ring.max-age:120000}") long maxAge,
+                        @Value("${history.ring.listener-lag:2000}") long listenerLag) {
+        this.depth = depth;
+        this.maxAge = maxAge;
+        this.listenerLag = listenerLag;
+    }
+
+    public boolean isEnabled() {
+        return depth > 0;
+    }
+
+    public void listenNotifications(IMap<HazelcastEntityKey, HazelcastEntity> map) {
+        listen(map, notifications);
+    }
+
+    public void listenCommands(IMap<HazelcastEntityKey, HazelcastEntity> map) {
+        listen(map, commands);
+    }
+
+    /**
+     * @return time up to which the rings are assumed to have received every acknowledged write
+     */
+    public long settledUntil() {
+        return System.currentTimeMillis() - listenerLag;
+    }
+
+    /**
+     * @param until usually {@link #settledUntil()}, entities after it are left to Hazelcast
+     * @return entities of the device with timestamp after the given one and up to until in ascending order, empty if
+     * the device has no ring or its history does not reach that far back
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends HazelcastEntity> Optional<Collection<T>> find(String deviceId, Collection<String> names,
+                                                                    Date timestamp, long until, int take,
+                                                                    Class<T> entityClass) {
+        Kind<T> kind = (Kind<T>) kindOf(entityClass);
+        if (kind == null || !isEnabled()) {
+            return Optional.empty();
+        }
+        DeviceHistory<T> history = kind.devices.get(deviceId);
+        Collection<T> found = history != null
+                ? history.find(timestamp.getTime(), until, names, take, minTimestamp(), kind.nameOf)
+                : null;
+        if (found == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(found);
+    }
+
+    @Scheduled(fixedDelayString = "${history.ring.stats.period:60000}")
+    public void logStats() {
+        if (isEnabled()) {
+            logger.info("History cache: {} notification and {} command rings, hits={}, misses={}",
+                    notifications.devices.size(), commands.devices.size(), hits.sum(), misses.sum());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${history.ring.prune.period:60000}")
+    public void prune() {
+        if (isEnabled()) {
+            long minTimestamp = minTimestamp();
+            notifications.prune(minTimestamp);
+            commands.prune(minTimestamp);
+        }
+    }
+
+    private Kind<?> kindOf(Class<?> entityClass) {
+        if (DeviceNotification.class.equals(entityClass)) {
+            return notifications;
+        }
+        if (DeviceCommand.class.equals(entityClass)) {
+            return commands;
+        }
+        return null;
+    }
+
+    private long minTimestamp() {
+        return System.currentTimeMillis() - maxAge;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends HazelcastEntity> void listen(IMap<HazelcastEntityKey, HazelcastEntity> map, Kind<T> kind) {
+        if (!isEnabled()) {
+            return;
+        }
+        map.addEntryListener(new EntryAdapter<HazelcastEntityKey, HazelcastEntity>() {
+            @Override
+            public void entryAdded(EntryEvent<HazelcastEntityKey, HazelcastEntity> event) {
+                kind.add(event.getKey().getDeviceId(), (T) event.getValue());
+            }
+
+            @Override
+            public void entryUpdated(EntryEvent<HazelcastEntityKey, HazelcastEntity> event) {
+                kind.history(event.getKey().getDeviceId()).replace((T) event.getValue());
+            }
+
+            @Override
+            public void mapCleared(MapEvent event) {
+                kind.reset();
+            }
+        }, true);
+        kind.reset();
+    }
+
+    private class Kind<T extends HazelcastEntity> {
+        private final Map<String, DeviceHistory<T>> devices = new ConcurrentHashMap<>();
+        private final Function<T, String> nameOf;
+        private volatile long since = Long.MAX_VALUE;
+
+        Kind(Function<T, String> nameOf) {
+            this.nameOf = nameOf;
+        }
+
+        DeviceHistory<T> history(String deviceId) {
+            return devices.computeIfAbsent(deviceId, id -> new DeviceHistory<>(depth, since));
+        }
+
+        void add(String deviceId, T entity) {
+            DeviceHistory<T> history = history(deviceId);
+            while (!history.add(entity, minTimestamp())) {
+                // the ring was closed by prune, replace it with a new one
+                devices.remove(deviceId, history);
+                history = history(deviceId);
+            }
+        }
+
+        /**
+         * Drops expired rings. A new ring covers its device only from {@link #since}, so it is moved past
+         * the entities the dropped rings have evicted.
+         */
+        void prune(long minTimestamp) {
+            devices.forEach((deviceId, history) -> {
+                if (history.close(minTimestamp)) {
+                    cover(history.coveredFrom());
+                    devices.remove(deviceId, history);
+                }
+            });
+        }
+
+        synchronized void cover(long from) {
+            since = Math.max(since, from);
+        }
+
+        synchronized void reset() {
+            since = System.currentTimeMillis();
+            devices.clear();
+        }
+    }
+}
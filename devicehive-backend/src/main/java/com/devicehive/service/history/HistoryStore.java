@@ -0,0 +1,81 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Long-term store of notifications and commands, for history older than the Hazelcast maps keep.
+ */
+public interface HistoryStore {
+
+    HistoryStore NONE = new HistoryStore() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void append(HazelcastEntity entity) {
+        }
+
+        @Override
+        public <T extends HazelcastEntity> Optional<T> find(Class<T> entityClass, HazelcastEntityKey key, Date from) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T extends HazelcastEntity> List<T> find(Class<T> entityClass, Date from, Predicate<T> filter, int take) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * Queues the entity for writing, never blocks the caller.
+     */
+    void append(HazelcastEntity entity);
+
+    /**
+     * @return latest version of the entity, searched among entities written since the given time
+     */
+    <T extends HazelcastEntity> Optional<T> find(Class<T> entityClass, HazelcastEntityKey key, Date from);
+
+    /**
+     * @return latest version of each entity written since the given time and matching the filter, ordered by timestamp,
+     * the first take of them if take is positive
+     */
+    <T extends HazelcastEntity> List<T> find(Class<T> entityClass, Date from, Predicate<T> filter, int take);
+
+    void shutdown();
+}
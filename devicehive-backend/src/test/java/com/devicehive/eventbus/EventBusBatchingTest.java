@@ -0,0 +1,84 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.eventbus.Subscriber;
+import com.devicehive.model.eventbus.Subscription;
+import com.devicehive.model.eventbus.events.NotificationEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class EventBusBatchingTest {
+
+    private EventBus eventBus;
+    private MessageDispatcher dispatcher;
+    private SubscriberRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = mock(MessageDispatcher.class);
+        registry = mock(SubscriberRegistry.class);
+        eventBus = new EventBus(dispatcher, registry, true);
+    }
+
+    @Test
+    public void shouldSendOneResponsePerReplyTopic() throws Exception {
+        String deviceId = "device-1";
+        Subscriber subscriber1 = new Subscriber(1L, "frontend_1", "correlation_1");
+        Subscriber subscriber2 = new Subscriber(2L, "frontend_1", "correlation_2");
+        Subscriber subscriber3 = new Subscriber(3L, "frontend_2", "correlation_3");
+        when(registry.getSubscribers(new Subscription(Action.NOTIFICATION_EVENT.name(), deviceId)))
+                .thenReturn(Arrays.asList(subscriber1, subscriber2, subscriber3));
+
+        DeviceNotification notification = new DeviceNotification();
+        notification.setDeviceId(deviceId);
+        notification.setNotification("temperature");
+        notification.setId(0);
+        NotificationEvent event = new NotificationEvent(notification);
+        eventBus.publish(event);
+
+        ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+
+        verify(dispatcher, times(2)).send(topicCaptor.capture(), responseCaptor.capture());
+        assertThat(topicCaptor.getAllValues(), contains("frontend_1", "frontend_2"));
+
+        Response batched = responseCaptor.getAllValues().get(0);
+        assertThat(batched.getCorrelationIds(), contains("correlation_1", "correlation_2"));
+        assertEquals(event, batched.getBody());
+        assertFalse(batched.isLast());
+
+        Response single = responseCaptor.getAllValues().get(1);
+        assertEquals("correlation_3", single.getCorrelationId());
+        assertNull(single.getCorrelationIds());
+    }
+}
@@ -0,0 +1,177 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.model.eventbus.Filter;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.DistributedObject;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.*;
+
+public class FilterRegistryTest {
+
+    private static HazelcastInstance hazelcast;
+
+    private final FilterRegistry registry = new FilterRegistry();
+
+    @BeforeClass
+    public static void startHazelcast() throws Exception {
+        Config config = new Config();
+        config.getGroupConfig().setName("filter-registry-test");
+        config.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterClass
+    public static void stopHazelcast() throws Exception {
+        hazelcast.shutdown();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        hazelcast.getDistributedObjects().forEach(DistributedObject::destroy);
+        registry.getHazelcastMaps(hazelcast);
+    }
+
+    @Test
+    public void shouldIndexNetworksOfTrackingSubscription() throws Exception {
+        registry.register(filter(false, networks(1L, 2L), principal(true, null)), 10L, true);
+
+        assertThat(subscriptionIds(1L), containsInAnyOrder(10L));
+        assertThat(subscriptionIds(2L), containsInAnyOrder(10L));
+        assertThat(subscriptionIds(3L), empty());
+    }
+
+    @Test
+    public void shouldOnlyKeepFilterOfScopedSubscription() throws Exception {
+        registry.register(filter(false, networks(1L), principal(true, null)), 10L, false);
+        registry.register(filter(true, null, principal(true, null)), 11L, false);
+
+        assertEquals(networks(1L), registry.getFilter(10L).getNetworkIds());
+        assertTrue(registry.getFilter(11L).isGlobal());
+        assertThat(subscriptionIds(1L), empty());
+        assertThat(subscriptionIds(null), empty());
+    }
+
+    @Test
+    public void shouldTrackGlobalSubscriptionInEveryNetwork() throws Exception {
+        registry.register(filter(true, null, principal(true, null)), 10L, true);
+        registry.register(filter(false, networks(1L), principal(true, null)), 11L, true);
+
+        assertThat(subscriptionIds(1L), containsInAnyOrder(10L, 11L));
+        assertThat(subscriptionIds(2L), containsInAnyOrder(10L));
+        assertThat(subscriptionIds(null), containsInAnyOrder(10L));
+    }
+
+    @Test
+    public void shouldNarrowGlobalFilterToNetworksOfPrincipal() throws Exception {
+        registry.register(filter(true, null, principal(false, networks(3L))), 10L, true);
+
+        Filter filter = registry.getFilter(10L);
+        assertFalse(filter.isGlobal());
+        assertEquals(networks(3L), filter.getNetworkIds());
+        assertThat(subscriptionIds(3L), containsInAnyOrder(10L));
+        assertThat(subscriptionIds(4L), empty());
+    }
+
+    @Test
+    public void shouldFindFilterBySubscriptionId() throws Exception {
+        Filter filter = filter(false, networks(1L), principal(true, null));
+        filter.setEventName("NOTIFICATION_EVENT");
+        filter.setNames(new HashSet<>(Arrays.asList("temperature", "humidity")));
+        registry.register(filter, 10L);
+
+        Filter found = registry.getFilter(10L);
+        assertEquals("NOTIFICATION_EVENT", found.getEventName());
+        assertEquals(filter.getNames(), found.getNames());
+        assertEquals(networks(1L), found.getNetworkIds());
+        assertNull(registry.getFilter(11L));
+    }
+
+    @Test
+    public void shouldUnregisterFromAllIndexes() throws Exception {
+        registry.register(filter(false, networks(1L, 2L), principal(true, null)), 10L);
+        registry.register(filter(true, null, principal(true, null)), 11L);
+        registry.register(filter(false, networks(1L), principal(true, null)), 12L);
+
+        registry.unregister(10L);
+        registry.unregister(11L);
+
+        assertNull(registry.getFilter(10L));
+        assertNull(registry.getFilter(11L));
+        assertThat(subscriptionIds(1L), containsInAnyOrder(12L));
+        assertThat(subscriptionIds(2L), empty());
+        assertThat(subscriptionIds(null), empty());
+    }
+
+    @Test
+    public void shouldIgnoreUnknownSubscriptionOnUnregister() throws Exception {
+        registry.register(filter(false, networks(1L), principal(true, null)), 10L);
+
+        registry.unregister(11L);
+
+        assertThat(subscriptionIds(1L), containsInAnyOrder(10L));
+    }
+
+    private Set<Long> subscriptionIds(Long networkId) {
+        return registry.getSubscriptions(networkId).stream().map(Pair::getLeft).collect(Collectors.toSet());
+    }
+
+    private static Filter filter(boolean global, Set<Long> networkIds, HivePrincipal principal) {
+        Filter filter = new Filter();
+        filter.setGlobal(global);
+        filter.setNetworkIds(networkIds);
+        filter.setPrincipal(principal);
+        return filter;
+    }
+
+    private static HivePrincipal principal(boolean allNetworks, Set<Long> networkIds) {
+        HivePrincipal principal = new HivePrincipal();
+        principal.setAllDevicesAvailable(true);
+        principal.setAllNetworksAvailable(allNetworks);
+        principal.setNetworkIds(networkIds);
+        return principal;
+    }
+
+    private static Set<Long> networks(Long... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}
@@ -0,0 +1,61 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.eventbus.Subscriber;
+import com.devicehive.model.eventbus.Subscription;
+import com.devicehive.shim.api.Action;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.*;
+
+public class SubscriberIndexTest {
+
+    private final SubscriberIndex index = new SubscriberIndex();
+
+    @Test
+    public void shouldResolveSubscribersLocally() throws Exception {
+        Subscription subscription = new Subscription(Action.NOTIFICATION_EVENT.name(), "device-1");
+        Subscriber subscriber = new Subscriber(1L, "reply_topic", "correlation_id");
+        index.putSubscriber(subscriber);
+        index.addSubscription(subscription, 1L);
+        index.addSubscription(subscription, 2L);
+
+        assertThat(index.getSubscriberIds(subscription), containsInAnyOrder(1L, 2L));
+        assertEquals(subscriber, index.getSubscriber(1L));
+        assertNull(index.getSubscriber(2L));
+        assertEquals(1, index.getHits());
+        assertEquals(1, index.getStaleReads());
+    }
+
+    @Test
+    public void shouldDropEmptySubscriptions() throws Exception {
+        Subscription subscription = new Subscription(Action.COMMAND_EVENT.name(), "device-1");
+        index.addSubscription(subscription, 1L);
+        index.removeSubscription(subscription, 1L);
+
+        assertThat(index.getSubscriberIds(subscription), empty());
+        assertEquals(0, index.size());
+        assertEquals(1, index.getMisses());
+    }
+}
@@ -0,0 +1,127 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.eventbus.Subscriber;
+import com.devicehive.model.eventbus.Subscription;
+import com.devicehive.model.eventbus.events.CommandEvent;
+import com.devicehive.model.eventbus.events.NotificationEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class SubscriptionRoutingTest {
+
+    private static final String NOTIFICATION = Action.NOTIFICATION_EVENT.name();
+
+    private EventBus eventBus;
+    private MessageDispatcher dispatcher;
+    private SubscriberRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = mock(MessageDispatcher.class);
+        registry = mock(SubscriberRegistry.class);
+        eventBus = new EventBus(dispatcher, registry);
+    }
+
+    @Test
+    public void shouldApplyDeviceNetworkAndGlobalSubscriptionsToNotification() throws Exception {
+        NotificationEvent event = new NotificationEvent(notification("device-1", "temperature"), 7L);
+
+        assertThat(event.getApplicableSubscriptions(), containsInAnyOrder(
+                new Subscription(NOTIFICATION, "device-1"),
+                new Subscription(NOTIFICATION, "device-1", "temperature"),
+                Subscription.network(NOTIFICATION, 7L, null),
+                Subscription.network(NOTIFICATION, 7L, "temperature"),
+                Subscription.global(NOTIFICATION, null),
+                Subscription.global(NOTIFICATION, "temperature")));
+    }
+
+    @Test
+    public void shouldSkipNetworkSubscriptionsWithoutNetworkId() throws Exception {
+        DeviceCommand command = new DeviceCommand();
+        command.setDeviceId("device-1");
+        command.setCommand("reboot");
+        String type = Action.COMMAND_EVENT.name();
+
+        assertThat(new CommandEvent(command).getApplicableSubscriptions(), containsInAnyOrder(
+                new Subscription(type, "device-1"),
+                new Subscription(type, "device-1", "reboot"),
+                Subscription.global(type, null),
+                Subscription.global(type, "reboot")));
+    }
+
+    @Test
+    public void shouldRouteEventToSubscribersOfEveryScope() throws Exception {
+        Subscriber deviceSubscriber = new Subscriber(1L, "frontend_1", "device_correlation");
+        Subscriber networkSubscriber = new Subscriber(2L, "frontend_1", "network_correlation");
+        Subscriber globalSubscriber = new Subscriber(3L, "frontend_2", "global_correlation");
+        when(registry.getSubscribers(new Subscription(NOTIFICATION, "device-1")))
+                .thenReturn(Collections.singletonList(deviceSubscriber));
+        when(registry.getSubscribers(Subscription.network(NOTIFICATION, 7L, "temperature")))
+                .thenReturn(Collections.singletonList(networkSubscriber));
+        when(registry.getSubscribers(Subscription.global(NOTIFICATION, null)))
+                .thenReturn(Collections.singletonList(globalSubscriber));
+
+        eventBus.publish(new NotificationEvent(notification("device-1", "temperature"), 7L));
+
+        ArgumentCaptor<Response> responses = ArgumentCaptor.forClass(Response.class);
+        verify(dispatcher, times(3)).send(anyString(), responses.capture());
+        assertThat(responses.getAllValues().stream().map(Response::getCorrelationId).toArray(),
+                arrayContainingInAnyOrder("device_correlation", "network_correlation", "global_correlation"));
+    }
+
+    @Test
+    public void shouldNotRouteEventOfOtherNetworkToNetworkSubscribers() throws Exception {
+        Subscriber networkSubscriber = new Subscriber(2L, "frontend_1", "network_correlation");
+        Subscriber globalSubscriber = new Subscriber(3L, "frontend_2", "global_correlation");
+        when(registry.getSubscribers(Subscription.network(NOTIFICATION, 7L, null)))
+                .thenReturn(Collections.singletonList(networkSubscriber));
+        when(registry.getSubscribers(Subscription.global(NOTIFICATION, null)))
+                .thenReturn(Collections.singletonList(globalSubscriber));
+
+        eventBus.publish(new NotificationEvent(notification("device-2", "temperature"), 8L));
+
+        verify(dispatcher).send(eq("frontend_2"), any(Response.class));
+        verifyNoMoreInteractions(dispatcher);
+    }
+
+    private static DeviceNotification notification(String deviceId, String name) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(0);
+        notification.setDeviceId(deviceId);
+        notification.setNotification(name);
+        return notification;
+    }
+}
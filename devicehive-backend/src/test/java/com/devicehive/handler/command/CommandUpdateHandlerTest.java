@@ -0,0 +1,101 @@
+package com.devicehive.handler.command;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.base.AbstractSpringTest;
+import com.devicehive.eventbus.EventBus;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.eventbus.events.CommandUpdateEvent;
+import com.devicehive.model.eventbus.events.CommandsUpdateEvent;
+import com.devicehive.model.eventbus.events.Event;
+import com.devicehive.model.rpc.CommandUpdateRequest;
+import com.devicehive.model.rpc.CommandsUpdateRequest;
+import com.devicehive.service.HazelcastService;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.devicehive.handler.command.CommandTestUtils.generateCommand;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CommandUpdateHandlerTest extends AbstractSpringTest {
+
+    @Autowired
+    private HazelcastService hazelcastService;
+
+    private EventBus eventBus;
+
+    private CommandUpdateHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        eventBus = Mockito.mock(EventBus.class);
+
+        handler = new CommandUpdateHandler();
+        handler.setEventBus(eventBus);
+        handler.setHazelcastService(hazelcastService);
+    }
+
+    @Test
+    public void shouldStoreUpdateAndNotifySubscribersOnce() throws Exception {
+        DeviceCommand command = generateCommand();
+        command.setStatus("done");
+        Response response = handler.handle(
+                Request.newBuilder()
+                    .withBody(new CommandUpdateRequest(command))
+                    .build()
+        );
+        assertNotNull(response);
+        assertFalse(response.isFailed());
+
+        Optional<DeviceCommand> cmd = hazelcastService.find(command.getId(), command.getDeviceId(), DeviceCommand.class);
+        assertTrue(cmd.isPresent());
+        assertEquals(cmd.get(), command);
+
+        ArgumentCaptor<Event> eventCaptor = ArgumentCaptor.forClass(Event.class);
+        verify(eventBus, times(2)).publish(eventCaptor.capture());
+        List<Event> events = eventCaptor.getAllValues();
+        assertEquals(1, events.stream().filter(event -> event instanceof CommandUpdateEvent).count());
+        assertEquals(1, events.stream().filter(event -> event instanceof CommandsUpdateEvent).count());
+        assertTrue(events.contains(new CommandUpdateEvent(command)));
+        assertTrue(events.contains(new CommandsUpdateEvent(command)));
+    }
+
+    @Test
+    public void shouldOnlyAcknowledgeDeprecatedCommandsUpdate() throws Exception {
+        Response response = new CommandsUpdateHandler().handle(
+                Request.newBuilder()
+                    .withBody(new CommandsUpdateRequest(generateCommand()))
+                    .build()
+        );
+        assertNotNull(response);
+        assertFalse(response.isFailed());
+    }
+}
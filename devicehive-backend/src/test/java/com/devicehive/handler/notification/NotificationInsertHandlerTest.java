@@ -40,6 +40,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.*;
@@ -96,4 +97,28 @@ public class NotificationInsertHandlerTest extends AbstractSpringTest {
         NotificationInsertResponse body = (NotificationInsertResponse) response.getBody();
         assertEquals(body.getDeviceNotification(), originalNotification);
     }
+
+    @Test
+    public void testInsertNotificationAsync() throws ExecutionException, InterruptedException, TimeoutException {
+        final String deviceId = UUID.randomUUID().toString();
+        final long id = System.nanoTime();
+
+        DeviceNotification originalNotification = new DeviceNotification();
+        originalNotification.setTimestamp(Date.from(Instant.now()));
+        originalNotification.setId(id);
+        originalNotification.setDeviceId(deviceId);
+        originalNotification.setNotification("SOME TEST DATA");
+        Response response = handler.handleAsync(
+                Request.newBuilder()
+                        .withBody(new NotificationInsertRequest(originalNotification))
+                        .build()
+        ).get(10, TimeUnit.SECONDS);
+
+        // the response is completed only after the map acknowledged the write
+        assertTrue(hazelcastService.find(id, deviceId, DeviceNotification.class).isPresent());
+        verify(eventBus).publish(Mockito.any(NotificationEvent.class));
+
+        assertTrue(response.getBody() instanceof NotificationInsertResponse);
+        assertEquals(((NotificationInsertResponse) response.getBody()).getDeviceNotification(), originalNotification);
+    }
 }
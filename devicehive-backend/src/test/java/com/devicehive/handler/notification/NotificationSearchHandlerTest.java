@@ -22,6 +22,7 @@ package com.devicehive.handler.notification;
 
 import com.devicehive.base.AbstractSpringTest;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.JsonStringWrapper;
 import com.devicehive.model.rpc.NotificationInsertRequest;
 import com.devicehive.model.rpc.NotificationSearchRequest;
@@ -121,6 +122,34 @@ public class NotificationSearchHandlerTest extends AbstractSpringTest {
         assertEquals(notifications.get(0), responseBody.getNotifications().get(0));
     }
 
+    @Test
+    public void shouldResumeFromCursorPositionInBothDirections() throws Exception {
+        List<DeviceNotification> ordered = notifications.stream()
+                .sorted(Comparator.comparing(DeviceNotification::getTimestamp).thenComparing(DeviceNotification::getId))
+                .collect(Collectors.toList());
+
+        assertEquals(Collections.singletonList(ordered.get(1)), searchAfter(ordered.get(0), "asc"));
+        assertEquals(Collections.singletonList(ordered.get(1)), searchAfter(ordered.get(2), "desc"));
+    }
+
+    private List<DeviceNotification> searchAfter(DeviceNotification last, String sortOrder) throws Exception {
+        NotificationSearchRequest searchRequest = new NotificationSearchRequest();
+        searchRequest.setDeviceId(deviceId);
+        searchRequest.setSortOrder(sortOrder);
+        searchRequest.setTake(1);
+        searchRequest.setAfter(new HistoryCursor.Position(last.getTimestamp().getTime(), last.getId()));
+
+        Request request = Request.newBuilder()
+                .withPartitionKey(deviceId)
+                .withBody(searchRequest)
+                .build();
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        return ((NotificationSearchResponse) response.getBody()).getNotifications();
+    }
+
     private DeviceNotification createNotification(long id, String deviceId) {
         DeviceNotification notification = new DeviceNotification();
         notification.setId(id);
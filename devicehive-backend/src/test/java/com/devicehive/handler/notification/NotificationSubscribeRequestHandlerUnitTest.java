@@ -38,9 +38,9 @@ import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -54,6 +54,7 @@ public class NotificationSubscribeRequestHandlerUnitTest {
 
     private EventBus eventBus;
     private HazelcastService hazelcastService;
+    private FilterRegistry filterRegistry;
     private NotificationSubscribeRequestHandler handler;
 
     @Rule
@@ -67,7 +68,8 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         this.handler.setEventBus(eventBus);
         this.handler.setHazelcastService(hazelcastService);
 
-        this.handler.setFilterRegistry(new FilterRegistry());
+        filterRegistry = Mockito.mock(FilterRegistry.class);
+        this.handler.setFilterRegistry(filterRegistry);
     }
 
     @Test
@@ -84,7 +86,7 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         handler.handle(request);
 
         ArgumentCaptor<Subscriber> subscriberCaptor = ArgumentCaptor.forClass(Subscriber.class);
-        ArgumentCaptor<Subscription> subscriptionCaptor = ArgumentCaptor.forClass(Subscription.class);
+        ArgumentCaptor<Collection> subscriptionCaptor = ArgumentCaptor.forClass(Collection.class);
         verify(eventBus).subscribe(subscriberCaptor.capture(), subscriptionCaptor.capture());
 
         Subscriber subscriber = subscriberCaptor.getValue();
@@ -92,7 +94,9 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         assertEquals(subscriber.getCorrelationId(), request.getCorrelationId());
         assertEquals(subscriber.getReplyTo(), request.getReplyTo());
 
-        Subscription subscription = subscriptionCaptor.getValue();
+        Collection<Subscription> subscriptions = subscriptionCaptor.getValue();
+        assertThat(subscriptions, hasSize(1));
+        Subscription subscription = subscriptions.iterator().next();
         assertEquals(subscription.getType(), Action.NOTIFICATION_EVENT.name());
         assertEquals(subscription.getEntityId(), device);
         assertNull(subscription.getName());
@@ -117,17 +121,15 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         handler.handle(request);
 
         ArgumentCaptor<Subscriber> subscriberCaptor = ArgumentCaptor.forClass(Subscriber.class);
-        ArgumentCaptor<Subscription> subscriptionCaptor = ArgumentCaptor.forClass(Subscription.class);
-        verify(eventBus, times(names.size())).subscribe(subscriberCaptor.capture(), subscriptionCaptor.capture());
+        ArgumentCaptor<Collection> subscriptionCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(eventBus).subscribe(subscriberCaptor.capture(), subscriptionCaptor.capture());
 
-        Set<Subscriber> subscribers = subscriberCaptor.getAllValues().stream().collect(Collectors.toSet());
-        assertThat(subscribers, hasSize(1));
-        Subscriber subscriber = subscribers.stream().findFirst().get();
+        Subscriber subscriber = subscriberCaptor.getValue();
         assertEquals(subscriber.getReplyTo(), request.getReplyTo());
         assertEquals(subscriber.getId(), subscriptionId);
         assertEquals(subscriber.getCorrelationId(), request.getCorrelationId());
 
-        List<Subscription> subscriptions = subscriptionCaptor.getAllValues();
+        Collection<Subscription> subscriptions = subscriptionCaptor.getValue();
         assertThat(subscriptions, hasSize(names.size()));
         subscriptions.forEach(subscription -> {
             assertEquals(subscription.getEntityId(), device);
@@ -158,17 +160,15 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         handler.handle(request);
 
         ArgumentCaptor<Subscriber> subscriberCaptor = ArgumentCaptor.forClass(Subscriber.class);
-        ArgumentCaptor<Subscription> subscriptionCaptor = ArgumentCaptor.forClass(Subscription.class);
-        verify(eventBus, times(names.size())).subscribe(subscriberCaptor.capture(), subscriptionCaptor.capture());
+        ArgumentCaptor<Collection> subscriptionCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(eventBus).subscribe(subscriberCaptor.capture(), subscriptionCaptor.capture());
 
-        Set<Subscriber> subscribers = subscriberCaptor.getAllValues().stream().collect(Collectors.toSet());
-        assertThat(subscribers, hasSize(1));
-        Subscriber subscriber = subscribers.stream().findFirst().get();
+        Subscriber subscriber = subscriberCaptor.getValue();
         assertEquals(subscriber.getReplyTo(), request.getReplyTo());
         assertEquals(subscriber.getId(), subscriptionId);
         assertEquals(subscriber.getCorrelationId(), request.getCorrelationId());
 
-        List<Subscription> subscriptions = subscriptionCaptor.getAllValues();
+        Collection<Subscription> subscriptions = subscriptionCaptor.getValue();
         assertThat(subscriptions, hasSize(names.size()));
         subscriptions.forEach(subscription -> {
             assertEquals(subscription.getEntityId(), device);
@@ -178,8 +178,35 @@ public class NotificationSubscribeRequestHandlerUnitTest {
         assertThat(notificationNames, hasSize(3));
         assertEquals(notificationNames, names);
 
-        verify(hazelcastService).find(null, names, Collections.singleton(device),
-                NotificationSubscribeRequestHandler.LIMIT, timestamp, null, false, null, DeviceNotification.class);
+        verify(hazelcastService).findPerDevice(names, Collections.singleton(device),
+                NotificationSubscribeRequestHandler.LIMIT, timestamp, false, DeviceNotification.class);
+    }
+
+    @Test
+    public void shouldSubscribeToNetworkNotificationsWithoutDevices() throws Exception {
+        Long subscriptionId = randomUUID().getMostSignificantBits();
+        Filter filter = new Filter();
+        NotificationSubscribeRequest sr =
+                new NotificationSubscribeRequest(subscriptionId, null, filter, null);
+        sr.setNetworks(Collections.singleton(1L));
+        Request request = Request.newBuilder()
+                .withBody(sr)
+                .withSingleReply(false)
+                .build();
+        handler.handle(request);
+
+        ArgumentCaptor<Collection> subscriptionCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(eventBus).subscribe(any(Subscriber.class), subscriptionCaptor.capture());
+
+        Collection<Subscription> subscriptions = subscriptionCaptor.getValue();
+        assertThat(subscriptions, hasSize(1));
+        Subscription subscription = subscriptions.iterator().next();
+        assertEquals(Subscription.Scope.NETWORK, subscription.getScope());
+        assertEquals("1", subscription.getEntityId());
+        assertEquals(Action.NOTIFICATION_EVENT.name(), subscription.getType());
+
+        verify(filterRegistry).register(filter, subscriptionId, false);
+        verifyZeroInteractions(hazelcastService);
     }
 
     @Test
@@ -0,0 +1,75 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.QueryCache;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.TruePredicate;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class HazelcastLocalCachesTest {
+
+    @SuppressWarnings("unchecked")
+    private static IMap<HazelcastEntityKey, HazelcastEntity> mapWithQueryCache(Collection<HazelcastEntity> values) {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = mock(IMap.class);
+        QueryCache<HazelcastEntityKey, HazelcastEntity> queryCache = mock(QueryCache.class);
+        when(queryCache.values(any(Predicate.class))).thenReturn(values);
+        when(map.getQueryCache(HazelcastLocalCaches.QUERY_CACHE_NAME)).thenReturn(queryCache);
+        return map;
+    }
+
+    @Test
+    public void shouldServeConfiguredDevicesFromQueryCache() throws Exception {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setDeviceId("device-1");
+        HazelcastLocalCaches caches = new HazelcastLocalCaches(false, true, "device-1,device-2");
+        caches.register(DeviceNotification.class, mapWithQueryCache(Collections.<HazelcastEntity>singletonList(notification)));
+
+        assertTrue(caches.isQueryCacheEnabled());
+        Optional<Collection<DeviceNotification>> found =
+                caches.find("device-1", TruePredicate.INSTANCE, DeviceNotification.class);
+        assertTrue(found.isPresent());
+        assertEquals(Collections.singletonList(notification), found.get());
+        assertFalse(caches.find("device-3", TruePredicate.INSTANCE, DeviceNotification.class).isPresent());
+    }
+
+    @Test
+    public void shouldFallBackWhenQueryCacheWouldHaveToEvict() throws Exception {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = mapWithQueryCache(Collections.emptyList());
+        HazelcastLocalCaches caches = new HazelcastLocalCaches(false, true, "");
+        caches.register(DeviceNotification.class, map);
+
+        assertFalse(caches.isQueryCacheEnabled());
+        verify(map, never()).getQueryCache(anyString());
+        assertFalse(caches.find("device-1", TruePredicate.INSTANCE, DeviceNotification.class).isPresent());
+    }
+}
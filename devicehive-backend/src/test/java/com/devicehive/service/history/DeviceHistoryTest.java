@@ -0,0 +1,119 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.*;
+
+public class DeviceHistoryTest {
+
+    private static DeviceNotification notification(long id, String name, long timestamp) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId("device-1");
+        notification.setNotification(name);
+        notification.setTimestamp(new Date(timestamp));
+        return notification;
+    }
+
+    private static List<Long> ids(List<DeviceNotification> notifications) {
+        return notifications.stream().map(DeviceNotification::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldReturnEntitiesAfterTimestampInOrder() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(10, 0);
+        history.add(notification(1, "a", 100), 0);
+        history.add(notification(3, "a", 300), 0);
+        history.add(notification(2, "b", 200), 0);
+        history.add(notification(4, "b", 400), 0);
+
+        assertThat(ids(history.find(150, Long.MAX_VALUE, null, 0, 0, DeviceNotification::getNotification)), contains(2L, 3L, 4L));
+        assertThat(ids(history.find(150, Long.MAX_VALUE, null, 2, 0, DeviceNotification::getNotification)), contains(2L, 3L));
+        assertThat(ids(history.find(0, Long.MAX_VALUE, Collections.singleton("b"), 0, 0, DeviceNotification::getNotification)), contains(2L, 4L));
+    }
+
+    @Test
+    public void shouldReturnEntitiesUpToUntil() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(10, 0);
+        history.add(notification(1, "a", 100), 0);
+        history.add(notification(2, "a", 200), 0);
+        history.add(notification(3, "a", 300), 0);
+
+        assertThat(ids(history.find(0, 200, null, 0, 0, DeviceNotification::getNotification)), contains(1L, 2L));
+        assertTrue(history.find(200, 250, null, 0, 0, DeviceNotification::getNotification).isEmpty());
+    }
+
+    @Test
+    public void shouldNotAnswerBeforeEvictedEntities() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(2, 0);
+        history.add(notification(1, "a", 100), 0);
+        history.add(notification(2, "a", 200), 0);
+        history.add(notification(3, "a", 300), 0);
+
+        assertEquals(2, history.size());
+        assertNull(history.find(50, Long.MAX_VALUE, null, 0, 0, DeviceNotification::getNotification));
+        assertThat(ids(history.find(100, Long.MAX_VALUE, null, 0, 0, DeviceNotification::getNotification)), contains(2L, 3L));
+    }
+
+    @Test
+    public void shouldEvictByAge() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(10, 0);
+        history.add(notification(1, "a", 100), 0);
+        history.add(notification(2, "a", 200), 0);
+
+        assertNull(history.find(0, Long.MAX_VALUE, null, 0, 150, DeviceNotification::getNotification));
+        assertThat(ids(history.find(100, Long.MAX_VALUE, null, 0, 150, DeviceNotification::getNotification)), contains(2L));
+    }
+
+    @Test
+    public void shouldNotAnswerBeforeCoverageStart() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(10, 1000);
+        history.add(notification(1, "a", 500), 0);
+        history.add(notification(2, "a", 1500), 0);
+
+        assertNull(history.find(900, Long.MAX_VALUE, null, 0, 0, DeviceNotification::getNotification));
+        assertThat(ids(history.find(1000, Long.MAX_VALUE, null, 0, 0, DeviceNotification::getNotification)), contains(2L));
+    }
+
+    @Test
+    public void shouldCloseOnlyExpiredRing() throws Exception {
+        DeviceHistory<DeviceNotification> history = new DeviceHistory<>(10, 0);
+        history.add(notification(1, "a", 100), 0);
+        history.add(notification(2, "a", 200), 0);
+
+        assertFalse(history.close(150));
+        assertTrue(history.add(notification(3, "a", 300), 150));
+
+        assertTrue(history.close(400));
+        assertEquals(300, history.coveredFrom());
+        assertFalse(history.add(notification(4, "a", 500), 400));
+        assertEquals(0, history.size());
+    }
+}
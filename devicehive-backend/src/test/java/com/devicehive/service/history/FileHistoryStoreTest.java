@@ -0,0 +1,186 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class FileHistoryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileHistoryStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = newStore("node-1");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.shutdown();
+    }
+
+    private FileHistoryStore newStore(String writerId) throws Exception {
+        return new FileHistoryStore(folder.getRoot().toPath(), writerId, GsonFactory.createGson(), 1024, 16,
+                TimeUnit.DAYS.toMillis(1));
+    }
+
+    private static DeviceCommand command(String status) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(1L);
+        command.setDeviceId("device-1");
+        command.setCommand("reboot");
+        command.setTimestamp(new Date(1500000000000L));
+        command.setStatus(status);
+        return command;
+    }
+
+    private <T extends HazelcastEntity> List<T> awaitFind(Class<T> entityClass, Predicate<List<T>> written) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        List<T> found;
+        do {
+            found = store.find(entityClass, new Date(0), entity -> true, 0);
+            if (written.test(found)) {
+                return found;
+            }
+            Thread.sleep(50);
+        } while (System.currentTimeMillis() < deadline);
+        return found;
+    }
+
+    @Test
+    public void shouldWriteBehindAndReadInTimestampOrder() throws Exception {
+        for (long i = 3; i > 0; i--) {
+            DeviceNotification notification = new DeviceNotification();
+            notification.setId(i);
+            notification.setDeviceId("device-1");
+            notification.setNotification("temperature");
+            notification.setTimestamp(new Date(1000 * i));
+            store.append(notification);
+        }
+
+        List<DeviceNotification> found = awaitFind(DeviceNotification.class, list -> list.size() == 3);
+        assertEquals(3, found.size());
+        assertEquals(Long.valueOf(1), found.get(0).getId());
+        assertEquals(Long.valueOf(3), found.get(2).getId());
+        assertTrue(store.find(DeviceCommand.class, new Date(0), entity -> true, 0).isEmpty());
+
+        List<DeviceNotification> first = store.find(DeviceNotification.class, new Date(0), entity -> true, 2);
+        assertEquals(2, first.size());
+        assertEquals(Long.valueOf(1), first.get(0).getId());
+        assertEquals(Long.valueOf(2), first.get(1).getId());
+    }
+
+    @Test
+    public void shouldKeepLatestVersionOfUpdatedCommand() throws Exception {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(1L);
+        command.setDeviceId("device-1");
+        command.setCommand("reboot");
+        command.setTimestamp(new Date());
+        store.append(command);
+
+        DeviceCommand updated = new DeviceCommand();
+        updated.setId(1L);
+        updated.setDeviceId("device-1");
+        updated.setCommand("reboot");
+        updated.setTimestamp(command.getTimestamp());
+        updated.setStatus("done");
+        updated.setIsUpdated(true);
+        store.append(updated);
+
+        List<DeviceCommand> found = awaitFind(DeviceCommand.class,
+                list -> !list.isEmpty() && "done".equals(list.get(0).getStatus()));
+        assertEquals(1, found.size());
+        assertEquals("done", found.get(0).getStatus());
+
+        Optional<DeviceCommand> byKey = store.find(DeviceCommand.class, command.getHazelcastKey(), command.getTimestamp());
+        assertTrue(byKey.isPresent());
+        assertEquals("done", byKey.get().getStatus());
+        assertFalse(store.find(DeviceCommand.class, new HazelcastEntityKey(2L, "device-1"), new Date(0)).isPresent());
+    }
+
+    @Test
+    public void shouldShareHistoryBetweenNodes() throws Exception {
+        store.append(command(null));
+        awaitFind(DeviceCommand.class, list -> !list.isEmpty());
+
+        FileHistoryStore other = newStore("node-2");
+        try {
+            DeviceNotification notification = new DeviceNotification();
+            notification.setId(2L);
+            notification.setDeviceId("device-1");
+            notification.setNotification("temperature");
+            notification.setTimestamp(new Date());
+            other.append(notification);
+            other.append(command("done"));
+
+            assertEquals(1, awaitFind(DeviceNotification.class, list -> !list.isEmpty()).size());
+            List<DeviceCommand> found = awaitFind(DeviceCommand.class,
+                    list -> !list.isEmpty() && "done".equals(list.get(0).getStatus()));
+            assertEquals(1, found.size());
+            assertEquals("done", found.get(0).getStatus());
+
+            Optional<DeviceCommand> byKey = store.find(DeviceCommand.class, command(null).getHazelcastKey(),
+                    new Date(0));
+            assertTrue(byKey.isPresent());
+            assertEquals("done", byKey.get().getStatus());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSkipLineStillBeingWritten() throws Exception {
+        String hour = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC).format(Instant.now());
+        String written = System.currentTimeMillis() + "\t" + GsonFactory.createGson().toJson(command("done"));
+        String incomplete = written.substring(0, written.length() / 2);
+        Files.write(folder.getRoot().toPath().resolve("command-" + hour + "-node-3.log"),
+                (written + "\n" + incomplete).getBytes(StandardCharsets.UTF_8));
+
+        List<DeviceCommand> found = store.find(DeviceCommand.class, new Date(0), entity -> true, 0);
+        assertEquals(1, found.size());
+        assertEquals("done", found.get(0).getStatus());
+    }
+}
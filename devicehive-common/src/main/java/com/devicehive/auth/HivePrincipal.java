@@ -161,6 +161,23 @@ public class HivePrincipal implements Principal, Portable {
         return allDevicesAvailable || deviceIds.contains(deviceId);
     }
 
+    /**
+     * @return true if the principal is not limited to particular devices, so a subscription to whole networks can be
+     * routed without listing their devices
+     */
+    public boolean isNetworkScopeAllowed() {
+        return Boolean.TRUE.equals(allDevicesAvailable) && (deviceIds == null || deviceIds.isEmpty());
+    }
+
+    /**
+     * Non-admin users only see devices of their own networks, which a subscription to any device would not respect.
+     */
+    public boolean isGlobalScopeAllowed() {
+        return isNetworkScopeAllowed()
+                && (user == null || user.isAdmin())
+                && (Boolean.TRUE.equals(allNetworksAvailable) || (networkIds != null && !networkIds.isEmpty()));
+    }
+
     @Override
     public String getName() {
         if (user != null) {
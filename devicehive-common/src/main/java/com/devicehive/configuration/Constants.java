@@ -53,6 +53,7 @@ public class Constants {
     public static final String TOKEN_SCHEME = "Bearer";
     public static final String AUTH_DEVICE_ID_HEADER = "Auth-DeviceID";
     public static final String AUTH_DEVICE_KEY_HEADER = "Auth-DeviceKey";
+    public static final String CURSOR_HEADER = "X-DeviceHive-Cursor";
     public static final ByteBuffer PING = ByteBuffer.wrap("devicehive-ping".getBytes(Charset.forName(UTF8)));
     public static final String DEVICE_OFFLINE_STATUS = "Offline";
     public static final String ENV_SECRET_VAR_NAME = "JWT_SECRET";
@@ -97,6 +98,7 @@ public class Constants {
     public static final String SORT_ORDER = "sortOrder";
     public static final String TAKE = "take";
     public static final String SKIP = "skip";
+    public static final String CURSOR = "cursor";
     public static final String DOMAIN = "domain";
     public static final String LOGIN = "login";
     public static final String DEVICE = "device";
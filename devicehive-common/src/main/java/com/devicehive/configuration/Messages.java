@@ -31,6 +31,8 @@ public class Messages {
     public static final String NOT_A_JSON_OBJECT = BidBundle.get("NOT_A_JSON_OBJECT");
     public static final String UNPARSEABLE_TIMESTAMP = BidBundle.get("UNPARSEABLE_TIMESTAMP");
     public static final String UNPARSEABLE_SORT_ORDER = BidBundle.get("UNPARSEABLE_SORT_ORDER");
+    public static final String UNPARSEABLE_CURSOR = BidBundle.get("UNPARSEABLE_CURSOR");
+    public static final String CURSOR_SORT_FIELD = BidBundle.get("CURSOR_SORT_FIELD");
     public static final String SORT_ORDER_IS_NULL = BidBundle.get("SORT_ORDER_IS_NULL");
     public static final String INVALID_REQUEST_PARAMETERS = BidBundle.get("INVALID_REQUEST_PARAMETERS");
     public static final String DUPLICATE_LABEL_FOUND = BidBundle.get("DUPLICATE_LABEL_FOUND");
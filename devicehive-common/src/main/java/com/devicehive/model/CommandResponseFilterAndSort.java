@@ -1,4 +1,4 @@
-package com.devicehive.resource.util;
+package com.devicehive.model;
 
 /*
  * #%L
@@ -20,9 +20,6 @@ package com.devicehive.resource.util;
  * #L%
  */
 
-import com.devicehive.model.DeviceCommand;
-import com.devicehive.model.DeviceNotification;
-
 import java.util.*;
 
 public final class CommandResponseFilterAndSort {
@@ -43,6 +40,45 @@ public final class CommandResponseFilterAndSort {
         return subList(deviceCommands, skip, take);
     }
 
+    /**
+     * Same result as {@link #orderAndLimit(List, Comparator, Boolean, Integer, Integer)}, but keeps only
+     * the first {@code skip + take} elements in a bounded heap instead of sorting the whole collection.
+     */
+    public static <T> List<T> boundedOrderAndLimit(Collection<T> entities,
+                                                   Comparator<T> cmp, Boolean reverse,
+                                                   int skip, int take) {
+        if (cmp == null || skip < 0 || take <= 0) {
+            return orderAndLimit(new ArrayList<>(entities), cmp, reverse, skip, take);
+        }
+        final Comparator<T> order = buildOrder(cmp, reverse);
+        final int limit = (int) Math.min(Integer.MAX_VALUE - 1, (long) skip + take);
+        final PriorityQueue<T> heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+        for (T entity : entities) {
+            heap.offer(entity);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        final List<T> top = new ArrayList<>(heap);
+        top.sort(order);
+        return subList(top, skip, take);
+    }
+
+    /**
+     * Comparator matching the order produced by {@link #orderAndLimit(List, Comparator, Boolean, Integer, Integer)},
+     * or {@code null} when no sorting is requested.
+     */
+    public static <T> Comparator<T> buildOrder(Comparator<T> cmp, Boolean reverse) {
+        if (cmp == null) {
+            return null;
+        }
+        return Boolean.FALSE.equals(reverse) ? cmp.reversed() : cmp;
+    }
+
+    public static Boolean isReverse(String sortOrder) {
+        return sortOrder == null ? null : "desc".equalsIgnoreCase(sortOrder);
+    }
+
     private static <T> List<T> subList(List<T> deviceCommands, Integer skip, Integer take) {
         if (skip < 0 || take <= 0 || skip >= deviceCommands.size()) {
             return Collections.emptyList();
@@ -51,9 +87,18 @@ public final class CommandResponseFilterAndSort {
         return deviceCommands.subList(skip, end);
     }
 
+    /**
+     * Latest first; entries sharing a timestamp are ordered by id so that listings resumed from a
+     * {@link HistoryCursor} are stable.
+     */
+    private static int compareByTimestampAndId(HazelcastEntity o1, HazelcastEntity o2) {
+        final int byTimestamp = o2.getTimestamp().compareTo(o1.getTimestamp());
+        return byTimestamp != 0 ? byTimestamp : Long.compare(o2.getHazelcastKey().getId(), o1.getHazelcastKey().getId());
+    }
+
     public static Comparator<DeviceCommand> buildDeviceCommandComparator(String field) {
         if ("timestamp".equalsIgnoreCase(field)) {
-            return (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp());
+            return CommandResponseFilterAndSort::compareByTimestampAndId;
         } else if ("status".equalsIgnoreCase(field)) {
             return (o1, o2) -> {
                 String o2Status = o2.getStatus() == null ? "" : o2.getStatus();
@@ -70,7 +115,7 @@ public final class CommandResponseFilterAndSort {
 
     public static Comparator<DeviceNotification> buildDeviceNotificationComparator(String field) {
         if ("timestamp".equalsIgnoreCase(field)) {
-            return (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp());
+            return CommandResponseFilterAndSort::compareByTimestampAndId;
         } else if ("notification".equalsIgnoreCase(field)) {
             return (o1, o2) -> {
                 String o2Status = o2.getNotification() == null ? "" : o2.getNotification();
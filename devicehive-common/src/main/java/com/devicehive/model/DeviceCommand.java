@@ -245,8 +245,8 @@ public class DeviceCommand implements HiveEntity, HazelcastEntity, Portable {
 
     @Override
     @ApiModelProperty(hidden = true)
-    public String getHazelcastKey() {
-        return id+"-"+deviceId+"-"+timestamp;
+    public HazelcastEntityKey getHazelcastKey() {
+        return new HazelcastEntityKey(Objects.nonNull(id) ? id : 0, deviceId);
     }
 
     @Override
@@ -144,8 +144,8 @@ public class DeviceNotification implements HiveEntity, HazelcastEntity, Portable
 
     @Override
     @ApiModelProperty(hidden = true)
-    public String getHazelcastKey() {
-        return id+"-"+deviceId+"-"+timestamp;
+    public HazelcastEntityKey getHazelcastKey() {
+        return new HazelcastEntityKey(Objects.nonNull(id) ? id : 0, deviceId);
     }
 
     @Override
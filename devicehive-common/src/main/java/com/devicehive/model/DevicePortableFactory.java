@@ -43,6 +43,8 @@ public class DevicePortableFactory implements PortableFactory {
             return new Subscription();
         } else if (Subscriber.CLASS_ID == classId) {
             return new Subscriber();
+        } else if (HazelcastEntityKey.CLASS_ID == classId) {
+            return new HazelcastEntityKey();
         }
         
         return null;
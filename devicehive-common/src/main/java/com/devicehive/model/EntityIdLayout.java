@@ -0,0 +1,43 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Layout of notification and command ids: milliseconds since {@link #EPOCH}, node id and a sequence within the
+ * millisecond, from the most significant bits down. The frontend generates ids in this layout, so the backend can
+ * tell from an id when the entity was created.
+ */
+public final class EntityIdLayout {
+
+    public static final long EPOCH = 1483228800000L; // 2017-01-01T00:00:00Z
+    public static final int NODE_BITS = 6;
+    public static final int SEQUENCE_BITS = 6;
+
+    private EntityIdLayout() {
+    }
+
+    /**
+     * @return creation time encoded in the id, meaningless for ids generated before this layout was introduced
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
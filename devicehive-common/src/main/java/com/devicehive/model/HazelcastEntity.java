@@ -26,7 +26,7 @@ import java.util.Date;
 
 public interface HazelcastEntity extends HazelcastInstanceAware {
 
-    String getHazelcastKey();
+    HazelcastEntityKey getHazelcastKey();
 
     Date getTimestamp();
 }
@@ -0,0 +1,110 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.hazelcast.core.PartitionAware;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Key of notifications and commands in Hazelcast maps. Entries of the same device share a partition, so a single
+ * entity is a direct get and history of one device is queried on one partition only.
+ */
+public class HazelcastEntityKey implements PartitionAware<String>, Portable, Serializable {
+    private static final long serialVersionUID = -2941874526303432467L;
+
+    public static final int FACTORY_ID = 1;
+    public static final int CLASS_ID = 7;
+
+    private long id;
+    private String deviceId;
+
+    public HazelcastEntityKey() {
+
+    }
+
+    public HazelcastEntityKey(long id, String deviceId) {
+        this.id = id;
+        this.deviceId = deviceId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public String getPartitionKey() {
+        return deviceId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HazelcastEntityKey)) return false;
+        HazelcastEntityKey that = (HazelcastEntityKey) o;
+        return id == that.id &&
+                Objects.equals(deviceId, that.deviceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, deviceId);
+    }
+
+    @Override
+    public String toString() {
+        return "HazelcastEntityKey{" +
+                "id=" + id +
+                ", deviceId='" + deviceId + '\'' +
+                '}';
+    }
+
+    @Override
+    public int getFactoryId() {
+        return FACTORY_ID;
+    }
+
+    @Override
+    public int getClassId() {
+        return CLASS_ID;
+    }
+
+    @Override
+    public void writePortable(PortableWriter writer) throws IOException {
+        writer.writeLong("id", id);
+        writer.writeUTF("deviceId", deviceId);
+    }
+
+    @Override
+    public void readPortable(PortableReader reader) throws IOException {
+        id = reader.readLong("id");
+        deviceId = reader.readUTF("deviceId");
+    }
+}
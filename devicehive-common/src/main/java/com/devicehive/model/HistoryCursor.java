@@ -0,0 +1,148 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Constants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Opaque continuation point of a history listing. Keeps the (timestamp, id) of the last entry returned
+ * for every device, so the next page of each device can be resumed right after it instead of being skipped to.
+ */
+public class HistoryCursor {
+
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String DEVICE_SEPARATOR = "\n";
+
+    private final Map<String, Position> positions;
+
+    private HistoryCursor(Map<String, Position> positions) {
+        this.positions = positions;
+    }
+
+    public Position getPosition(String deviceId) {
+        return positions.get(deviceId);
+    }
+
+    /**
+     * @return true if pages sorted by the field can be resumed from a cursor, i.e. they are ordered by timestamp
+     */
+    public static boolean supportsSortField(String sortField) {
+        return sortField == null || Constants.TIMESTAMP.equalsIgnoreCase(sortField);
+    }
+
+    /**
+     * Cursor pointing right after the last entry of every device in {@code page}. Devices that did not
+     * contribute to the page keep their previous position.
+     */
+    public static <T extends HazelcastEntity> HistoryCursor next(HistoryCursor previous, List<T> page) {
+        final Map<String, Position> positions = previous == null ? new HashMap<>() : new HashMap<>(previous.positions);
+        for (T entity : page) {
+            final HazelcastEntityKey key = entity.getHazelcastKey();
+            positions.put(key.getDeviceId(), new Position(entity.getTimestamp().getTime(), key.getId()));
+        }
+        return new HistoryCursor(positions);
+    }
+
+    public String encode() {
+        final StringJoiner joiner = new StringJoiner(DEVICE_SEPARATOR);
+        positions.forEach((deviceId, position) ->
+                joiner.add(position.timestamp + FIELD_SEPARATOR + position.id + FIELD_SEPARATOR + deviceId));
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value was not produced by {@link #encode()}
+     */
+    public static HistoryCursor decode(String cursor) {
+        final Map<String, Position> positions = new HashMap<>();
+        final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        for (String device : decoded.split(DEVICE_SEPARATOR)) {
+            final String[] fields = device.split(FIELD_SEPARATOR, 3);
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            try {
+                positions.put(fields[2], new Position(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor", e);
+            }
+        }
+        return new HistoryCursor(positions);
+    }
+
+    public static class Position {
+
+        private final long timestamp;
+        private final long id;
+
+        public Position(long timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Exclusive lower time bound of a listing resumed from this position.
+         */
+        public Date narrowStart(Date start, boolean ascending) {
+            if (!ascending) {
+                return start;
+            }
+            final Date bound = new Date(timestamp - 1);
+            return start == null || start.before(bound) ? bound : start;
+        }
+
+        /**
+         * Exclusive upper time bound of a listing resumed from this position.
+         */
+        public Date narrowEnd(Date end, boolean ascending) {
+            if (ascending) {
+                return end;
+            }
+            final Date bound = new Date(timestamp + 1);
+            return end == null || end.after(bound) ? bound : end;
+        }
+
+        /**
+         * Whether {@code entity} comes after this position when history is listed in the given direction.
+         */
+        public boolean precedes(HazelcastEntity entity, boolean ascending) {
+            final int cmp = compare(entity.getTimestamp().getTime(), entity.getHazelcastKey().getId());
+            return ascending ? cmp > 0 : cmp < 0;
+        }
+
+        private int compare(long otherTimestamp, long otherId) {
+            final int byTimestamp = Long.compare(otherTimestamp, timestamp);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(otherId, id);
+        }
+    }
+}
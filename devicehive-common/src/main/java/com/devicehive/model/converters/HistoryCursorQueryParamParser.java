@@ -0,0 +1,53 @@
+package com.devicehive.model.converters;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.model.HistoryCursor;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+public class HistoryCursorQueryParamParser {
+
+    public static HistoryCursor parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return HistoryCursor.decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(Messages.UNPARSEABLE_CURSOR, e, BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    /**
+     * Same as {@link #parse(String)}, but also rejects a sort field other than timestamp, the only order
+     * a cursor can resume.
+     */
+    public static HistoryCursor parse(String value, String sortField) {
+        final HistoryCursor cursor = parse(value);
+        if (cursor != null && !HistoryCursor.supportsSortField(sortField)) {
+            throw new HiveException(String.format(Messages.CURSOR_SORT_FIELD, sortField), BAD_REQUEST.getStatusCode());
+        }
+        return cursor;
+    }
+}
@@ -30,15 +30,22 @@ import java.util.Objects;
 
 /**
  * Event bus subscription object. Represents subscriptions for all types of events - notification, commands and command updates.
+ * A subscription is scoped to a single device by default, network and global scopes match events of every device
+ * in the network (or of any device) without listing them.
  */
 public class Subscription implements Portable, Serializable {
 
     public static final int FACTORY_ID = 1;
     public static final int CLASS_ID = 5;
 
+    public enum Scope {
+        DEVICE, NETWORK, GLOBAL
+    }
+
     private String type;
     private String entityId;
     private String name;
+    private Scope scope = Scope.DEVICE;
 
     public Subscription() {
 
@@ -63,6 +70,30 @@ public class Subscription implements Portable, Serializable {
         this.name = name;
     }
 
+    private Subscription(String type, String entityId, String name, Scope scope) {
+        this.type = type;
+        this.entityId = entityId;
+        this.name = name;
+        this.scope = scope;
+    }
+
+    /**
+     * @param type - type of event to subscribe to
+     * @param networkId - network whose devices are matched
+     * @param name - specific event name to subscribe to, null for any name
+     */
+    public static Subscription network(String type, Long networkId, String name) {
+        return new Subscription(type, String.valueOf(networkId), name, Scope.NETWORK);
+    }
+
+    /**
+     * @param type - type of event to subscribe to
+     * @param name - specific event name to subscribe to, null for any name
+     */
+    public static Subscription global(String type, String name) {
+        return new Subscription(type, null, name, Scope.GLOBAL);
+    }
+
     public String getType() {
         return type;
     }
@@ -75,6 +106,10 @@ public class Subscription implements Portable, Serializable {
         return name;
     }
 
+    public Scope getScope() {
+        return scope;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -82,12 +117,13 @@ public class Subscription implements Portable, Serializable {
         Subscription that = (Subscription) o;
         return Objects.equals(type, that.type) &&
                 Objects.equals(entityId, that.entityId) &&
-                Objects.equals(name, that.name);
+                Objects.equals(name, that.name) &&
+                scope == that.scope;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, entityId, name);
+        return Objects.hash(type, entityId, name, scope);
     }
 
     @Override
@@ -96,6 +132,7 @@ public class Subscription implements Portable, Serializable {
                 "type='" + type + '\'' +
                 ", entityId='" + entityId + '\'' +
                 ", name='" + name + '\'' +
+                ", scope=" + scope +
                 '}';
     }
 
@@ -114,6 +151,7 @@ public class Subscription implements Portable, Serializable {
         writer.writeUTF("type", type);
         writer.writeUTF("entityId", entityId);
         writer.writeUTF("name", name);
+        writer.writeUTF("scope", scope.name());
     }
 
     @Override
@@ -121,5 +159,6 @@ public class Subscription implements Portable, Serializable {
         type = reader.readUTF("type");
         entityId = reader.readUTF("entityId");
         name = reader.readUTF("name");
+        scope = Scope.valueOf(reader.readUTF("scope"));
     }
 }
@@ -24,28 +24,51 @@ import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.eventbus.Subscription;
 import com.devicehive.shim.api.Action;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 
 public class CommandEvent extends Event {
 
     private DeviceCommand command;
+    private Long networkId;
 
     public CommandEvent(DeviceCommand command) {
         super(Action.COMMAND_EVENT);
         this.command = command;
     }
 
+    /**
+     * @param networkId - network of the command's device, needed to match network subscriptions
+     */
+    public CommandEvent(DeviceCommand command, Long networkId) {
+        this(command);
+        this.networkId = networkId;
+    }
+
     public DeviceCommand getCommand() {
         return command;
     }
 
+    public Long getNetworkId() {
+        return networkId;
+    }
+
     @Override
     public Collection<Subscription> getApplicableSubscriptions() {
-        Subscription device = new Subscription(Action.COMMAND_EVENT.name(), command.getDeviceId());
-        Subscription deviceWithName = new Subscription(Action.COMMAND_EVENT.name(), command.getDeviceId(), command.getCommand());
-        return Arrays.asList(device, deviceWithName);
+        String type = Action.COMMAND_EVENT.name();
+        String name = command.getCommand();
+        List<Subscription> subscriptions = new ArrayList<>(6);
+        subscriptions.add(new Subscription(type, command.getDeviceId()));
+        subscriptions.add(new Subscription(type, command.getDeviceId(), name));
+        if (networkId != null) {
+            subscriptions.add(Subscription.network(type, networkId, null));
+            subscriptions.add(Subscription.network(type, networkId, name));
+        }
+        subscriptions.add(Subscription.global(type, null));
+        subscriptions.add(Subscription.global(type, name));
+        return subscriptions;
     }
 
     @Override
@@ -54,18 +77,20 @@ public class CommandEvent extends Event {
         if (!(o instanceof CommandEvent)) return false;
         if (!super.equals(o)) return false;
         CommandEvent that = (CommandEvent) o;
-        return Objects.equals(command, that.command);
+        return Objects.equals(command, that.command) &&
+                Objects.equals(networkId, that.networkId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), command);
+        return Objects.hash(super.hashCode(), command, networkId);
     }
 
     @Override
     public String toString() {
         return "CommandEvent{" +
                 "command=" + command +
+                ", networkId=" + networkId +
                 '}';
     }
 }
@@ -24,19 +24,29 @@ import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.eventbus.Subscription;
 import com.devicehive.shim.api.Action;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 
 public class NotificationEvent extends Event {
 
     private DeviceNotification notification;
+    private Long networkId;
 
     public NotificationEvent(DeviceNotification notification) {
         super(Action.NOTIFICATION_EVENT);
         this.notification = notification;
     }
 
+    /**
+     * @param networkId - network of the notification's device, needed to match network subscriptions
+     */
+    public NotificationEvent(DeviceNotification notification, Long networkId) {
+        this(notification);
+        this.networkId = networkId;
+    }
+
     public DeviceNotification getNotification() {
         return notification;
     }
@@ -45,13 +55,24 @@ public class NotificationEvent extends Event {
         this.notification = notification;
     }
 
+    public Long getNetworkId() {
+        return networkId;
+    }
+
     @Override
     public Collection<Subscription> getApplicableSubscriptions() {
-        Subscription deviceOnly =
-                new Subscription(Action.NOTIFICATION_EVENT.name(), notification.getDeviceId());
-        Subscription deviceWithName =
-                new Subscription(Action.NOTIFICATION_EVENT.name(), notification.getDeviceId(), notification.getNotification());
-        return Arrays.asList(deviceOnly, deviceWithName);
+        String type = Action.NOTIFICATION_EVENT.name();
+        String name = notification.getNotification();
+        List<Subscription> subscriptions = new ArrayList<>(6);
+        subscriptions.add(new Subscription(type, notification.getDeviceId()));
+        subscriptions.add(new Subscription(type, notification.getDeviceId(), name));
+        if (networkId != null) {
+            subscriptions.add(Subscription.network(type, networkId, null));
+            subscriptions.add(Subscription.network(type, networkId, name));
+        }
+        subscriptions.add(Subscription.global(type, null));
+        subscriptions.add(Subscription.global(type, name));
+        return subscriptions;
     }
 
     @Override
@@ -60,18 +81,20 @@ public class NotificationEvent extends Event {
         if (!(o instanceof NotificationEvent)) return false;
         if (!super.equals(o)) return false;
         NotificationEvent that = (NotificationEvent) o;
-        return Objects.equals(notification, that.notification);
+        return Objects.equals(notification, that.notification) &&
+                Objects.equals(networkId, that.networkId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), notification);
+        return Objects.hash(super.hashCode(), notification, networkId);
     }
 
     @Override
     public String toString() {
         return "NotificationEvent{" +
                 "notification=" + notification +
+                ", networkId=" + networkId +
                 '}';
     }
 }
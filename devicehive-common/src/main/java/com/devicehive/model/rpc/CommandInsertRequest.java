@@ -27,13 +27,26 @@ import com.devicehive.shim.api.Body;
 public class CommandInsertRequest extends Body {
 
     private DeviceCommand deviceCommand;
+    private Long networkId;
 
     public CommandInsertRequest(DeviceCommand deviceCommand) {
         super(Action.COMMAND_INSERT_REQUEST);
         this.deviceCommand = deviceCommand;
     }
 
+    /**
+     * @param networkId - network of the device, lets the backend route the event to network subscriptions
+     */
+    public CommandInsertRequest(DeviceCommand deviceCommand, Long networkId) {
+        this(deviceCommand);
+        this.networkId = networkId;
+    }
+
     public DeviceCommand getDeviceCommand() {
         return deviceCommand;
     }
+
+    public Long getNetworkId() {
+        return networkId;
+    }
 }
@@ -24,6 +24,11 @@ import com.devicehive.model.DeviceCommand;
 import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Body;
 
+/**
+ * @deprecated command updates are sent once as {@link CommandUpdateRequest}, which also notifies the per-device
+ * update subscribers. Kept so that action ordinals and codecs stay compatible.
+ */
+@Deprecated
 public class CommandsUpdateRequest extends Body {
 
     private DeviceCommand deviceCommand;
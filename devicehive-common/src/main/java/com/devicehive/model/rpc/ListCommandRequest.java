@@ -45,6 +45,7 @@ public class ListCommandRequest extends Body {
     private String sortOrder;
     private Integer take;
     private Integer skip;
+    private String cursor;
 
     public ListCommandRequest() {
         super(Action.LIST_COMMAND_REQUEST);
@@ -134,6 +135,14 @@ public class ListCommandRequest extends Body {
         this.skip = skip;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public boolean isSortOrderAsc() {
         return SortOrder.parse(sortOrder);
     }
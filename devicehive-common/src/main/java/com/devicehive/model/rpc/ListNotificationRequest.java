@@ -44,6 +44,7 @@ public class ListNotificationRequest extends Body {
     private String sortOrder;
     private Integer take;
     private Integer skip;
+    private String cursor;
 
     public ListNotificationRequest() {
         super(Action.LIST_NOTIFICATION_REQUEST);
@@ -125,6 +126,14 @@ public class ListNotificationRequest extends Body {
         this.skip = skip;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public boolean isSortOrderAsc() {
         return SortOrder.parse(sortOrder);
     }
@@ -27,12 +27,21 @@ import com.devicehive.shim.api.Body;
 public class NotificationInsertRequest extends Body {
 
     private DeviceNotification deviceNotification;
+    private Long networkId;
 
     public NotificationInsertRequest(DeviceNotification deviceNotification) {
         super(Action.NOTIFICATION_INSERT_REQUEST);
         this.deviceNotification = deviceNotification;
     }
 
+    /**
+     * @param networkId - network of the device, lets the backend route the event to network subscriptions
+     */
+    public NotificationInsertRequest(DeviceNotification deviceNotification, Long networkId) {
+        this(deviceNotification);
+        this.networkId = networkId;
+    }
+
     public DeviceNotification getDeviceNotification() {
         return deviceNotification;
     }
@@ -40,4 +49,8 @@ public class NotificationInsertRequest extends Body {
     public void setDeviceNotification(DeviceNotification deviceNotification) {
         this.deviceNotification = deviceNotification;
     }
+
+    public Long getNetworkId() {
+        return networkId;
+    }
 }
@@ -20,6 +20,7 @@ package com.devicehive.model.rpc;
  * #L%
  */
 
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Body;
 
@@ -35,6 +36,11 @@ public class NotificationSearchRequest extends Body {
     private Date timestampStart;
     private Date timestampEnd;
     private String status;
+    private String sortField;
+    private String sortOrder;
+    private Integer skip;
+    private Integer take;
+    private HistoryCursor.Position after;
 
     public NotificationSearchRequest() {
         super(Action.NOTIFICATION_SEARCH_REQUEST);
@@ -88,4 +94,44 @@ public class NotificationSearchRequest extends Body {
         this.status = status;
     }
 
+    public String getSortField() {
+        return sortField;
+    }
+
+    public void setSortField(String sortField) {
+        this.sortField = sortField;
+    }
+
+    public String getSortOrder() {
+        return sortOrder;
+    }
+
+    public void setSortOrder(String sortOrder) {
+        this.sortOrder = sortOrder;
+    }
+
+    public Integer getSkip() {
+        return skip;
+    }
+
+    public void setSkip(Integer skip) {
+        this.skip = skip;
+    }
+
+    public Integer getTake() {
+        return take;
+    }
+
+    public void setTake(Integer take) {
+        this.take = take;
+    }
+
+    public HistoryCursor.Position getAfter() {
+        return after;
+    }
+
+    public void setAfter(HistoryCursor.Position after) {
+        this.after = after;
+    }
+
 }
@@ -24,6 +24,7 @@ import com.devicehive.model.eventbus.Filter;
 import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Body;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Objects;
 import java.util.Set;
@@ -32,6 +33,9 @@ public class NotificationSubscribeRequest extends Body {
 
     private Long subscriptionId;
     private String device;
+    private Set<String> devices;
+    private Set<Long> networks;
+    private boolean global;
     private Filter filter;
     private Date timestamp;
 
@@ -59,6 +63,49 @@ public class NotificationSubscribeRequest extends Body {
         this.device = device;
     }
 
+    public Set<String> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Subscribes to all devices of the set with a single request, {@link #device} is ignored then.
+     */
+    public void setDevices(Set<String> devices) {
+        this.devices = devices;
+    }
+
+    public Set<Long> getNetworks() {
+        return networks;
+    }
+
+    /**
+     * Subscribes to events of every device in the networks, including devices added to them later.
+     */
+    public void setNetworks(Set<Long> networks) {
+        this.networks = networks;
+    }
+
+    public boolean isGlobal() {
+        return global;
+    }
+
+    /**
+     * Subscribes to events of any device.
+     */
+    public void setGlobal(boolean global) {
+        this.global = global;
+    }
+
+    /**
+     * @return devices to subscribe to, either the device set or the single device
+     */
+    public Set<String> getAllDevices() {
+        if (devices != null) {
+            return devices;
+        }
+        return device != null ? Collections.singleton(device) : Collections.emptySet();
+    }
+
     public Filter getFilter() {
         return filter;
     }
@@ -83,13 +130,16 @@ public class NotificationSubscribeRequest extends Body {
         NotificationSubscribeRequest that = (NotificationSubscribeRequest) o;
         return Objects.equals(subscriptionId, that.subscriptionId) &&
                 Objects.equals(device, that.device) &&
+                Objects.equals(devices, that.devices) &&
+                Objects.equals(networks, that.networks) &&
+                global == that.global &&
                 Objects.equals(filter, that.filter) &&
                 Objects.equals(timestamp, that.timestamp);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), subscriptionId, device, filter, timestamp);
+        return Objects.hash(super.hashCode(), subscriptionId, device, devices, networks, global, filter, timestamp);
     }
 
     @Override
@@ -97,6 +147,9 @@ public class NotificationSubscribeRequest extends Body {
         return "NotificationSubscribeRequest{" +
                 "subscriptionId='" + subscriptionId + '\'' +
                 ", device='" + device + '\'' +
+                ", devices=" + devices +
+                ", networks=" + networks +
+                ", global=" + global +
                 ", filter=" + filter +
                 ", timestamp=" + timestamp +
                 '}';
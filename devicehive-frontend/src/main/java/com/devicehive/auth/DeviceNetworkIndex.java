@@ -0,0 +1,194 @@
+package com.devicehive.auth;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.dao.DeviceDao;
+import com.devicehive.vo.DeviceVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network membership of devices for permission checks of principals allowed all devices of some networks.
+ * Devices are loaded on first check and dropped when saved, deleted or when their network is deleted on this node;
+ * {@code auth.device-network-index.max-age} bounds how long changes made through other nodes may go unnoticed.
+ */
+@Component
+public class DeviceNetworkIndex {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceNetworkIndex.class);
+
+    private final DeviceDao deviceDao;
+    private final int maxSize;
+    private final long maxAge;
+
+    private final ConcurrentHashMap<String, Entry> networks = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped by every invalidation, so that a membership loaded before it is not kept.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public DeviceNetworkIndex(DeviceDao deviceDao,
+                              @Value("${auth.device-network-index.max-size:100000}") int maxSize,
+                              @Value("${auth.device-network-index.max-age:60000}") long maxAge) {
+        this.deviceDao = deviceDao;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return true if the device exists and belongs to one of the networks
+     */
+    public boolean isInNetworks(String deviceId, Set<Long> networkIds) {
+        final Long networkId = getNetworkId(deviceId);
+        return networkId != null && networkIds.contains(networkId);
+    }
+
+    /**
+     * @return id of the device's network, or null if there is no such device or it has no network
+     */
+    public Long getNetworkId(String deviceId) {
+        if (!isEnabled()) {
+            return load(deviceId);
+        }
+        final long now = System.currentTimeMillis();
+        final Entry cached = networks.get(deviceId);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            return cached.networkId;
+        }
+        misses.increment();
+
+        final long before = generation.get();
+        final Long networkId = load(deviceId);
+        if (networks.size() >= maxSize) {
+            removeExpired(now);
+            if (networks.size() >= maxSize) {
+                return networkId;
+            }
+        }
+        final Entry entry = new Entry(networkId, now + maxAge);
+        networks.put(deviceId, entry);
+        if (generation.get() != before) {
+            networks.remove(deviceId, entry);
+        }
+        return networkId;
+    }
+
+    private Long load(String deviceId) {
+        final DeviceVO device = deviceDao.findById(deviceId);
+        return device != null ? device.getNetworkId() : null;
+    }
+
+    /**
+     * Called after the device was created, updated or deleted.
+     * Within a transaction the device is dropped again after commit, since checks served meanwhile
+     * still read its membership as it was before the change.
+     */
+    public void invalidateDevice(String deviceId) {
+        evictDevice(deviceId);
+        afterCommit(() -> evictDevice(deviceId));
+    }
+
+    /**
+     * Called after the network was deleted, along with its devices or their membership.
+     * Within a transaction its devices are dropped again after commit.
+     */
+    public void invalidateNetwork(long networkId) {
+        evictNetwork(networkId);
+        afterCommit(() -> evictNetwork(networkId));
+    }
+
+    private void evictDevice(String deviceId) {
+        generation.incrementAndGet();
+        networks.remove(deviceId);
+    }
+
+    private void evictNetwork(long networkId) {
+        generation.incrementAndGet();
+        final Long id = networkId;
+        networks.values().removeIf(e -> Objects.equals(id, e.networkId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private void removeExpired(long now) {
+        networks.values().removeIf(e -> e.expiresAt <= now);
+    }
+
+    public int size() {
+        return networks.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${auth.device-network-index.stats.period:60000}")
+    public void logStats() {
+        if (isEnabled()) {
+            removeExpired(System.currentTimeMillis());
+            logger.info("Device network index: {} devices, hits={}, misses={}", networks.size(), getHits(), getMisses());
+        }
+    }
+
+    private static class Entry {
+        private final Long networkId;
+        private final long expiresAt;
+
+        private Entry(Long networkId, long expiresAt) {
+            this.networkId = networkId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.devicehive.auth;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Principals resolved from JWT tokens, so that authenticated requests neither load the user nor rebuild the
+ * action, network and device sets. Entries live until the token expires, capped by {@code jwt.principal-cache.max-age},
+ * and are dropped by {@link #invalidateUser(long)} whenever the user behind them changes.
+ *
+ * Invalidation is local to the node: other frontend nodes keep principals of a changed user until they expire,
+ * so {@code jwt.principal-cache.max-age} is how long a change (e.g. a locked user or a revoked network) may take
+ * to reach the whole cluster.
+ */
+@Component
+public class HivePrincipalCache {
+    private static final Logger logger = LoggerFactory.getLogger(HivePrincipalCache.class);
+
+    private final int maxSize;
+    private final long maxAge;
+
+    private final ConcurrentHashMap<String, Entry> principals = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped by every invalidation, so that a principal built from a user loaded before it is not kept.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public HivePrincipalCache(@Value("${jwt.principal-cache.max-size:10000}") int maxSize,
+                              @Value("${jwt.principal-cache.max-age:60000}") long maxAge) {
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the principal cached for the token or builds it. Exceptions of the builder are not cached.
+     *
+     * @param expiration expiration date of the token, if any
+     */
+    public HivePrincipal get(String token, Date expiration, Supplier<HivePrincipal> builder) {
+        if (!isEnabled()) {
+            return builder.get();
+        }
+        final long now = System.currentTimeMillis();
+        final Entry cached = principals.get(token);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            return cached.principal;
+        }
+        misses.increment();
+
+        final long before = generation.get();
+        final HivePrincipal principal = builder.get();
+        if (principals.size() >= maxSize) {
+            removeExpired(now);
+            if (principals.size() >= maxSize) {
+                return principal;
+            }
+        }
+        final long expiresAt = expiration == null ? now + maxAge : Math.min(expiration.getTime(), now + maxAge);
+        final Entry entry = new Entry(principal, expiresAt);
+        principals.put(token, entry);
+        if (generation.get() != before) {
+            principals.remove(token, entry);
+        }
+        return principal;
+    }
+
+    /**
+     * Drops every principal of the user. Called after the user, its status or its networks have changed.
+     * Within a transaction the principals are dropped again after commit, since requests served meanwhile
+     * still read the user as it was before the change.
+     */
+    public void invalidateUser(long userId) {
+        evictUser(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evictUser(userId);
+                }
+            });
+        }
+    }
+
+    private void evictUser(long userId) {
+        generation.incrementAndGet();
+        final Long id = userId;
+        principals.values().removeIf(e -> e.principal.getUser() != null && id.equals(e.principal.getUser().getId()));
+    }
+
+    private void removeExpired(long now) {
+        principals.values().removeIf(e -> e.expiresAt <= now);
+    }
+
+    public int size() {
+        return principals.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.principal-cache.stats.period:60000}")
+    public void logStats() {
+        if (isEnabled()) {
+            removeExpired(System.currentTimeMillis());
+            logger.info("Principal cache: {} entries, hits={}, misses={}", principals.size(), getHits(), getMisses());
+        }
+    }
+
+    private static class Entry {
+        private final HivePrincipal principal;
+        private final long expiresAt;
+
+        private Entry(HivePrincipal principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -20,22 +20,19 @@ package com.devicehive.auth;
  * #L%
  */
 
-import com.devicehive.model.rpc.ListDeviceRequest;
-import com.devicehive.service.DeviceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
 import java.util.Set;
 
 @Component
 public class JwtCheckPermissionsHelper {
 
-    private final DeviceService deviceService;
+    private final DeviceNetworkIndex deviceNetworkIndex;
 
     @Autowired
-    public JwtCheckPermissionsHelper(DeviceService deviceService) {
-        this.deviceService = deviceService;
+    public JwtCheckPermissionsHelper(DeviceNetworkIndex deviceNetworkIndex) {
+        this.deviceNetworkIndex = deviceNetworkIndex;
     }
 
     public boolean checkPermissions(
@@ -73,9 +70,7 @@ public class JwtCheckPermissionsHelper {
             if (principal.areAllDevicesAvailable() && principal.areAllNetworksAvailable()) {
                 return true;
             } else if (networks != null && principal.areAllDevicesAvailable()) {
-                return networks.stream().flatMap(n -> deviceService.list(new ListDeviceRequest(n))
-                        .thenApply(Collection::stream).join())
-                        .anyMatch(deviceVO -> deviceVO.getDeviceId().equals(targetDomainObject));
+                return deviceNetworkIndex.isInNetworks((String) targetDomainObject, networks);
             } else if (devices != null && principal.areAllNetworksAvailable()) {
                 return devices.contains(targetDomainObject);
             } else
@@ -23,6 +23,7 @@ package com.devicehive.auth.rest.providers;
 import com.devicehive.auth.HiveAction;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.auth.HivePrincipal;
+import com.devicehive.auth.HivePrincipalCache;
 import com.devicehive.auth.HiveRoles;
 import com.devicehive.resource.exceptions.ExpiredTokenException;
 import com.devicehive.model.AvailableActions;
@@ -55,6 +56,7 @@ public class JwtTokenAuthenticationProvider implements AuthenticationProvider {
     private JwtClientService jwtClientService;
     private UserService userService;
     private TimestampService timestampService;
+    private HivePrincipalCache principalCache;
 
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
@@ -72,44 +74,7 @@ public class JwtTokenAuthenticationProvider implements AuthenticationProvider {
             }
             logger.debug("Jwt token authentication successful");
 
-            HivePrincipal principal = new HivePrincipal();
-            if (jwtPayload.getUserId() != null) {
-                UserVO userVO = userService.findById(jwtPayload.getUserId());
-                if (!UserStatus.ACTIVE.equals(userVO.getStatus())) {
-                    throw new BadCredentialsException("Unauthorized: user is not active");
-                }
-                principal.setUser(userVO);
-            }
-
-            Set<String> networkIds = jwtPayload.getNetworkIds();
-            if (networkIds != null) {
-                if (networkIds.contains("*")) {
-                    principal.setAllNetworksAvailable(true);
-                } else {
-                    principal.setNetworkIds(networkIds.stream().map(Long::valueOf).collect(Collectors.toSet()));
-                }
-            }
-
-            Set<String> deviceIds = jwtPayload.getDeviceIds();
-            if (deviceIds != null) {
-                if (deviceIds.contains("*")) {
-                    principal.setAllDevicesAvailable(true);
-                } else {
-                    principal.setDeviceIds(deviceIds);
-                }
-            }
-
-            Set<String> availableActions = jwtPayload.getActions();
-            if (availableActions != null) {
-                if (availableActions.contains("*")) {
-                    principal.setActions(AvailableActions.getAllHiveActions());
-                } else if (availableActions.isEmpty()) {
-                    principal.setActions(AvailableActions.getClientHiveActions());
-                } else {
-                    principal.setActions(availableActions.stream().map(HiveAction::fromString).collect(Collectors.toSet()));
-                }
-            }
-
+            HivePrincipal principal = principalCache.get(token, jwtPayload.getExpiration(), () -> buildPrincipal(jwtPayload));
             return new HiveAuthentication(principal,
                     AuthorityUtils.createAuthorityList(HiveRoles.JWT));
 
@@ -120,6 +85,48 @@ public class JwtTokenAuthenticationProvider implements AuthenticationProvider {
         }
     }
 
+    private HivePrincipal buildPrincipal(JwtPayload jwtPayload) {
+        HivePrincipal principal = new HivePrincipal();
+        if (jwtPayload.getUserId() != null) {
+            UserVO userVO = userService.findById(jwtPayload.getUserId());
+            if (!UserStatus.ACTIVE.equals(userVO.getStatus())) {
+                throw new BadCredentialsException("Unauthorized: user is not active");
+            }
+            principal.setUser(userVO);
+        }
+
+        Set<String> networkIds = jwtPayload.getNetworkIds();
+        if (networkIds != null) {
+            if (networkIds.contains("*")) {
+                principal.setAllNetworksAvailable(true);
+            } else {
+                principal.setNetworkIds(networkIds.stream().map(Long::valueOf).collect(Collectors.toSet()));
+            }
+        }
+
+        Set<String> deviceIds = jwtPayload.getDeviceIds();
+        if (deviceIds != null) {
+            if (deviceIds.contains("*")) {
+                principal.setAllDevicesAvailable(true);
+            } else {
+                principal.setDeviceIds(deviceIds);
+            }
+        }
+
+        Set<String> availableActions = jwtPayload.getActions();
+        if (availableActions != null) {
+            if (availableActions.contains("*")) {
+                principal.setActions(AvailableActions.getAllHiveActions());
+            } else if (availableActions.isEmpty()) {
+                principal.setActions(AvailableActions.getClientHiveActions());
+            } else {
+                principal.setActions(availableActions.stream().map(HiveAction::fromString).collect(Collectors.toSet()));
+            }
+        }
+
+        return principal;
+    }
+
     @Override
     public boolean supports(Class<?> authentication) {
         return PreAuthenticatedAuthenticationToken.class.equals(authentication);
@@ -139,4 +146,9 @@ public class JwtTokenAuthenticationProvider implements AuthenticationProvider {
     public void setTimestampService(TimestampService timestampService) {
         this.timestampService = timestampService;
     }
+
+    @Autowired
+    public void setPrincipalCache(HivePrincipalCache principalCache) {
+        this.principalCache = principalCache;
+    }
 }
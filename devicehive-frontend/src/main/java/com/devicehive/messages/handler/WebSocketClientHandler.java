@@ -22,6 +22,7 @@ package com.devicehive.messages.handler;
 
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.converters.WebSocketResponse;
+import com.devicehive.websockets.util.OutboundWebSocketSession;
 import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,16 +40,31 @@ public class WebSocketClientHandler {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketClientHandler.class);
 
     public void sendMessage(JsonObject json, WebSocketSession session) {
+        sendMessage(json.toString(), session);
+    }
+
+    public void sendMessage(String message, WebSocketSession session) {
         if (!session.isOpen()) {
             return;
         }
         try {
-            session.sendMessage(new TextMessage(json.toString()));
+            session.sendMessage(new TextMessage(message));
         } catch (IOException e) {
             logger.error("Exception while sending message", e);
         }
     }
 
+    /**
+     * Sends an event that the session's outbound queue may drop or coalesce with a newer event of the same key.
+     */
+    public void sendMessage(String message, String key, WebSocketSession session) {
+        if (session instanceof OutboundWebSocketSession) {
+            ((OutboundWebSocketSession) session).sendMessage(new TextMessage(message), key);
+        } else {
+            sendMessage(message, session);
+        }
+    }
+
     public void sendMessage(JsonObject request, JsonObject response, WebSocketSession session) {
         JsonObject message = new JsonMessageBuilder()
                 .addAction(request.get(ACTION))
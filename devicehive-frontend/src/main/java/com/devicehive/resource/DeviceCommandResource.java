@@ -206,6 +206,9 @@ public interface DeviceCommandResource {
             @QueryParam("skip")
             @DefaultValue(Constants.DEFAULT_SKIP_STR)
             Integer skip,
+            @ApiParam(name = "cursor", value = "Continuation cursor returned in the " + Constants.CURSOR_HEADER + " header of the previous page")
+            @QueryParam("cursor")
+            String cursor,
             @Suspended final AsyncResponse asyncResponse);
 
     /**
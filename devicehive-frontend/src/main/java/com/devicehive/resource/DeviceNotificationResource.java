@@ -60,6 +60,9 @@ public interface DeviceNotificationResource {
      * @param sortOrderSt  Result list sort order. Available values are ASC and DESC.
      * @param take         Number of records to take from the result list (default is 1000).
      * @param skip         Number of records to skip from the result list.
+     * @param cursor       Continuation cursor of the previous page, used instead of skip. Pages resumed from a cursor
+     *                     are listed in timestamp order; the cursor of the next page is returned in the
+     *                     X-DeviceHive-Cursor header.
      * @return If successful, this method returns array of <a href="http://www.devicehive
      * .com/restful#Reference/DeviceNotification">DeviceNotification</a> resources in the response body. <table>
      * <tr> <td>Property Name</td> <td>Type</td> <td>Description</td> </tr> <tr> <td>id</td> <td>integer</td>
@@ -104,6 +107,9 @@ public interface DeviceNotificationResource {
             @QueryParam("skip")
             @DefaultValue(Constants.DEFAULT_SKIP_STR)
             Integer skip,
+            @ApiParam(name = "cursor", value = "Continuation cursor returned in the " + Constants.CURSOR_HEADER + " header of the previous page")
+            @QueryParam("cursor")
+            String cursor,
             @Suspended
             AsyncResponse asyncResponse);
 
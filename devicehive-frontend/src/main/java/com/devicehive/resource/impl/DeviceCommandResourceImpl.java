@@ -26,11 +26,12 @@ import com.devicehive.configuration.Messages;
 import com.devicehive.json.strategies.JsonPolicyDef.Policy;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.ErrorResponse;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
 import com.devicehive.resource.DeviceCommandResource;
+import com.devicehive.model.converters.HistoryCursorQueryParamParser;
 import com.devicehive.model.converters.TimestampQueryParamParser;
-import com.devicehive.resource.util.CommandResponseFilterAndSort;
 import com.devicehive.resource.util.ResponseFactory;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
@@ -190,6 +191,12 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
                 } else {
                     asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
                 }
+            }).exceptionally(ex -> {
+                logger.warn("Command subscription failed", ex);
+                if (!asyncResponse.isDone()) {
+                    asyncResponse.resume(ResponseFactory.response(Response.Status.INTERNAL_SERVER_ERROR));
+                }
+                return null;
             });
 
             asyncResponse.register((CompletionCallback) throwable -> commandService.sendUnsubscribeRequest(Collections.singleton(pair.getLeft())));
@@ -274,6 +281,12 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
                 } else {
                     asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
                 }
+            }).exceptionally(ex -> {
+                logger.warn("Command subscription failed", ex);
+                if (!asyncResponse.isDone()) {
+                    asyncResponse.resume(ResponseFactory.response(Response.Status.INTERNAL_SERVER_ERROR));
+                }
+                return null;
             });
             asyncResponse.register((CompletionCallback) throwable -> {
                 try {
@@ -295,11 +308,13 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
 
     @Override
     public void query(String deviceId, String startTs, String endTs, String command, String status, String sortField,
-                      String sortOrderSt, Integer take, Integer skip, @Suspended final AsyncResponse asyncResponse) {
+                      String sortOrderSt, Integer take, Integer skip, String cursor,
+                      @Suspended final AsyncResponse asyncResponse) {
         logger.debug("Device command query requested for device {}", deviceId);
 
         final Date timestampSt = TimestampQueryParamParser.parse(startTs);
         final Date timestampEnd = TimestampQueryParamParser.parse(endTs);
+        final HistoryCursor historyCursor = HistoryCursorQueryParamParser.parse(cursor, sortField);
 
         DeviceVO device = deviceService.findById(deviceId);
         if (device == null) {
@@ -309,17 +324,11 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             asyncResponse.resume(response);
         } else {
             List<String> searchCommands = StringUtils.isNoneEmpty(command) ? Collections.singletonList(command) : Collections.EMPTY_LIST;
-            commandService.find(Collections.singletonList(deviceId), searchCommands, timestampSt, timestampEnd, status)
-                    .thenApply(commands -> {
-                        final Comparator<DeviceCommand> comparator = CommandResponseFilterAndSort
-                                .buildDeviceCommandComparator(sortField);
-                        final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
-
-                        final List<DeviceCommand> sortedDeviceCommands = CommandResponseFilterAndSort
-                                .orderAndLimit(new ArrayList<>(commands),
-                                comparator, reverse, skip, take);
-                        return ResponseFactory.response(OK, sortedDeviceCommands, Policy.COMMAND_LISTED);
-                    })
+            commandService.find(Collections.singletonList(deviceId), searchCommands, timestampSt, timestampEnd, status,
+                    sortField, sortOrderSt, skip, take, historyCursor)
+                    .thenApply(commands -> ResponseFactory.withCursor(
+                            ResponseFactory.response(OK, commands, Policy.COMMAND_LISTED), historyCursor, commands,
+                            sortField))
                     .thenAccept(asyncResponse::resume);
         }
     }
@@ -26,13 +26,14 @@ import com.devicehive.configuration.Messages;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.ErrorResponse;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.SpecialNotifications;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.websockets.InsertNotification;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
 import com.devicehive.resource.DeviceNotificationResource;
+import com.devicehive.model.converters.HistoryCursorQueryParamParser;
 import com.devicehive.model.converters.TimestampQueryParamParser;
-import com.devicehive.resource.util.CommandResponseFilterAndSort;
 import com.devicehive.resource.util.ResponseFactory;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
@@ -97,11 +98,13 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
      */
     @Override
     public void query(String deviceId, String startTs, String endTs, String notification, String sortField,
-                      String sortOrderSt, Integer take, Integer skip, @Suspended final AsyncResponse asyncResponse) {
+                      String sortOrderSt, Integer take, Integer skip, String cursor,
+                      @Suspended final AsyncResponse asyncResponse) {
         logger.debug("Device notification query requested for device {}", deviceId);
 
         final Date timestampSt = TimestampQueryParamParser.parse(startTs);
         final Date timestampEnd = TimestampQueryParamParser.parse(endTs);
+        final HistoryCursor historyCursor = HistoryCursorQueryParamParser.parse(cursor, sortField);
 
         DeviceVO byIdWithPermissionsCheck = deviceService.findById(deviceId);
         if (byIdWithPermissionsCheck == null) {
@@ -112,16 +115,11 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
             Set<String> notificationNames = StringUtils.isNoneEmpty(notification)
                     ? Collections.singleton(notification)
                     : Collections.emptySet();
-            notificationService.find(Collections.singleton(deviceId), notificationNames, timestampSt, timestampEnd)
-                    .thenApply(notifications -> {
-                        final Comparator<DeviceNotification> comparator = CommandResponseFilterAndSort
-                                .buildDeviceNotificationComparator(sortField);
-                        final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
-
-                        final List<DeviceNotification> sortedDeviceNotifications = CommandResponseFilterAndSort
-                                .orderAndLimit(notifications, comparator, reverse, skip, take);
-                        return ResponseFactory.response(OK, sortedDeviceNotifications, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT);
-                    })
+            notificationService.find(Collections.singleton(deviceId), notificationNames, timestampSt, timestampEnd,
+                    sortField, sortOrderSt, skip, take, historyCursor)
+                    .thenApply(notifications -> ResponseFactory.withCursor(
+                            ResponseFactory.response(OK, notifications, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT),
+                            historyCursor, notifications, sortField))
                     .thenAccept(asyncResponse::resume);
         }
     }
@@ -257,6 +255,12 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                 } else {
                     asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
                 }
+            }).exceptionally(ex -> {
+                logger.warn("Notification subscription failed", ex);
+                if (!asyncResponse.isDone()) {
+                    asyncResponse.resume(ResponseFactory.response(Response.Status.INTERNAL_SERVER_ERROR));
+                }
+                return null;
             });
 
             asyncResponse.register((CompletionCallback) throwable -> notificationService.unsubscribe(Collections.singleton(pair.getLeft())));
@@ -20,12 +20,16 @@ package com.devicehive.resource.util;
  * #L%
  */
 
+import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyApply;
 import com.devicehive.json.strategies.JsonPolicyDef;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HistoryCursor;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.lang.annotation.Annotation;
+import java.util.List;
 
 public class ResponseFactory {
 
@@ -50,4 +54,18 @@ public class ResponseFactory {
     public static Response response(Response.Status status) {
         return response(status, null, null);
     }
+
+    /**
+     * Adds the cursor of the page following {@code page} to a history listing response, unless the page is empty or
+     * not ordered by timestamp, as a cursor can only resume that order.
+     */
+    public static Response withCursor(Response response, HistoryCursor previous, List<? extends HazelcastEntity> page,
+                                      String sortField) {
+        if (page.isEmpty() || !HistoryCursor.supportsSortField(sortField)) {
+            return response;
+        }
+        return Response.fromResponse(response)
+                .header(Constants.CURSOR_HEADER, HistoryCursor.next(previous, page).encode())
+                .build();
+    }
 }
@@ -20,13 +20,16 @@ package com.devicehive.service;
  * #L%
  */
 
+import com.devicehive.model.CommandResponseFilterAndSort;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.events.CommandEvent;
 import com.devicehive.model.eventbus.events.CommandUpdateEvent;
 import com.devicehive.model.eventbus.events.CommandsUpdateEvent;
 import com.devicehive.model.rpc.*;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
+import com.devicehive.service.helpers.HistoryMerger;
 import com.devicehive.service.helpers.LongIdGenerator;
 import com.devicehive.service.helpers.ResponseConsumer;
 import com.devicehive.service.time.TimestampService;
@@ -51,6 +54,8 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.devicehive.configuration.Constants.TIMESTAMP;
+
 @Service
 public class DeviceCommandService {
 
@@ -88,16 +93,42 @@ public class DeviceCommandService {
         return future.thenApply(r -> r.getBody().cast(CommandSearchResponse.class).getCommands().stream().findFirst());
     }
 
-    public CompletableFuture<List<DeviceCommand>> find(ListCommandRequest request) {
+    public CompletableFuture<List<DeviceCommand>> find(ListCommandRequest request, HistoryCursor cursor) {
         String command = request.getCommand();
         List<String> searchCommands = StringUtils.isNoneEmpty(command) ? Collections.singletonList(command) : Collections.EMPTY_LIST;
         return find(Collections.singletonList(request.getDeviceId()), searchCommands,
-                request.getStart(), request.getEnd(), request.getStatus());
+                request.getStart(), request.getEnd(), request.getStatus(),
+                request.getSortField(), request.getSortOrder(), request.getSkip(), request.getTake(), cursor);
     }
 
     public CompletableFuture<List<DeviceCommand>> find(Collection<String> deviceIds, Collection<String> names,
                                                        Date timestampSt, Date timestampEnd, String status) {
+        return find(deviceIds, names, timestampSt, timestampEnd, status, null, null, null, null);
+    }
+
+    public CompletableFuture<List<DeviceCommand>> find(Collection<String> deviceIds, Collection<String> names,
+                                                       Date timestampSt, Date timestampEnd, String status,
+                                                       String sortField, String sortOrder,
+                                                       Integer skip, Integer take) {
+        return find(deviceIds, names, timestampSt, timestampEnd, status, sortField, sortOrder, skip, take, null);
+    }
+
+    /**
+     * Sorting and paging are applied by the backend, so only the requested page travels back. When several devices
+     * are queried, each of them returns its first {@code skip + take} entries and the sorted pages are merged
+     * by {@link HistoryMerger}. A {@code cursor} replaces {@code skip}: every device resumes right after its own
+     * position in timestamp order, so only {@code take} entries per device are read for every page.
+     */
+    public CompletableFuture<List<DeviceCommand>> find(Collection<String> deviceIds, Collection<String> names,
+                                                       Date timestampSt, Date timestampEnd, String status,
+                                                       String sortField, String sortOrder,
+                                                       Integer skip, Integer take, HistoryCursor cursor) {
+        final boolean merge = take != null && deviceIds.size() > 1;
+        final int actualSkip = skip == null || cursor != null ? 0 : skip;
+        final String actualSortField = cursor != null ? TIMESTAMP : sortField;
+        // a stable device order keeps pages without a sort field the same between requests
         List<CompletableFuture<Response>> futures = deviceIds.stream()
+                .sorted()
                 .map(deviceId -> {
                     CommandSearchRequest searchRequest = new CommandSearchRequest();
                     searchRequest.setDeviceId(deviceId);
@@ -107,6 +138,15 @@ public class DeviceCommandService {
                     searchRequest.setTimestampStart(timestampSt);
                     searchRequest.setTimestampEnd(timestampEnd);
                     searchRequest.setStatus(status);
+                    searchRequest.setSortField(actualSortField);
+                    searchRequest.setSortOrder(sortOrder);
+                    if (take != null) {
+                        searchRequest.setSkip(merge ? 0 : actualSkip);
+                        searchRequest.setTake(merge ? (int) Math.min(Integer.MAX_VALUE, (long) actualSkip + take) : take);
+                    }
+                    if (cursor != null) {
+                        searchRequest.setAfter(cursor.getPosition(deviceId));
+                    }
                     return searchRequest;
                 })
                 .map(searchRequest -> {
@@ -119,6 +159,15 @@ public class DeviceCommandService {
                 })
                 .collect(Collectors.toList());
 
+        if (merge) {
+            List<CompletableFuture<List<DeviceCommand>>> pages = futures.stream()
+                    .map(future -> future.thenApply(r -> ((CommandSearchResponse) r.getBody()).getCommands()))
+                    .collect(Collectors.toList());
+            return HistoryMerger.merge(pages, CommandResponseFilterAndSort.buildOrder(
+                    CommandResponseFilterAndSort.buildDeviceCommandComparator(actualSortField),
+                    CommandResponseFilterAndSort.isReverse(sortOrder)), actualSkip, take);
+        }
+
         // List<CompletableFuture<Response>> => CompletableFuture<List<DeviceCommand>>
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
                 .thenApply(v -> futures.stream()
@@ -134,7 +183,7 @@ public class DeviceCommandService {
 
         CompletableFuture<Response> future = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
-                .withBody(new CommandInsertRequest(command))
+                .withBody(new CommandInsertRequest(command, device.getNetworkId()))
                 .withPartitionKey(device.getDeviceId())
                 .build(), new ResponseConsumer(future));
         return future.thenApply(r -> ((CommandInsertResponse) r.getBody()).getDeviceCommand());
@@ -147,40 +196,60 @@ public class DeviceCommandService {
             final boolean returnUpdated,
             final Integer limit,
             final BiConsumer<DeviceCommand, Long> callback) throws InterruptedException {
+        return sendSubscribeRequest(devices, null, false, filter, timestamp, returnUpdated, limit, callback);
+    }
+
+    /**
+     * Subscribes to commands of the devices, of every device of the networks and, if global is set, of any device.
+     * Network and global subscriptions are routed by the backend as they are, without listing devices, and are not
+     * supported for updated commands.
+     */
+    public Pair<Long, CompletableFuture<List<DeviceCommand>>> sendSubscribeRequest(
+            final Set<String> devices,
+            final Set<Long> networks,
+            final boolean global,
+            final Filter filter,
+            final Date timestamp,
+            final boolean returnUpdated,
+            final Integer limit,
+            final BiConsumer<DeviceCommand, Long> callback) throws InterruptedException {
 
         final Long subscriptionId = idGenerator.generate();
-        Collection<CompletableFuture<Collection<DeviceCommand>>> futures = devices.stream()
-                .map(device -> new CommandSubscribeRequest(subscriptionId, device, filter, timestamp, returnUpdated, limit))
-                .map(subscribeRequest -> {
-                    CompletableFuture<Collection<DeviceCommand>> future = new CompletableFuture<>();
-                    Consumer<Response> responseConsumer = response -> {
-                        Action resAction = response.getBody().getAction();
-                        if (resAction.equals(Action.COMMAND_SUBSCRIBE_RESPONSE)) {
-                            future.complete(response.getBody().cast(CommandSubscribeResponse.class).getCommands());
-                            requestResponseMatcher.addSubscription(subscriptionId, response.getCorrelationId());
-                        } else if (!returnUpdated && resAction.equals(Action.COMMAND_EVENT)) {
-                            callback.accept(response.getBody().cast(CommandEvent.class).getCommand(), subscriptionId);
-                        } else if (returnUpdated && resAction.equals(Action.COMMANDS_UPDATE_EVENT)) {
-                            callback.accept(response.getBody().cast(CommandsUpdateEvent.class).getDeviceCommand(), subscriptionId);
-                        } else {
-                            logger.warn("Unknown action received from backend {}", resAction);
-                        }
-                    };
-                    Request request = Request.newBuilder()
-                            .withBody(subscribeRequest)
-                            .withPartitionKey(subscribeRequest.getDevice())
-                            .withSingleReply(false)
-                            .build();
-                    rpcClient.call(request, responseConsumer);
-                    return future;
-                }).collect(Collectors.toList());
+        final boolean scoped = global || (networks != null && !networks.isEmpty());
+        if (devices.isEmpty() && !scoped) {
+            return Pair.of(subscriptionId, CompletableFuture.completedFuture(Collections.<DeviceCommand>emptyList()));
+        }
 
-        CompletableFuture<List<DeviceCommand>> future = CompletableFuture
-                .allOf(futures.toArray(new CompletableFuture[futures.size()]))
-                .thenApply(v -> futures.stream()
-                        .map(CompletableFuture::join)
-                        .flatMap(Collection::stream)
-                        .collect(Collectors.toList()));
+        CommandSubscribeRequest subscribeRequest = new CommandSubscribeRequest(subscriptionId, null, filter, timestamp, returnUpdated, limit);
+        subscribeRequest.setDevices(devices);
+        subscribeRequest.setNetworks(networks);
+        subscribeRequest.setGlobal(global);
+
+        CompletableFuture<List<DeviceCommand>> future = new CompletableFuture<>();
+        Consumer<Response> responseConsumer = response -> {
+            if (response.isFailed()) {
+                logger.warn("Command subscription {} failed with code {}", subscriptionId, response.getErrorCode());
+                future.completeExceptionally(ResponseConsumer.toException(response));
+                return;
+            }
+            Action resAction = response.getBody().getAction();
+            if (resAction.equals(Action.COMMAND_SUBSCRIBE_RESPONSE)) {
+                requestResponseMatcher.addSubscription(subscriptionId, response.getCorrelationId());
+                future.complete(new ArrayList<>(response.getBody().cast(CommandSubscribeResponse.class).getCommands()));
+            } else if (!returnUpdated && resAction.equals(Action.COMMAND_EVENT)) {
+                callback.accept(response.getBody().cast(CommandEvent.class).getCommand(), subscriptionId);
+            } else if (returnUpdated && resAction.equals(Action.COMMANDS_UPDATE_EVENT)) {
+                callback.accept(response.getBody().cast(CommandsUpdateEvent.class).getDeviceCommand(), subscriptionId);
+            } else {
+                logger.warn("Unknown action received from backend {}", resAction);
+            }
+        };
+        Request request = Request.newBuilder()
+                .withBody(subscribeRequest)
+                .withPartitionKey(devices.size() == 1 && !scoped ? devices.iterator().next() : null)
+                .withSingleReply(false)
+                .build();
+        rpcClient.call(request, responseConsumer);
         return Pair.of(subscriptionId, future);
     }
 
@@ -194,7 +263,7 @@ public class DeviceCommandService {
             CompletableFuture<Set<Long>> future = new CompletableFuture<>();
             if (resAction.equals(Action.COMMAND_UNSUBSCRIBE_RESPONSE)) {
                 future.complete(response.getBody().cast(CommandUnsubscribeResponse.class).getSubscriptionIds());
-                subIds.forEach(requestResponseMatcher::removeSubscription);
+                requestResponseMatcher.removeSubscriptions(subIds);
             } else {
                 logger.warn("Unknown action received from backend {}", resAction);
             }
@@ -206,6 +275,11 @@ public class DeviceCommandService {
         CompletableFuture<Pair<Long, DeviceCommand>> future = new CompletableFuture<>();
         final Long subscriptionId = idGenerator.generate();
         Consumer<Response> responseConsumer = response -> {
+            if (response.isFailed()) {
+                logger.warn("Command update subscription {} failed with code {}", subscriptionId, response.getErrorCode());
+                future.completeExceptionally(ResponseConsumer.toException(response));
+                return;
+            }
             Action resAction = response.getBody().getAction();
             if (resAction.equals(Action.COMMAND_UPDATE_SUBSCRIBE_RESPONSE)) {
                 future.complete(Pair.of(response.getBody().cast(CommandUpdateSubscribeResponse.class).getSubscriptionId(), response.getBody().cast(CommandUpdateSubscribeResponse.class).getDeviceCommand()));
@@ -250,20 +324,17 @@ public class DeviceCommandService {
 
         hiveValidator.validate(cmd);
 
-        CompletableFuture<Response> commandUpdateFuture = new CompletableFuture<>();
+        CompletableFuture<Response> future = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
                 .withBody(new CommandUpdateRequest(cmd))
-                .build(), new ResponseConsumer(commandUpdateFuture));
-        CompletableFuture<Response> commandsUpdateFuture = new CompletableFuture<>();
-        rpcClient.call(Request.newBuilder()
-                .withBody(new CommandsUpdateRequest(cmd))
-                .build(), new ResponseConsumer(commandsUpdateFuture));
-        return CompletableFuture.allOf(commandUpdateFuture, commandsUpdateFuture).thenApply(response -> null);
+                .withPartitionKey(cmd.getDeviceId())
+                .build(), new ResponseConsumer(future));
+        return future.thenApply(response -> null);
     }
 
     private DeviceCommand convertWrapperToCommand(DeviceCommandWrapper commandWrapper, DeviceVO device, UserVO user) {
         DeviceCommand command = new DeviceCommand();
-        command.setId(Math.abs(new Random().nextInt()));
+        command.setId(idGenerator.generate());
         command.setDeviceId(device.getDeviceId());
         command.setIsUpdated(false);
 
@@ -20,12 +20,15 @@ package com.devicehive.service;
  * #L%
  */
 
+import com.devicehive.model.CommandResponseFilterAndSort;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HistoryCursor;
 import com.devicehive.model.SpecialNotifications;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.events.NotificationEvent;
 import com.devicehive.model.rpc.*;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
+import com.devicehive.service.helpers.HistoryMerger;
 import com.devicehive.service.helpers.LongIdGenerator;
 import com.devicehive.service.helpers.ResponseConsumer;
 import com.devicehive.service.time.TimestampService;
@@ -49,6 +52,8 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.devicehive.configuration.Constants.TIMESTAMP;
+
 @Service
 public class DeviceNotificationService {
 
@@ -86,25 +91,59 @@ public class DeviceNotificationService {
         return future.thenApply(r -> ((NotificationSearchResponse) r.getBody()).getNotifications().stream().findFirst());
     }
 
-    public CompletableFuture<List<DeviceNotification>> find(ListNotificationRequest request) {
+    public CompletableFuture<List<DeviceNotification>> find(ListNotificationRequest request, HistoryCursor cursor) {
         String deviceId = request.getDeviceId();
         String notification = request.getNotification();
         Set<String> notificationNames =
                 StringUtils.isNoneEmpty(notification) ? Collections.singleton(notification) : Collections.emptySet();
-        return find(Collections.singleton(deviceId), notificationNames,
-                request.getStart(), request.getEnd());
+        return find(Collections.singleton(deviceId), notificationNames, request.getStart(), request.getEnd(),
+                request.getSortField(), request.getSortOrder(), request.getSkip(), request.getTake(), cursor);
     }
 
-    @SuppressWarnings("unchecked")
     public CompletableFuture<List<DeviceNotification>> find(Set<String> deviceIds, Set<String> names,
                                                             Date timestampSt, Date timestampEnd) {
+        return find(deviceIds, names, timestampSt, timestampEnd, null, null, null, null);
+    }
+
+    public CompletableFuture<List<DeviceNotification>> find(Set<String> deviceIds, Set<String> names,
+                                                            Date timestampSt, Date timestampEnd,
+                                                            String sortField, String sortOrder,
+                                                            Integer skip, Integer take) {
+        return find(deviceIds, names, timestampSt, timestampEnd, sortField, sortOrder, skip, take, null);
+    }
+
+    /**
+     * Sorting and paging are applied by the backend, so only the requested page travels back. When several devices
+     * are queried, each of them returns its first {@code skip + take} entries and the sorted pages are merged
+     * by {@link HistoryMerger}. A {@code cursor} replaces {@code skip}: every device resumes right after its own
+     * position in timestamp order, so only {@code take} entries per device are read for every page.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<DeviceNotification>> find(Set<String> deviceIds, Set<String> names,
+                                                            Date timestampSt, Date timestampEnd,
+                                                            String sortField, String sortOrder,
+                                                            Integer skip, Integer take, HistoryCursor cursor) {
+        final boolean merge = take != null && deviceIds.size() > 1;
+        final int actualSkip = skip == null || cursor != null ? 0 : skip;
+        final String actualSortField = cursor != null ? TIMESTAMP : sortField;
+        // a stable device order keeps pages without a sort field the same between requests
         List<CompletableFuture<Response>> futures = deviceIds.stream()
+                .sorted()
                 .map(deviceId -> {
                     NotificationSearchRequest searchRequest = new NotificationSearchRequest();
                     searchRequest.setDeviceId(deviceId);
                     searchRequest.setNames(names);
                     searchRequest.setTimestampStart(timestampSt);
                     searchRequest.setTimestampEnd(timestampEnd);
+                    searchRequest.setSortField(actualSortField);
+                    searchRequest.setSortOrder(sortOrder);
+                    if (take != null) {
+                        searchRequest.setSkip(merge ? 0 : actualSkip);
+                        searchRequest.setTake(merge ? (int) Math.min(Integer.MAX_VALUE, (long) actualSkip + take) : take);
+                    }
+                    if (cursor != null) {
+                        searchRequest.setAfter(cursor.getPosition(deviceId));
+                    }
                     return searchRequest;
                 })
                 .map(searchRequest -> {
@@ -117,6 +156,15 @@ public class DeviceNotificationService {
                 })
                 .collect(Collectors.toList());
 
+        if (merge) {
+            List<CompletableFuture<List<DeviceNotification>>> pages = futures.stream()
+                    .map(future -> future.thenApply(r -> r.getBody().cast(NotificationSearchResponse.class).getNotifications()))
+                    .collect(Collectors.toList());
+            return HistoryMerger.merge(pages, CommandResponseFilterAndSort.buildOrder(
+                    CommandResponseFilterAndSort.buildDeviceNotificationComparator(actualSortField),
+                    CommandResponseFilterAndSort.isReverse(sortOrder)), actualSkip, take);
+        }
+
         // List<CompletableFuture<Response>> => CompletableFuture<List<DeviceNotification>>
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
                 .thenApply(v -> futures.stream()
@@ -133,7 +181,7 @@ public class DeviceNotificationService {
                 .map(n -> {
                     CompletableFuture<Response> future = new CompletableFuture<>();
                     rpcClient.call(Request.newBuilder()
-                            .withBody(new NotificationInsertRequest(n))
+                            .withBody(new NotificationInsertRequest(n, device.getNetworkId()))
                             .withPartitionKey(device.getDeviceId())
                             .build(), new ResponseConsumer(future));
                     return future;
@@ -153,42 +201,57 @@ public class DeviceNotificationService {
             final Filter filter,
             final Date timestamp,
             final BiConsumer<DeviceNotification, Long> callback) {
+        return subscribe(devices, null, false, filter, timestamp, callback);
+    }
+
+    /**
+     * Subscribes to notifications of the devices, of every device of the networks and, if global is set, of any device.
+     * Network and global subscriptions are routed by the backend as they are, without listing devices.
+     */
+    public Pair<Long, CompletableFuture<List<DeviceNotification>>> subscribe(
+            final Set<String> devices,
+            final Set<Long> networks,
+            final boolean global,
+            final Filter filter,
+            final Date timestamp,
+            final BiConsumer<DeviceNotification, Long> callback) {
 
         final Long subscriptionId = idGenerator.generate();
-        Set<NotificationSubscribeRequest> subscribeRequests = devices.stream()
-                .map(device -> new NotificationSubscribeRequest(subscriptionId, device, filter, timestamp))
-                .collect(Collectors.toSet());
-        Collection<CompletableFuture<Collection<DeviceNotification>>> futures = new ArrayList<>();
-        for (NotificationSubscribeRequest sr : subscribeRequests) {
-            CompletableFuture<Collection<DeviceNotification>> future = new CompletableFuture<>();
-            Consumer<Response> responseConsumer = response -> {
-                Action resAction = response.getBody().getAction();
-                if (resAction.equals(Action.NOTIFICATION_SUBSCRIBE_RESPONSE)) {
-                    NotificationSubscribeResponse r = response.getBody().cast(NotificationSubscribeResponse.class);
-                    requestResponseMatcher.addSubscription(subscriptionId, response.getCorrelationId());
-                    future.complete(r.getNotifications());
-                } else if (resAction.equals(Action.NOTIFICATION_EVENT)) {
-                    NotificationEvent event = response.getBody().cast(NotificationEvent.class);
-                    callback.accept(event.getNotification(), subscriptionId);
-                } else {
-                    logger.warn("Unknown action received from backend {}", resAction);
-                }
-            };
-            futures.add(future);
-            Request request = Request.newBuilder()
-                    .withBody(sr)
-                    .withPartitionKey(sr.getDevice())
-                    .withSingleReply(false)
-                    .build();
-            rpcClient.call(request, responseConsumer);
+        final boolean scoped = global || (networks != null && !networks.isEmpty());
+        if (devices.isEmpty() && !scoped) {
+            return Pair.of(subscriptionId, CompletableFuture.completedFuture(Collections.<DeviceNotification>emptyList()));
         }
 
-        CompletableFuture<List<DeviceNotification>> future = CompletableFuture
-                .allOf(futures.toArray(new CompletableFuture[futures.size()]))
-                .thenApply(v -> futures.stream()
-                        .map(CompletableFuture::join)
-                        .flatMap(Collection::stream)
-                        .collect(Collectors.toList()));
+        NotificationSubscribeRequest subscribeRequest = new NotificationSubscribeRequest(subscriptionId, null, filter, timestamp);
+        subscribeRequest.setDevices(devices);
+        subscribeRequest.setNetworks(networks);
+        subscribeRequest.setGlobal(global);
+
+        CompletableFuture<List<DeviceNotification>> future = new CompletableFuture<>();
+        Consumer<Response> responseConsumer = response -> {
+            if (response.isFailed()) {
+                logger.warn("Notification subscription {} failed with code {}", subscriptionId, response.getErrorCode());
+                future.completeExceptionally(ResponseConsumer.toException(response));
+                return;
+            }
+            Action resAction = response.getBody().getAction();
+            if (resAction.equals(Action.NOTIFICATION_SUBSCRIBE_RESPONSE)) {
+                NotificationSubscribeResponse r = response.getBody().cast(NotificationSubscribeResponse.class);
+                requestResponseMatcher.addSubscription(subscriptionId, response.getCorrelationId());
+                future.complete(new ArrayList<>(r.getNotifications()));
+            } else if (resAction.equals(Action.NOTIFICATION_EVENT)) {
+                NotificationEvent event = response.getBody().cast(NotificationEvent.class);
+                callback.accept(event.getNotification(), subscriptionId);
+            } else {
+                logger.warn("Unknown action received from backend {}", resAction);
+            }
+        };
+        Request request = Request.newBuilder()
+                .withBody(subscribeRequest)
+                .withPartitionKey(devices.size() == 1 && !scoped ? devices.iterator().next() : null)
+                .withSingleReply(false)
+                .build();
+        rpcClient.call(request, responseConsumer);
         return Pair.of(subscriptionId, future);
     }
 
@@ -202,7 +265,7 @@ public class DeviceNotificationService {
             CompletableFuture<Set<Long>> future = new CompletableFuture<>();
             if (resAction.equals(Action.NOTIFICATION_UNSUBSCRIBE_RESPONSE)) {
                 future.complete(response.getBody().cast(NotificationUnsubscribeResponse.class).getSubscriptionIds());
-                subIds.forEach(requestResponseMatcher::removeSubscription);
+                requestResponseMatcher.removeSubscriptions(subIds);
             } else {
                 logger.warn("Unknown action received from backend {}", resAction);
             }
@@ -212,7 +275,7 @@ public class DeviceNotificationService {
 
     public DeviceNotification convertWrapperToNotification(DeviceNotificationWrapper notificationSubmit, DeviceVO device) {
         DeviceNotification notification = new DeviceNotification();
-        notification.setId(Math.abs(new Random().nextInt()));
+        notification.setId(idGenerator.generate());
         notification.setDeviceId(device.getDeviceId());
         if (notificationSubmit.getTimestamp() == null) {
             notification.setTimestamp(timestampService.getDate());
@@ -20,6 +20,7 @@ package com.devicehive.service;
  * #L%
  */
 
+import com.devicehive.auth.DeviceNetworkIndex;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Messages;
 import com.devicehive.dao.DeviceDao;
@@ -67,6 +68,7 @@ public class DeviceService {
     private final TimestampService timestampService;
     private final DeviceDao deviceDao;
     private final RpcClient rpcClient;
+    private final DeviceNetworkIndex deviceNetworkIndex;
 
     @Autowired
     public DeviceService(DeviceNotificationService deviceNotificationService,
@@ -74,13 +76,15 @@ public class DeviceService {
                          UserService userService,
                          TimestampService timestampService,
                          DeviceDao deviceDao,
-                         RpcClient rpcClient) {
+                         RpcClient rpcClient,
+                         DeviceNetworkIndex deviceNetworkIndex) {
         this.deviceNotificationService = deviceNotificationService;
         this.networkService = networkService;
         this.userService = userService;
         this.timestampService = timestampService;
         this.deviceDao = deviceDao;
         this.rpcClient = rpcClient;
+        this.deviceNetworkIndex = deviceNetworkIndex;
     }
 
     @Transactional(propagation = Propagation.REQUIRED)
@@ -125,6 +129,7 @@ public class DeviceService {
             DeviceVO device = deviceUpdate.convertTo(deviceId);
             device.setNetworkId(networkId);
             deviceDao.persist(device);
+            deviceNetworkIndex.invalidateDevice(deviceId);
             return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_ADD);
         } else {
             if (deviceUpdate.getData().isPresent()){
@@ -137,6 +142,7 @@ public class DeviceService {
                 existingDevice.setBlocked(deviceUpdate.getBlocked().get());
             }
             deviceDao.merge(existingDevice);
+            deviceNetworkIndex.invalidateDevice(deviceId);
             return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_UPDATE);
         }
     }
@@ -177,7 +183,9 @@ public class DeviceService {
     //TODO: only migrated to genericDAO, need to migrate Device PK to DeviceId and use directly GenericDAO#remove
     @Transactional
     public boolean deleteDevice(@NotNull String deviceId) {
-        return deviceDao.deleteById(deviceId) != 0;
+        boolean deleted = deviceDao.deleteById(deviceId) != 0;
+        deviceNetworkIndex.invalidateDevice(deviceId);
+        return deleted;
     }
 
     public CompletableFuture<List<DeviceVO>> list(ListDeviceRequest request) {
@@ -239,6 +247,7 @@ public class DeviceService {
                 device.setBlocked(false);
             }
             deviceDao.persist(device);
+            deviceNetworkIndex.invalidateDevice(deviceId);
             return ServerResponsesFactory.createNotificationForDevice(device, SpecialNotifications.DEVICE_ADD);
         } else {
             if (!userService.hasAccessToDevice(user, existingDevice.getDeviceId())) {
@@ -258,6 +267,7 @@ public class DeviceService {
                 existingDevice.setBlocked(deviceUpdate.getBlocked().get());
             }
             deviceDao.merge(existingDevice);
+            deviceNetworkIndex.invalidateDevice(deviceId);
             return ServerResponsesFactory.createNotificationForDevice(existingDevice, SpecialNotifications.DEVICE_UPDATE);
         }
     }
@@ -19,6 +19,7 @@ package com.devicehive.service;
  * limitations under the License.
  * #L%
  */
+import com.devicehive.auth.DeviceNetworkIndex;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Messages;
@@ -60,16 +61,19 @@ public class NetworkService {
     private final HiveValidator hiveValidator;
     private final NetworkDao networkDao;
     private final RpcClient rpcClient;
+    private final DeviceNetworkIndex deviceNetworkIndex;
 
     private UserService userService;
 
     @Autowired
     public NetworkService(HiveValidator hiveValidator,
                           NetworkDao networkDao,
-                          RpcClient rpcClient) {
+                          RpcClient rpcClient,
+                          DeviceNetworkIndex deviceNetworkIndex) {
         this.hiveValidator = hiveValidator;
         this.networkDao = networkDao;
         this.rpcClient = rpcClient;
+        this.deviceNetworkIndex = deviceNetworkIndex;
     }
 
     @Autowired
@@ -109,11 +113,29 @@ public class NetworkService {
         return result.orElse(null);
     }
 
+    /**
+     * Applies the access rules of {@link #getWithDevices} without loading the devices of the network.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public boolean isNetworkAccessible(@NotNull Long networkId, @NotNull HivePrincipal principal) {
+        UserVO user = principal.getUser();
+        if (user == null) {
+            return false;
+        }
+        Set<Long> permittedNetworks = principal.getNetworkIds();
+        if (permittedNetworks != null && !permittedNetworks.contains(networkId)) {
+            return false;
+        }
+        NetworkVO network = networkDao.find(networkId);
+        return network != null && userService.hasAccessToNetwork(user, network);
+    }
+
     @Transactional
     public boolean delete(long id) {
         logger.trace("About to execute named query \"Network.deleteById\" for ");
         int result = networkDao.deleteById(id);
         logger.debug("Deleted {} rows from Network table", result);
+        deviceNetworkIndex.invalidateNetwork(id);
         return result > 0;
     }
 
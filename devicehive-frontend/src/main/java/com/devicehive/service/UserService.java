@@ -20,6 +20,7 @@ package com.devicehive.service;
  * #L%
  */
 
+import com.devicehive.auth.HivePrincipalCache;
 import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
 import com.devicehive.dao.NetworkDao;
@@ -84,6 +85,7 @@ public class UserService {
     private final ConfigurationService configurationService;
     private final HiveValidator hiveValidator;
     private final RpcClient rpcClient;
+    private final HivePrincipalCache principalCache;
 
     private NetworkService networkService;
 
@@ -94,7 +96,8 @@ public class UserService {
                        TimestampService timestampService,
                        ConfigurationService configurationService,
                        HiveValidator hiveValidator,
-                       RpcClient rpcClient) {
+                       RpcClient rpcClient,
+                       HivePrincipalCache principalCache) {
         this.passwordService = passwordService;
         this.networkDao = networkDao;
         this.userDao = userDao;
@@ -102,6 +105,7 @@ public class UserService {
         this.configurationService = configurationService;
         this.hiveValidator = hiveValidator;
         this.rpcClient = rpcClient;
+        this.principalCache = principalCache;
     }
 
     @Autowired
@@ -200,7 +204,9 @@ public class UserService {
         }
 
         hiveValidator.validate(existing);
-        return userDao.merge(existing);
+        UserVO updated = userDao.merge(existing);
+        principalCache.invalidateUser(id);
+        return updated;
     }
 
     /**
@@ -222,6 +228,7 @@ public class UserService {
         }
             
         networkDao.assignToNetwork(existingNetwork, existingUser);
+        principalCache.invalidateUser(userId);
     }
 
     /**
@@ -243,6 +250,7 @@ public class UserService {
             throw new HiveException(String.format(Messages.NETWORK_NOT_FOUND, networkId), NOT_FOUND.getStatusCode());
         }
         userDao.unassignNetwork(existingUser, networkId);
+        principalCache.invalidateUser(userId);
     }
 
     public CompletableFuture<List<UserVO>> list(ListUserRequest request) {
@@ -343,6 +351,7 @@ public class UserService {
     @Transactional(propagation = Propagation.REQUIRED)
     public boolean deleteUser(long id) {
         int result = userDao.deleteById(id);
+        principalCache.invalidateUser(id);
         return result > 0;
     }
 
@@ -388,8 +397,11 @@ public class UserService {
                     >= configurationService.getInt(Constants.MAX_LOGIN_ATTEMPTS, Constants.MAX_LOGIN_ATTEMPTS_DEFAULT)) {
                 user.setStatus(UserStatus.LOCKED_OUT);
                 user.setLoginAttempts(0);
+                userDao.merge(user);
+                principalCache.invalidateUser(user.getId());
+            } else {
+                userDao.merge(user);
             }
-            userDao.merge(user);
             return empty();
         }
         return of(user);
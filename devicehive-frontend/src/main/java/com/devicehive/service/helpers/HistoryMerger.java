@@ -0,0 +1,134 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.CommandResponseFilterAndSort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Combines history pages returned by several devices into a single page without materializing
+ * the whole history of every device. Every device returns up to {@code skip + take} entries, so the pages
+ * held while merging take O(devices &times; (skip + take)) memory.
+ */
+public final class HistoryMerger {
+
+    private HistoryMerger() {
+
+    }
+
+    /**
+     * Returns entries {@code skip} to {@code skip + take} of the combined history. When {@code order} is given,
+     * every page is expected to be sorted by it already and the pages are merged through a heap holding one head
+     * per device. Without an order the pages are concatenated in the given order, so the same request returns
+     * the same page; the result completes as soon as the leading pages hold enough entries, without waiting
+     * for the devices after them.
+     */
+    public static <T> CompletableFuture<List<T>> merge(List<CompletableFuture<List<T>>> pages,
+                                                       Comparator<T> order, int skip, int take) {
+        if (pages.isEmpty() || skip < 0 || take <= 0) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        final int limit = (int) Math.min(Integer.MAX_VALUE, (long) skip + take);
+        if (order == null) {
+            return concatenate(pages, skip, take, limit);
+        }
+        return CompletableFuture.allOf(pages.toArray(new CompletableFuture[pages.size()]))
+                .thenApply(v -> {
+                    final List<List<T>> sorted = new ArrayList<>(pages.size());
+                    pages.forEach(page -> sorted.add(page.join()));
+                    return mergeSorted(sorted, order, skip, limit);
+                });
+    }
+
+    static <T> List<T> mergeSorted(List<List<T>> sorted, Comparator<T> order, int skip, int limit) {
+        final PriorityQueue<Head<T>> heads = new PriorityQueue<>(sorted.size(),
+                (o1, o2) -> order.compare(o1.value(), o2.value()));
+        for (List<T> page : sorted) {
+            if (!page.isEmpty()) {
+                heads.add(new Head<>(page));
+            }
+        }
+        final List<T> result = new ArrayList<>(Math.min(limit - skip, 1024));
+        int produced = 0;
+        while (produced < limit && !heads.isEmpty()) {
+            final Head<T> head = heads.poll();
+            if (produced++ >= skip) {
+                result.add(head.value());
+            }
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<List<T>> concatenate(List<CompletableFuture<List<T>>> pages,
+                                                              int skip, int take, int limit) {
+        final CompletableFuture<List<T>> result = new CompletableFuture<>();
+        pages.forEach(page -> page.whenComplete((entities, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            synchronized (result) {
+                if (result.isDone()) {
+                    return;
+                }
+                final List<T> collected = new ArrayList<>();
+                int next = 0;
+                while (next < pages.size() && pages.get(next).isDone()
+                        && !pages.get(next).isCompletedExceptionally() && collected.size() < limit) {
+                    final List<T> leading = pages.get(next++).join();
+                    collected.addAll(leading.subList(0, Math.min(leading.size(), limit - collected.size())));
+                }
+                if (collected.size() >= limit || next == pages.size()) {
+                    result.complete(new ArrayList<>(
+                            CommandResponseFilterAndSort.orderAndLimit(collected, null, null, skip, take)));
+                }
+            }
+        }));
+        return result;
+    }
+
+    private static class Head<T> {
+
+        private final List<T> page;
+        private int position;
+
+        private Head(List<T> page) {
+            this.page = page;
+        }
+
+        private T value() {
+            return page.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < page.size();
+        }
+    }
+}
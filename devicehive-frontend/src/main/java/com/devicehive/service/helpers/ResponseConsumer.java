@@ -38,12 +38,19 @@ public class ResponseConsumer implements Consumer<Response> {
     @Override
     public void accept(Response response) {
         if (response.isFailed()) {
-            String message = response.getBody() != null
-                    ? response.getBody().cast(ErrorResponse.class).getMessage()
-                    : "Unexpected error occurred.";
-            future.completeExceptionally(new BackendException(message, response.getErrorCode()));
+            future.completeExceptionally(toException(response));
         } else {
             future.complete(response);
         }
     }
+
+    /**
+     * @return exception describing failed response, e.g. the 504 error of a request that timed out
+     */
+    public static BackendException toException(Response response) {
+        String message = response.getBody() instanceof ErrorResponse
+                ? response.getBody().cast(ErrorResponse.class).getMessage()
+                : "Unexpected error occurred.";
+        return new BackendException(message, response.getErrorCode());
+    }
 }
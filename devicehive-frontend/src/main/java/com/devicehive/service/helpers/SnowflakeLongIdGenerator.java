@@ -0,0 +1,90 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.EntityIdLayout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake style generator: milliseconds since {@link #EPOCH}, node id and a sequence within the millisecond,
+ * see {@link EntityIdLayout}.
+ * Ids are unique across nodes as long as every node has its own {@code id.generator.node-id}, so the node does not
+ * start without one. The layout fits into 53 bits, so ids stay exact in JavaScript clients.
+ * <p>
+ * The last (timestamp, sequence) pair is kept in one {@link AtomicLong}; when a millisecond runs out of sequence
+ * numbers, the generator moves on to the next millisecond instead of waiting for it, but never gets more than
+ * {@link #MAX_RUN_AHEAD_MILLIS} ahead of the clock, so a restarted node does not reuse ids it has handed out.
+ */
+@Component
+public class SnowflakeLongIdGenerator implements LongIdGenerator {
+
+    static final long EPOCH = EntityIdLayout.EPOCH;
+    static final int NODE_BITS = EntityIdLayout.NODE_BITS;
+    static final int SEQUENCE_BITS = EntityIdLayout.SEQUENCE_BITS;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    static final long MAX_RUN_AHEAD_MILLIS = 5;
+    private static final long MAX_RUN_AHEAD = MAX_RUN_AHEAD_MILLIS << SEQUENCE_BITS;
+
+    private final long nodeBits;
+    private final AtomicLong last = new AtomicLong();
+
+    @Autowired
+    public SnowflakeLongIdGenerator(@Value("${id.generator.node-id:}") String nodeId) {
+        this(parseNodeId(nodeId));
+    }
+
+    SnowflakeLongIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long generate() {
+        for (;;) {
+            final long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            final long previous = last.get();
+            final long next = Math.max(previous + 1, now);
+            if (next - now > MAX_RUN_AHEAD) {
+                // sequences of the next few milliseconds are used up, let the clock catch up
+                Thread.yield();
+                continue;
+            }
+            if (last.compareAndSet(previous, next)) {
+                return ((next & ~SEQUENCE_MASK) << NODE_BITS) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    private static long parseNodeId(String nodeId) {
+        if (nodeId.isEmpty()) {
+            throw new IllegalStateException("id.generator.node-id is not set. Configure a distinct value (0-"
+                    + MAX_NODE_ID + ") for every frontend node, ids of nodes sharing a value collide.");
+        }
+        return Long.parseLong(nodeId);
+    }
+}
@@ -28,7 +28,6 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -41,11 +40,14 @@ public class JwtClientService {
 
     private final JwtTokenGenerator tokenGenerator;
     private final JwtSecretService jwtSecretService;
+    private final JwtPayloadCache payloadCache;
 
     @Autowired
-    public JwtClientService(JwtTokenGenerator tokenGenerator, JwtSecretService jwtSecretService) {
+    public JwtClientService(JwtTokenGenerator tokenGenerator, JwtSecretService jwtSecretService,
+                            JwtPayloadCache payloadCache) {
         this.tokenGenerator = tokenGenerator;
         this.jwtSecretService = jwtSecretService;
+        this.payloadCache = payloadCache;
     }
 
     public String generateJwtAccessToken(JwtPayload payload, boolean useExpiration) {
@@ -56,8 +58,11 @@ public class JwtClientService {
         return tokenGenerator.generateToken(payload, TokenType.REFRESH, useExpiration);
     }
 
-    @Cacheable("payload")
     public JwtPayload getPayload(String jwtToken) {
+        return payloadCache.get(jwtToken, this::parsePayload);
+    }
+
+    private JwtPayload parsePayload(String jwtToken) {
         Claims claims = Jwts.parser()
                 .setSigningKey(jwtSecretService.getJwtSecret())
                 .parseClaimsJws(jwtToken)
@@ -0,0 +1,202 @@
+package com.devicehive.service.security.jwt;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.security.jwt.JwtPayload;
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of verified token payloads. An entry lives until the token's expiration claim, capped by
+ * {@code jwt.payload-cache.max-age}; tokens that fail verification or are already expired are remembered for
+ * {@code jwt.payload-cache.negative-ttl} so that replaying them does not cost a signature check each time.
+ * Request threads never evict: a full cache does not take new tokens, which are then verified on every request,
+ * and a scheduled sweep drops expired entries and, if the cache is still nearly full, the ones closest to expiry.
+ */
+@Component
+public class JwtPayloadCache {
+    private static final Logger logger = LoggerFactory.getLogger(JwtPayloadCache.class);
+
+    private final int maxSize;
+    private final long maxAge;
+    private final long negativeTtl;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public JwtPayloadCache(@Value("${jwt.payload-cache.max-size:10000}") int maxSize,
+                           @Value("${jwt.payload-cache.max-age:1800000}") long maxAge,
+                           @Value("${jwt.payload-cache.negative-ttl:60000}") long negativeTtl) {
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.negativeTtl = negativeTtl;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the cached payload of the token or verifies it with the loader. A {@link JwtException} thrown by the
+     * loader is cached as well and rethrown on later lookups of the same token.
+     */
+    public JwtPayload get(String token, Function<String, JwtPayload> loader) {
+        if (!isEnabled()) {
+            return loader.apply(token);
+        }
+        final long now = System.currentTimeMillis();
+        final Entry cached = entries.get(token);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                if (cached.failure != null) {
+                    negativeHits.increment();
+                    throw cached.failure;
+                }
+                hits.increment();
+                return cached.payload;
+            }
+            entries.remove(token, cached);
+        }
+
+        misses.increment();
+        final JwtPayload payload;
+        try {
+            payload = loader.apply(token);
+        } catch (JwtException e) {
+            put(token, new Entry(null, e, now + negativeTtl));
+            throw e;
+        }
+        put(token, new Entry(payload, null, expiresAt(payload, now)));
+        return payload;
+    }
+
+    private long expiresAt(JwtPayload payload, long now) {
+        if (payload.getExpiration() == null) {
+            return now + maxAge;
+        }
+        final long expiration = payload.getExpiration().getTime();
+        return expiration > now ? Math.min(expiration, now + maxAge) : now + negativeTtl;
+    }
+
+    /**
+     * Inserts the entry unless the cache is full. Concurrent inserts may pass the check together, so the size
+     * can exceed the capacity by at most the number of request threads.
+     */
+    private void put(String token, Entry entry) {
+        if (entries.size() >= maxSize && !entries.containsKey(token)) {
+            rejections.increment();
+            return;
+        }
+        entries.put(token, entry);
+    }
+
+    /**
+     * Drops expired entries and, if that is not enough, the ones closest to expiry until a tenth of the capacity is free.
+     */
+    @Scheduled(fixedDelayString = "${jwt.payload-cache.sweep.period:5000}")
+    public synchronized void sweep() {
+        if (!isEnabled()) {
+            return;
+        }
+        removeExpired(System.currentTimeMillis());
+        final int target = maxSize - maxSize / 10;
+        if (entries.size() <= target) {
+            return;
+        }
+        entries.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue((a, b) -> Long.compare(a.expiresAt, b.expiresAt)))
+                .limit(entries.size() - target)
+                .forEach(e -> {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                    }
+                });
+    }
+
+    private void removeExpired(long now) {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.payload-cache.stats.period:60000}")
+    public void logStats() {
+        if (isEnabled()) {
+            logger.info("Jwt payload cache: {} entries, hits={}, negativeHits={}, misses={}, evictions={}, rejections={}",
+                    entries.size(), getHits(), getNegativeHits(), getMisses(), getEvictions(), getRejections());
+        }
+    }
+
+    private static class Entry {
+        private final JwtPayload payload;
+        private final JwtException failure;
+        private final long expiresAt;
+
+        private Entry(JwtPayload payload, JwtException failure, long expiresAt) {
+            this.payload = payload;
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
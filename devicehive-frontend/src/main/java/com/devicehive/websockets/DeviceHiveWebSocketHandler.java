@@ -30,6 +30,7 @@ import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.handlers.CommandHandlers;
 import com.devicehive.websockets.handlers.NotificationHandlers;
+import com.devicehive.websockets.util.OutboundMessageWriter;
 import com.devicehive.websockets.util.SessionMonitor;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
@@ -45,7 +46,6 @@ import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import javax.persistence.OptimisticLockException;
@@ -68,15 +68,13 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
     private DeviceCommandService commandService;
     private DeviceNotificationService notificationService;
     private WebSocketClientHandler webSocketClientHandler;
-
-    private int sendTimeLimit = 10 * 1000;
-    private int sendBufferSizeLimit = 512 * 1024;
+    private OutboundMessageWriter outboundMessageWriter;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         logger.debug("Opening session id {} ", session.getId());
 
-        session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, sendBufferSizeLimit);
+        session = outboundMessageWriter.decorate(session);
         HiveWebsocketSessionState state = new HiveWebsocketSessionState();
         session.getAttributes().put(HiveWebsocketSessionState.KEY, state);
 
@@ -222,4 +220,9 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
     public void setWebSocketClientHandler(WebSocketClientHandler webSocketClientHandler) {
         this.webSocketClientHandler = webSocketClientHandler;
     }
+
+    @Autowired
+    public void setOutboundMessageWriter(OutboundMessageWriter outboundMessageWriter) {
+        this.outboundMessageWriter = outboundMessageWriter;
+    }
 }
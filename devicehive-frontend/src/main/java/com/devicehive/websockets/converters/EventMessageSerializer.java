@@ -0,0 +1,128 @@
+package com.devicehive.websockets.converters;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.json.GsonFactory;
+import com.devicehive.json.strategies.JsonPolicyDef.Policy;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_TO_DEVICE;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_UPDATE_TO_CLIENT;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
+
+/**
+ * Builds the text of notification and command event messages. Every subscriber of a device gets the same event, so
+ * its body is serialized once per JSON policy and kept for a short while; only the action and subscription id are
+ * written per message. The text matches that of the corresponding {@code ServerResponsesFactory} message.
+ */
+@Component
+public class EventMessageSerializer {
+
+    private static final String NOTIFICATION_INSERT = "notification/insert";
+    private static final String COMMAND_INSERT = "command/insert";
+    private static final String COMMAND_UPDATE = "command/update";
+
+    /**
+     * Bodies by policy and event. Events are compared by value, as each subscription may receive its own copy;
+     * for commands the key also holds {@code lastUpdated}, which their {@code equals} leaves out.
+     */
+    private final Cache<BodyKey, String> bodies;
+
+    public EventMessageSerializer(@Value("${websocket.event-cache.max-size:10000}") int maxSize,
+                                  @Value("${websocket.event-cache.max-age:10000}") long maxAge) {
+        this.bodies = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxAge, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public String createNotificationInsertMessage(DeviceNotification notification, Long subscriptionId) {
+        return message(NOTIFICATION_INSERT, Constants.NOTIFICATION,
+                body(new BodyKey(notification, null, NOTIFICATION_TO_CLIENT)), subscriptionId);
+    }
+
+    /*
+        If returnUpdated is true this subscription is for updated commands so message for CommandUpdate is created,
+        otherwise this subscription is for inserted commands so CommandInsert message is created
+    */
+    public String createCommandMessage(DeviceCommand command, Long subscriptionId, Boolean returnUpdated) {
+        if (returnUpdated) {
+            return message(COMMAND_UPDATE, Constants.COMMAND,
+                    body(new BodyKey(command, command.getLastUpdated(), COMMAND_UPDATE_TO_CLIENT)), subscriptionId);
+        }
+        return message(COMMAND_INSERT, Constants.COMMAND,
+                body(new BodyKey(command, command.getLastUpdated(), COMMAND_TO_DEVICE)), subscriptionId);
+    }
+
+    private String body(BodyKey key) {
+        try {
+            return bodies.get(key, () -> GsonFactory.createGson(key.policy).toJsonTree(key.event).toString());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static String message(String action, String name, String body, Long subscriptionId) {
+        return new StringBuilder(body.length() + 64)
+                .append("{\"").append(JsonMessageBuilder.ACTION).append("\":\"").append(action)
+                .append("\",\"").append(name).append("\":").append(body)
+                .append(",\"").append(Constants.SUBSCRIPTION_ID).append("\":").append(subscriptionId)
+                .append('}')
+                .toString();
+    }
+
+    private static class BodyKey {
+        private final Object event;
+        private final Date lastUpdated;
+        private final Policy policy;
+
+        private BodyKey(Object event, Date lastUpdated, Policy policy) {
+            this.event = event;
+            this.lastUpdated = lastUpdated;
+            this.policy = policy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BodyKey that = (BodyKey) o;
+            return policy == that.policy && Objects.equals(lastUpdated, that.lastUpdated)
+                    && Objects.equals(event, that.event);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Objects.hashCode(event) + Objects.hashCode(lastUpdated)) + policy.hashCode();
+        }
+    }
+}
@@ -27,11 +27,12 @@ import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.messages.handler.WebSocketClientHandler;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.HistoryCursor;
+import com.devicehive.model.converters.HistoryCursorQueryParamParser;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.rpc.ListCommandRequest;
 import com.devicehive.model.rpc.ListDeviceRequest;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
-import com.devicehive.resource.util.CommandResponseFilterAndSort;
 import com.devicehive.resource.util.JsonTypes;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
@@ -39,6 +40,7 @@ import com.devicehive.service.NetworkService;
 import com.devicehive.vo.DeviceVO;
 import com.devicehive.vo.NetworkWithUsersAndDevicesVO;
 import com.devicehive.vo.UserVO;
+import com.devicehive.websockets.converters.EventMessageSerializer;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -61,7 +63,6 @@ import static com.devicehive.configuration.Constants.*;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
 import static com.devicehive.model.enums.SortOrder.ASC;
 import static com.devicehive.model.rpc.ListCommandRequest.createListCommandRequest;
-import static com.devicehive.util.ServerResponsesFactory.createCommandMessage;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
@@ -79,18 +80,21 @@ public class CommandHandlers {
     private final NetworkService networkService;
     private final DeviceCommandService commandService;
     private final WebSocketClientHandler clientHandler;
+    private final EventMessageSerializer eventMessageSerializer;
 
     @Autowired
     public CommandHandlers(Gson gson,
                            DeviceService deviceService,
                            NetworkService networkService,
                            DeviceCommandService commandService,
-                           WebSocketClientHandler clientHandler) {
+                           WebSocketClientHandler clientHandler,
+                           EventMessageSerializer eventMessageSerializer) {
         this.gson = gson;
         this.deviceService = deviceService;
         this.networkService = networkService;
         this.commandService = commandService;
         this.clientHandler = clientHandler;
+        this.eventMessageSerializer = eventMessageSerializer;
     }
 
     @HiveWebsocketAuth
@@ -119,22 +123,41 @@ public class CommandHandlers {
             deviceService.getAllowedExistingDevices(devices, principal);
             filter.setDeviceIds(devices);
         }
+        // network and global subscriptions are routed by the backend without listing devices, unless the principal
+        // is limited to particular devices and the listing is what enforces the limit
+        final boolean scoped = principal.isNetworkScopeAllowed() && !returnUpdated;
+        Set<Long> scopedNetworks = null;
+        boolean global = false;
         if (networks != null) {
-            Set<NetworkWithUsersAndDevicesVO> actualNetworks = networks.stream().map(network ->
-                    networkService.getWithDevices(network, authentication)
-            ).filter(Objects::nonNull).collect(Collectors.toSet());
-            if (actualNetworks.size() != networks.size()) {
-                throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+            if (scoped) {
+                if (!networks.stream().allMatch(network -> networkService.isNetworkAccessible(network, principal))) {
+                    throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+                }
+                scopedNetworks = networks;
+            } else {
+                Set<NetworkWithUsersAndDevicesVO> actualNetworks = networks.stream().map(network ->
+                        networkService.getWithDevices(network, authentication)
+                ).filter(Objects::nonNull).collect(Collectors.toSet());
+                if (actualNetworks.size() != networks.size()) {
+                    throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+                }
+                Set<String> networkDevices = actualNetworks.stream()
+                        .map(NetworkWithUsersAndDevicesVO::getDevices)
+                        .flatMap(Collection::stream)
+                        .map(DeviceVO::getDeviceId)
+                        .collect(Collectors.toSet());
+                devices.addAll(networkDevices);
             }
-            Set<String> networkDevices = actualNetworks.stream()
-                    .map(NetworkWithUsersAndDevicesVO::getDevices)
-                    .flatMap(Collection::stream)
-                    .map(DeviceVO::getDeviceId)
-                    .collect(Collectors.toSet());
-            devices.addAll(networkDevices);
             filter.setNetworkIds(networks);
         }
-        if (devices.isEmpty()) {
+        if (devices.isEmpty() && scopedNetworks == null && scoped && principal.isGlobalScopeAllowed()) {
+            filter.setGlobal(true);
+            if (Boolean.TRUE.equals(principal.areAllNetworksAvailable())) {
+                global = true;
+            } else {
+                scopedNetworks = principal.getNetworkIds();
+            }
+        } else if (devices.isEmpty() && scopedNetworks == null) {
             ListDeviceRequest listDeviceRequest = new ListDeviceRequest(ASC.name(), principal);
             List<DeviceVO> actualDevices = deviceService.list(listDeviceRequest).join();
             devices = actualDevices.stream().map(DeviceVO::getDeviceId).collect(Collectors.toSet());
@@ -142,28 +165,39 @@ public class CommandHandlers {
         }
 
         BiConsumer<DeviceCommand, Long> callback = (command, subscriptionId) -> {
-            JsonObject json = createCommandMessage(command, subscriptionId, returnUpdated);
-            clientHandler.sendMessage(json, session);
+            String message = eventMessageSerializer.createCommandMessage(command, subscriptionId, returnUpdated);
+            // commands are coalesced only with later updates of the same command
+            String key = subscriptionId + "/" + command.getId();
+            clientHandler.sendMessage(message, key, session);
         };
 
         Pair<Long, CompletableFuture<List<DeviceCommand>>> pair = commandService
-                .sendSubscribeRequest(devices, filter, timestamp, returnUpdated, limit, callback);
-        
+                .sendSubscribeRequest(devices, scopedNetworks, global, filter, timestamp, returnUpdated, limit, callback);
+
+        // registered before the stages are attached, as a failed future runs the failure handler right away
+        ((CopyOnWriteArraySet) session
+                .getAttributes()
+                .get(SUBSCRIPTION_SET_NAME))
+                .add(pair.getLeft());
+
         pair.getRight()
                 .thenAccept(collection -> {
                     WebSocketResponse response = new WebSocketResponse();
                     response.addValue(SUBSCRIPTION_ID, pair.getLeft(), null);
                     clientHandler.sendMessage(request, response, session);
-                    collection.forEach(cmd -> clientHandler.sendMessage(createCommandMessage(cmd, pair.getLeft(), returnUpdated), session));
+                    collection.forEach(cmd -> clientHandler.sendMessage(
+                            eventMessageSerializer.createCommandMessage(cmd, pair.getLeft(), returnUpdated), session));
+                })
+                .exceptionally(ex -> {
+                    logger.warn("command/subscribe failed for session {}", session.getId(), ex);
+                    ((CopyOnWriteArraySet) session.getAttributes().get(SUBSCRIPTION_SET_NAME)).remove(pair.getLeft());
+                    commandService.sendUnsubscribeRequest(Collections.singleton(pair.getLeft()));
+                    clientHandler.sendErrorResponse(request, SC_INTERNAL_SERVER_ERROR, Messages.INTERNAL_SERVER_ERROR, session);
+                    return null;
                 });
         
         logger.debug("command/subscribe done for devices: {}, {}. Networks: {}. Timestamp: {}. Names {} Session: {}",
                 devices, deviceId, networks, timestamp, names, session.getId());
-
-        ((CopyOnWriteArraySet) session
-                .getAttributes()
-                .get(SUBSCRIPTION_SET_NAME))
-                .add(pair.getLeft());
         
     }
 
@@ -336,17 +370,14 @@ public class CommandHandlers {
         
         WebSocketResponse response = new WebSocketResponse();
         
-        commandService.find(listCommandRequest)
+        final HistoryCursor cursor = HistoryCursorQueryParamParser.parse(listCommandRequest.getCursor(),
+                listCommandRequest.getSortField());
+        commandService.find(listCommandRequest, cursor)
                 .thenAccept(commands -> {
-                    final Comparator<DeviceCommand> comparator = CommandResponseFilterAndSort
-                            .buildDeviceCommandComparator(listCommandRequest.getSortField());
-                    final String sortOrderSt = listCommandRequest.getSortOrder();  
-                    final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
-                    
-                    final List<DeviceCommand> sortedDeviceCommands = CommandResponseFilterAndSort
-                            .orderAndLimit(new ArrayList<>(commands), comparator, reverse,
-                                    listCommandRequest.getSkip(), listCommandRequest.getTake());
-                    response.addValue(COMMANDS, sortedDeviceCommands, COMMAND_LISTED);
+                    response.addValue(COMMANDS, commands, COMMAND_LISTED);
+                    if (!commands.isEmpty() && HistoryCursor.supportsSortField(listCommandRequest.getSortField())) {
+                        response.addValue(CURSOR, HistoryCursor.next(cursor, commands).encode());
+                    }
                     clientHandler.sendMessage(request, response, session);
                 })
                 .exceptionally(ex -> {
@@ -374,5 +405,4 @@ public class CommandHandlers {
         }
         throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, SC_BAD_REQUEST);
     }
-
 }
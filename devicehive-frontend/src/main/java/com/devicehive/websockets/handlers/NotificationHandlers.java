@@ -28,20 +28,21 @@ import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.messages.handler.WebSocketClientHandler;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HistoryCursor;
+import com.devicehive.model.converters.HistoryCursorQueryParamParser;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.rpc.ListDeviceRequest;
 import com.devicehive.model.rpc.ListNotificationRequest;
 import com.devicehive.model.websockets.InsertNotification;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
-import com.devicehive.resource.util.CommandResponseFilterAndSort;
 import com.devicehive.resource.util.JsonTypes;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
 import com.devicehive.service.NetworkService;
 import com.devicehive.shim.api.Action;
-import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.vo.DeviceVO;
 import com.devicehive.vo.NetworkWithUsersAndDevicesVO;
+import com.devicehive.websockets.converters.EventMessageSerializer;
 import com.devicehive.websockets.converters.WebSocketResponse;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -79,18 +80,21 @@ public class NotificationHandlers {
     private final DeviceNotificationService notificationService;
     private final Gson gson;
     private final WebSocketClientHandler clientHandler;
+    private final EventMessageSerializer eventMessageSerializer;
 
     @Autowired
     public NotificationHandlers(DeviceService deviceService,
                                 NetworkService networkService,
                                 DeviceNotificationService notificationService,
                                 Gson gson,
-                                WebSocketClientHandler clientHandler) {
+                                WebSocketClientHandler clientHandler,
+                                EventMessageSerializer eventMessageSerializer) {
         this.deviceService = deviceService;
         this.networkService = networkService;
         this.notificationService = notificationService;
         this.gson = gson;
         this.clientHandler = clientHandler;
+        this.eventMessageSerializer = eventMessageSerializer;
     }
 
     @HiveWebsocketAuth
@@ -118,22 +122,41 @@ public class NotificationHandlers {
             deviceService.getAllowedExistingDevices(devices, principal);
             filter.setDeviceIds(devices);
         }
+        // network and global subscriptions are routed by the backend without listing devices, unless the principal
+        // is limited to particular devices and the listing is what enforces the limit
+        final boolean scoped = principal.isNetworkScopeAllowed();
+        Set<Long> scopedNetworks = null;
+        boolean global = false;
         if (networks != null) {
-            Set<NetworkWithUsersAndDevicesVO> actualNetworks = networks.stream().map(network ->
-                    networkService.getWithDevices(network, authentication)
-            ).filter(Objects::nonNull).collect(Collectors.toSet());
-            if (actualNetworks.size() != networks.size()) {
-                throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+            if (scoped) {
+                if (!networks.stream().allMatch(network -> networkService.isNetworkAccessible(network, principal))) {
+                    throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+                }
+                scopedNetworks = networks;
+            } else {
+                Set<NetworkWithUsersAndDevicesVO> actualNetworks = networks.stream().map(network ->
+                        networkService.getWithDevices(network, authentication)
+                ).filter(Objects::nonNull).collect(Collectors.toSet());
+                if (actualNetworks.size() != networks.size()) {
+                    throw new HiveException(String.format(Messages.NETWORKS_NOT_FOUND, networks), SC_FORBIDDEN);
+                }
+                Set<String> networkDevices = actualNetworks.stream()
+                        .map(NetworkWithUsersAndDevicesVO::getDevices)
+                        .flatMap(Collection::stream)
+                        .map(DeviceVO::getDeviceId)
+                        .collect(Collectors.toSet());
+                devices.addAll(networkDevices);
             }
-            Set<String> networkDevices = actualNetworks.stream()
-                    .map(NetworkWithUsersAndDevicesVO::getDevices)
-                    .flatMap(Collection::stream)
-                    .map(DeviceVO::getDeviceId)
-                    .collect(Collectors.toSet());
-            devices.addAll(networkDevices);
             filter.setNetworkIds(networks);
         }
-        if (devices.isEmpty()) {
+        if (devices.isEmpty() && scopedNetworks == null && scoped && principal.isGlobalScopeAllowed()) {
+            filter.setGlobal(true);
+            if (Boolean.TRUE.equals(principal.areAllNetworksAvailable())) {
+                global = true;
+            } else {
+                scopedNetworks = principal.getNetworkIds();
+            }
+        } else if (devices.isEmpty() && scopedNetworks == null) {
             ListDeviceRequest listDeviceRequest = new ListDeviceRequest(ASC.name(), principal);
             actualDevices = deviceService.list(listDeviceRequest).join();
             devices = actualDevices.stream().map(DeviceVO::getDeviceId).collect(Collectors.toSet());
@@ -141,30 +164,38 @@ public class NotificationHandlers {
         }
 
         BiConsumer<DeviceNotification, Long> callback = (notification, subscriptionId) -> {
-            JsonObject json = ServerResponsesFactory.createNotificationInsertMessage(notification, subscriptionId);
-            clientHandler.sendMessage(json, session);
+            String message = eventMessageSerializer.createNotificationInsertMessage(notification, subscriptionId);
+            String key = subscriptionId + "/" + notification.getDeviceId() + "/" + notification.getNotification();
+            clientHandler.sendMessage(message, key, session);
         };
 
         Pair<Long, CompletableFuture<List<DeviceNotification>>> pair = notificationService
-                .subscribe(devices, filter, timestamp, callback);
+                .subscribe(devices, scopedNetworks, global, filter, timestamp, callback);
+
+        // registered before the stages are attached, as a failed future runs the failure handler right away
+        ((CopyOnWriteArraySet) session
+                .getAttributes()
+                .get(SUBSCSRIPTION_SET_NAME))
+                .add(pair.getLeft());
 
         pair.getRight().thenAccept(collection -> {
             WebSocketResponse response = new WebSocketResponse();
             response.addValue(SUBSCRIPTION_ID, pair.getLeft(), null);
             clientHandler.sendMessage(request, response, session);
             collection.forEach(notification -> {
-                JsonObject json = ServerResponsesFactory.createNotificationInsertMessage(notification, pair.getLeft());
-                clientHandler.sendMessage(json, session);
+                String message = eventMessageSerializer.createNotificationInsertMessage(notification, pair.getLeft());
+                clientHandler.sendMessage(message, session);
             });
+        }).exceptionally(ex -> {
+            logger.warn("notification/subscribe failed for session {}", session.getId(), ex);
+            ((CopyOnWriteArraySet) session.getAttributes().get(SUBSCSRIPTION_SET_NAME)).remove(pair.getLeft());
+            notificationService.unsubscribe(Collections.singleton(pair.getLeft()));
+            clientHandler.sendErrorResponse(request, SC_INTERNAL_SERVER_ERROR, Messages.INTERNAL_SERVER_ERROR, session);
+            return null;
         });
 
         logger.debug("notification/subscribe done for devices: {}, {}. Networks: {}. Timestamp: {}. Names {} Session: {}",
                 devices, deviceId, networks, timestamp, names, session.getId());
-
-        ((CopyOnWriteArraySet) session
-                .getAttributes()
-                .get(SUBSCSRIPTION_SET_NAME))
-                .add(pair.getLeft());
     }
 
     /**
@@ -300,17 +331,14 @@ public class NotificationHandlers {
         
         WebSocketResponse response = new WebSocketResponse();
         
-        notificationService.find(listNotificationRequest)
+        final HistoryCursor cursor = HistoryCursorQueryParamParser.parse(listNotificationRequest.getCursor(),
+                listNotificationRequest.getSortField());
+        notificationService.find(listNotificationRequest, cursor)
                 .thenAccept(notifications -> {
-                    final Comparator<DeviceNotification> comparator = CommandResponseFilterAndSort
-                            .buildDeviceNotificationComparator(listNotificationRequest.getSortField());
-                    String sortOrderSt = listNotificationRequest.getSortOrder();
-                    final Boolean reverse = sortOrderSt == null ? null : "desc".equalsIgnoreCase(sortOrderSt);
-
-                    final List<DeviceNotification> sortedDeviceNotifications = CommandResponseFilterAndSort
-                            .orderAndLimit(notifications, comparator, reverse,
-                                    listNotificationRequest.getSkip(), listNotificationRequest.getTake());
-                    response.addValue(NOTIFICATIONS, sortedDeviceNotifications, NOTIFICATION_TO_CLIENT);
+                    response.addValue(NOTIFICATIONS, notifications, NOTIFICATION_TO_CLIENT);
+                    if (!notifications.isEmpty() && HistoryCursor.supportsSortField(listNotificationRequest.getSortField())) {
+                        response.addValue(CURSOR, HistoryCursor.next(cursor, notifications).encode());
+                    }
                     clientHandler.sendMessage(request, response, session);
                 });
     }
@@ -0,0 +1,69 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writer threads shared by the outbound queues of all websocket sessions.
+ */
+@Component
+public class OutboundMessageWriter {
+
+    private final OutboundQueuePolicy policy;
+    private final int queueSizeLimit;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimit;
+    private final ExecutorService writer;
+
+    public OutboundMessageWriter(@Value("${websocket.outbound.policy:DROP_OLDEST}") OutboundQueuePolicy policy,
+                                 @Value("${websocket.outbound.queue-size-limit:1000}") int queueSizeLimit,
+                                 @Value("${websocket.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+                                 @Value("${websocket.outbound.send-time-limit:10000}") long sendTimeLimit,
+                                 @Value("${websocket.outbound.writer-threads:8}") int writerThreads) {
+        this.policy = policy;
+        this.queueSizeLimit = queueSizeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimit = sendTimeLimit;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.writer = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "websocket-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public OutboundWebSocketSession decorate(WebSocketSession session) {
+        return new OutboundWebSocketSession(session, writer, policy, queueSizeLimit, bufferSizeLimit, sendTimeLimit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+}
@@ -1,10 +1,10 @@
-package com.devicehive.service.helpers;
+package com.devicehive.websockets.util;
 
 /*
  * #%L
  * DeviceHive Frontend Logic
  * %%
- * Copyright (C) 2016 - 2017 DataArt
+ * Copyright (C) 2016 DataArt
  * %%
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,20 +20,21 @@ package com.devicehive.service.helpers;
  * #L%
  */
 
-import org.springframework.stereotype.Component;
-
-@Component
-public class TimestampLongIdGenerator implements LongIdGenerator {
-
-    private final static int MAX_VALUE = 999;
-    private int inc = 0;
-
-    @Override
-    public long generate() {
-        if (inc > MAX_VALUE) {
-            inc = 0;
-        }
-
-        return System.currentTimeMillis() * 1000 + inc++;
-    }
+/**
+ * What a session's outbound queue does when it exceeds its message count or buffer size limit.
+ */
+public enum OutboundQueuePolicy {
+    /**
+     * Drops the oldest queued events.
+     */
+    DROP_OLDEST,
+    /**
+     * Replaces a queued event with a newer one of the same key, e.g. the same device and notification name;
+     * drops the oldest queued events when that is not enough.
+     */
+    COALESCE,
+    /**
+     * Closes the session.
+     */
+    DISCONNECT
 }
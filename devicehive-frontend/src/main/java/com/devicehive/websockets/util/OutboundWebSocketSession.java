@@ -0,0 +1,296 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session whose messages are queued and sent by a shared writer, so that producers never block on a slow client.
+ * At most one writer drains a session at a time and it yields after a batch, so one busy session cannot hold a writer.
+ * <p>
+ * Messages sent with a key are events that the {@link OutboundQueuePolicy} may drop or coalesce when the queue is over
+ * its limits; other messages, such as responses to requests, are always delivered. A send that does not complete within
+ * the send time limit closes the session regardless of the policy, as the client has stopped reading; as writers block
+ * while sending, {@link #closeIfStalled()} is called periodically so that this holds for sessions that get no more
+ * messages too.
+ */
+public class OutboundWebSocketSession extends WebSocketSessionDecorator {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundWebSocketSession.class);
+
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    private final Executor writer;
+    private final OutboundQueuePolicy policy;
+    private final int queueSizeLimit;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimit;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+    private final Map<String, Outbound> queuedByKey = new HashMap<>();
+    private int bufferSize;
+    private int maxQueueSize;
+    private boolean draining;
+
+    private volatile long sendStartTime;
+    private final AtomicBoolean limitExceeded = new AtomicBoolean();
+    private volatile long lastLag;
+    private volatile long maxLag;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public OutboundWebSocketSession(WebSocketSession session, Executor writer, OutboundQueuePolicy policy,
+                                    int queueSizeLimit, int bufferSizeLimit, long sendTimeLimit) {
+        super(session);
+        this.writer = writer;
+        this.policy = policy;
+        this.queueSizeLimit = queueSizeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimit = sendTimeLimit;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        sendMessage(message, null);
+    }
+
+    /**
+     * Queues the message.
+     *
+     * @param key key of an event that may be dropped or coalesced with a newer event of the same key, null otherwise
+     */
+    public void sendMessage(WebSocketMessage<?> message, String key) {
+        if (limitExceeded.get() || !isOpen() || closeIfStalled()) {
+            return;
+        }
+
+        boolean overflow = false;
+        boolean schedule = false;
+        synchronized (lock) {
+            final Outbound queued = key != null && policy == OutboundQueuePolicy.COALESCE ? queuedByKey.get(key) : null;
+            if (queued != null) {
+                bufferSize += message.getPayloadLength() - queued.message.getPayloadLength();
+                queued.message = message;
+                coalesced.increment();
+            } else {
+                final Outbound outbound = new Outbound(message, key, System.currentTimeMillis());
+                queue.add(outbound);
+                if (key != null && policy == OutboundQueuePolicy.COALESCE) {
+                    queuedByKey.put(key, outbound);
+                }
+                bufferSize += message.getPayloadLength();
+                maxQueueSize = Math.max(maxQueueSize, queue.size());
+            }
+            if (isOverLimits()) {
+                overflow = policy == OutboundQueuePolicy.DISCONNECT || !dropOldestEvents();
+            }
+            if (!overflow && !draining) {
+                draining = true;
+                schedule = true;
+            }
+        }
+
+        if (overflow) {
+            close(String.format("outbound queue exceeded %d messages or %d bytes", queueSizeLimit, bufferSizeLimit));
+        } else if (schedule) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Closes the session if its current send has not completed within the send time limit, which also releases the
+     * writer blocked in it.
+     *
+     * @return true if the session was closed
+     */
+    public boolean closeIfStalled() {
+        final long start = sendStartTime;
+        final long elapsed = System.currentTimeMillis() - start;
+        if (start != 0 && elapsed > sendTimeLimit) {
+            close(String.format("send has not completed for %d ms", elapsed));
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isOverLimits() {
+        return queue.size() > queueSizeLimit || bufferSize > bufferSizeLimit;
+    }
+
+    /**
+     * @return false if the queue is still over its limits after dropping every queued event
+     */
+    private boolean dropOldestEvents() {
+        final Iterator<Outbound> it = queue.iterator();
+        while (isOverLimits() && it.hasNext()) {
+            final Outbound outbound = it.next();
+            if (outbound.key != null) {
+                it.remove();
+                remove(outbound);
+                dropped.increment();
+            }
+        }
+        return !isOverLimits();
+    }
+
+    private void remove(Outbound outbound) {
+        bufferSize -= outbound.message.getPayloadLength();
+        if (outbound.key != null) {
+            queuedByKey.remove(outbound.key, outbound);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+            final Outbound outbound;
+            synchronized (lock) {
+                outbound = queue.poll();
+                if (outbound == null) {
+                    draining = false;
+                    return;
+                }
+                remove(outbound);
+            }
+            send(outbound);
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        try {
+            writer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // the writer is shut down along with the application, which closes the sessions
+            logger.debug("Writer rejected session {}, discarding queued messages", getId());
+            synchronized (lock) {
+                queue.clear();
+                queuedByKey.clear();
+                bufferSize = 0;
+                draining = false;
+            }
+        }
+    }
+
+    private void send(Outbound outbound) {
+        if (limitExceeded.get() || !isOpen()) {
+            return;
+        }
+        sendStartTime = System.currentTimeMillis();
+        try {
+            getDelegate().sendMessage(outbound.message);
+            final long lag = System.currentTimeMillis() - outbound.queuedAt;
+            lastLag = lag;
+            maxLag = Math.max(maxLag, lag);
+            sent.increment();
+        } catch (Exception e) {
+            logger.error("Exception while sending message to session {}", getId(), e);
+        } finally {
+            sendStartTime = 0;
+        }
+    }
+
+    private void close(String reason) {
+        if (!limitExceeded.compareAndSet(false, true)) {
+            return;
+        }
+        logger.warn("Closing slow session {}: {}", getId(), reason);
+        synchronized (lock) {
+            queue.clear();
+            queuedByKey.clear();
+            bufferSize = 0;
+        }
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.error("Error closing session {}", getId(), e);
+        }
+    }
+
+    public int getQueueSize() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public int getMaxQueueSize() {
+        synchronized (lock) {
+            return maxQueueSize;
+        }
+    }
+
+    public int getBufferSize() {
+        synchronized (lock) {
+            return bufferSize;
+        }
+    }
+
+    /**
+     * @return time the last sent message spent in the queue, in ms
+     */
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private static class Outbound {
+        private WebSocketMessage<?> message;
+        private final String key;
+        private final long queuedAt;
+
+        private Outbound(WebSocketMessage<?> message, String key, long queuedAt) {
+            this.message = message;
+            this.key = key;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -76,6 +76,28 @@ public class SessionMonitor {
         }
     }
 
+    @Scheduled(fixedDelayString = "${websocket.outbound.watchdog.period:1000}")
+    public void closeStalledSessions() {
+        for (WebSocketSession session : sessionMap.values()) {
+            if (session instanceof OutboundWebSocketSession) {
+                ((OutboundWebSocketSession) session).closeIfStalled();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.outbound.stats.period:60000}")
+    public void logStats() {
+        for (WebSocketSession session : sessionMap.values()) {
+            if (session instanceof OutboundWebSocketSession) {
+                OutboundWebSocketSession outbound = (OutboundWebSocketSession) session;
+                logger.debug("Session {}: queue={} (max {}), bytes={}, lag={} ms (max {}), sent={}, dropped={}, coalesced={}",
+                        session.getId(), outbound.getQueueSize(), outbound.getMaxQueueSize(), outbound.getBufferSize(),
+                        outbound.getLastLag(), outbound.getMaxLag(), outbound.getSentCount(),
+                        outbound.getDroppedCount(), outbound.getCoalescedCount());
+            }
+        }
+    }
+
     @PreDestroy
     public void closeAllSessions() {
         for (WebSocketSession session : sessionMap.values()) {
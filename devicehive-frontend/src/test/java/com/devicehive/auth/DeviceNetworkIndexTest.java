@@ -0,0 +1,122 @@
+package com.devicehive.auth;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.dao.DeviceDao;
+import com.devicehive.vo.DeviceVO;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceNetworkIndexTest {
+
+    private DeviceDao deviceDao;
+    private DeviceNetworkIndex index;
+
+    private static DeviceVO device(String deviceId, Long networkId) {
+        DeviceVO device = new DeviceVO();
+        device.setDeviceId(deviceId);
+        device.setNetworkId(networkId);
+        return device;
+    }
+
+    @Before
+    public void setUp() {
+        deviceDao = mock(DeviceDao.class);
+        index = new DeviceNetworkIndex(deviceDao, 100, 60000);
+    }
+
+    @Test
+    public void shouldLoadDeviceOnce() {
+        when(deviceDao.findById("device")).thenReturn(device("device", 1L));
+
+        assertTrue(index.isInNetworks("device", Collections.singleton(1L)));
+        assertFalse(index.isInNetworks("device", Collections.singleton(2L)));
+        verify(deviceDao, times(1)).findById("device");
+    }
+
+    @Test
+    public void shouldDenyUnknownDevice() {
+        assertFalse(index.isInNetworks("missing", Collections.singleton(1L)));
+    }
+
+    @Test
+    public void shouldReloadDeviceAfterInvalidation() {
+        when(deviceDao.findById("device")).thenReturn(device("device", 1L));
+        assertTrue(index.isInNetworks("device", Collections.singleton(1L)));
+
+        when(deviceDao.findById("device")).thenReturn(device("device", 2L));
+        index.invalidateDevice("device");
+        assertTrue(index.isInNetworks("device", Collections.singleton(2L)));
+
+        when(deviceDao.findById("device")).thenReturn(null);
+        index.invalidateNetwork(2L);
+        assertFalse(index.isInNetworks("device", Collections.singleton(2L)));
+        verify(deviceDao, times(3)).findById("device");
+    }
+
+    @Test
+    public void shouldInvalidateAgainAfterCommit() {
+        when(deviceDao.findById("device")).thenReturn(device("device", 1L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(index.isInNetworks("device", Collections.singleton(1L)));
+            index.invalidateDevice("device");
+            // a check served before the commit still sees the old network
+            assertTrue(index.isInNetworks("device", Collections.singleton(1L)));
+
+            when(deviceDao.findById("device")).thenReturn(device("device", 2L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+            assertTrue(index.isInNetworks("device", Collections.singleton(2L)));
+            verify(deviceDao, times(3)).findById("device");
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldInvalidateNetworkAgainAfterCommit() {
+        when(deviceDao.findById("device")).thenReturn(device("device", 1L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.invalidateNetwork(1L);
+            assertTrue(index.isInNetworks("device", Collections.singleton(1L)));
+
+            when(deviceDao.findById("device")).thenReturn(null);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+            assertFalse(index.isInNetworks("device", Collections.singleton(1L)));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
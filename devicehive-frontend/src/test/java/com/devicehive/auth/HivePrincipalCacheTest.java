@@ -0,0 +1,123 @@
+package com.devicehive.auth;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.vo.UserVO;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HivePrincipalCacheTest {
+
+    private static Supplier<HivePrincipal> principalOf(long userId, AtomicInteger builds) {
+        return () -> {
+            builds.incrementAndGet();
+            UserVO user = new UserVO();
+            user.setId(userId);
+            return new HivePrincipal(user);
+        };
+    }
+
+    private static Date inMinute() {
+        return new Date(System.currentTimeMillis() + 60000);
+    }
+
+    @Test
+    public void shouldBuildPrincipalOnce() {
+        HivePrincipalCache cache = new HivePrincipalCache(100, 60000);
+        AtomicInteger builds = new AtomicInteger();
+
+        HivePrincipal first = cache.get("token", inMinute(), principalOf(1L, builds));
+        HivePrincipal second = cache.get("token", inMinute(), principalOf(1L, builds));
+
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void shouldRebuildPrincipalAfterUserInvalidation() {
+        HivePrincipalCache cache = new HivePrincipalCache(100, 60000);
+        AtomicInteger builds = new AtomicInteger();
+
+        HivePrincipal first = cache.get("token", inMinute(), principalOf(1L, builds));
+        cache.get("other", inMinute(), principalOf(2L, builds));
+        cache.invalidateUser(1L);
+
+        assertNotSame(first, cache.get("token", inMinute(), principalOf(1L, builds)));
+        cache.get("other", inMinute(), principalOf(2L, builds));
+        assertEquals(3, builds.get());
+    }
+
+    @Test
+    public void shouldInvalidateAgainAfterCommit() {
+        HivePrincipalCache cache = new HivePrincipalCache(100, 60000);
+        AtomicInteger builds = new AtomicInteger();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.get("token", inMinute(), principalOf(1L, builds));
+            cache.invalidateUser(1L);
+            // a request served before the commit still sees the old user
+            HivePrincipal stale = cache.get("token", inMinute(), principalOf(1L, builds));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+            assertNotSame(stale, cache.get("token", inMinute(), principalOf(1L, builds)));
+            assertEquals(3, builds.get());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldNotCacheExpiredToken() {
+        HivePrincipalCache cache = new HivePrincipalCache(100, 60000);
+        AtomicInteger builds = new AtomicInteger();
+        Date expired = new Date(System.currentTimeMillis() - 1);
+
+        cache.get("token", expired, principalOf(1L, builds));
+        cache.get("token", expired, principalOf(1L, builds));
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    public void shouldNotCacheFailures() {
+        HivePrincipalCache cache = new HivePrincipalCache(100, 60000);
+        try {
+            cache.get("token", inMinute(), () -> {
+                throw new IllegalStateException("inactive");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+}
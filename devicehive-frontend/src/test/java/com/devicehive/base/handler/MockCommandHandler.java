@@ -60,7 +60,7 @@ public class MockCommandHandler {
                 CommandSubscribeRequest body = (CommandSubscribeRequest) request.getBody();
                 Set<DeviceCommand> commands = commandMap.values()
                         .stream()
-                        .filter(n -> n.getDeviceId().equals(body.getDevice()))
+                        .filter(n -> body.getAllDevices().contains(n.getDeviceId()))
                         .collect(Collectors.toSet());
                 CommandSubscribeResponse subscribeResponse = new CommandSubscribeResponse(body.getSubscriptionId(), commands);
 
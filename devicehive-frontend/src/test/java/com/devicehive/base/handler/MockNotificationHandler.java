@@ -71,7 +71,7 @@ public class MockNotificationHandler {
                 NotificationSubscribeRequest body = (NotificationSubscribeRequest) request.getBody();
                 Set<DeviceNotification> notifications = notificationSet
                         .stream()
-                        .filter(n -> n.getDeviceId().equals(body.getDevice()))
+                        .filter(n -> body.getAllDevices().contains(n.getDeviceId()))
                         .collect(Collectors.toSet());
                 NotificationSubscribeResponse subscribeResponse = new NotificationSubscribeResponse(body.getSubscriptionId(), notifications);
 
@@ -0,0 +1,69 @@
+package com.devicehive.benchmark;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.helpers.SnowflakeLongIdGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous per-call {@link Random} ids with {@link SnowflakeLongIdGenerator} under contention.
+ * Not run as part of the build, start with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class LongIdGeneratorBenchmark {
+
+    private LongIdGenerator snowflake;
+
+    @Setup
+    public void setUp() {
+        snowflake = new SnowflakeLongIdGenerator("1");
+    }
+
+    @Benchmark
+    public long randomPerCall() {
+        return Math.abs(new Random().nextInt());
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflake.generate();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LongIdGeneratorBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
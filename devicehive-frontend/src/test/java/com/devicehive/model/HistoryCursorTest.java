@@ -0,0 +1,111 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryCursorTest {
+
+    private static DeviceNotification notification(long id, String deviceId, long timestamp) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId(deviceId);
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date(timestamp));
+        return notification;
+    }
+
+    @Test
+    public void shouldPointAfterLastEntryOfEveryDevice() {
+        HistoryCursor cursor = HistoryCursor.next(null, Arrays.asList(
+                notification(1L, "first", 1000L),
+                notification(2L, "second", 2000L),
+                notification(3L, "first", 3000L)));
+
+        assertEquals(3000L, cursor.getPosition("first").getTimestamp());
+        assertEquals(3L, cursor.getPosition("first").getId());
+        assertEquals(2000L, cursor.getPosition("second").getTimestamp());
+        assertEquals(2L, cursor.getPosition("second").getId());
+        assertNull(cursor.getPosition("third"));
+    }
+
+    @Test
+    public void shouldKeepPositionsOfDevicesMissingFromPage() {
+        HistoryCursor previous = HistoryCursor.next(null, Arrays.asList(
+                notification(1L, "first", 1000L),
+                notification(2L, "second", 2000L)));
+
+        HistoryCursor cursor = HistoryCursor.next(previous,
+                Collections.singletonList(notification(5L, "first", 5000L)));
+
+        assertEquals(5L, cursor.getPosition("first").getId());
+        assertEquals(2L, cursor.getPosition("second").getId());
+        assertEquals(1L, previous.getPosition("first").getId());
+    }
+
+    @Test
+    public void shouldDecodeEncodedCursor() {
+        HistoryCursor cursor = HistoryCursor.next(null, Arrays.asList(
+                notification(1L, "first", 1000L),
+                notification(2L, "second", 2000L)));
+
+        HistoryCursor decoded = HistoryCursor.decode(cursor.encode());
+
+        assertEquals(1000L, decoded.getPosition("first").getTimestamp());
+        assertEquals(1L, decoded.getPosition("first").getId());
+        assertEquals(2000L, decoded.getPosition("second").getTimestamp());
+        assertEquals(2L, decoded.getPosition("second").getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorWithMissingFields() {
+        HistoryCursor.decode(Base64.getUrlEncoder().encodeToString("1000\t1".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorWithNonNumericPosition() {
+        HistoryCursor.decode(Base64.getUrlEncoder().encodeToString("later\t1\tdevice".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonBase64Cursor() {
+        HistoryCursor.decode("not a cursor!");
+    }
+
+    @Test
+    public void shouldSupportOnlyTimestampOrder() {
+        assertTrue(HistoryCursor.supportsSortField(null));
+        assertTrue(HistoryCursor.supportsSortField("timestamp"));
+        assertTrue(HistoryCursor.supportsSortField("Timestamp"));
+        assertFalse(HistoryCursor.supportsSortField("notification"));
+        assertFalse(HistoryCursor.supportsSortField("command"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.devicehive.model.converters;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HistoryCursor;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class HistoryCursorQueryParamParserTest {
+
+    private static String cursor() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(7L);
+        notification.setDeviceId("device");
+        notification.setTimestamp(new Date(1500000000000L));
+        return HistoryCursor.next(null, Collections.singletonList(notification)).encode();
+    }
+
+    @Test
+    public void shouldReturnNullForMissingCursor() {
+        assertNull(HistoryCursorQueryParamParser.parse(null));
+        assertNull(HistoryCursorQueryParamParser.parse(null, "notification"));
+    }
+
+    @Test
+    public void shouldParseCursor() {
+        HistoryCursor cursor = HistoryCursorQueryParamParser.parse(cursor());
+
+        assertEquals(1500000000000L, cursor.getPosition("device").getTimestamp());
+        assertEquals(7L, cursor.getPosition("device").getId());
+    }
+
+    @Test
+    public void shouldAcceptCursorForTimestampOrder() {
+        assertEquals(7L, HistoryCursorQueryParamParser.parse(cursor(), null).getPosition("device").getId());
+        assertEquals(7L, HistoryCursorQueryParamParser.parse(cursor(), "timestamp").getPosition("device").getId());
+    }
+
+    @Test
+    public void shouldRejectMalformedCursor() {
+        try {
+            HistoryCursorQueryParamParser.parse("not a cursor!");
+            fail("Malformed cursor must be rejected");
+        } catch (HiveException e) {
+            assertEquals(BAD_REQUEST.getStatusCode(), e.getCode().intValue());
+        }
+    }
+
+    @Test
+    public void shouldRejectCursorForOtherOrder() {
+        try {
+            HistoryCursorQueryParamParser.parse(cursor(), "notification");
+            fail("Cursor must be rejected for a non-timestamp order");
+        } catch (HiveException e) {
+            assertEquals(BAD_REQUEST.getStatusCode(), e.getCode().intValue());
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.devicehive.model.rpc.CommandSearchRequest;
 import com.devicehive.model.rpc.CommandSearchResponse;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
 import com.devicehive.service.time.TimestampService;
+import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
@@ -265,7 +266,8 @@ public class DeviceCommandServiceTest extends AbstractResourceTest {
         deviceCommandService.update(deviceCommand, commandWrapper).
                 thenAccept(Assert::assertNull).get(15, TimeUnit.SECONDS);
 
-        verify(requestHandler, times(2)).handle(argument.capture());
+        verify(requestHandler, times(1)).handle(argument.capture());
+        assertEquals(Action.COMMAND_UPDATE_REQUEST, argument.getValue().getBody().getAction());
     }
 
 }
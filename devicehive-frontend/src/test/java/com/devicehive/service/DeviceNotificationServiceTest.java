@@ -277,6 +277,57 @@ public class DeviceNotificationServiceTest extends AbstractResourceTest {
         verify(requestHandler, times(3)).handle(argument.capture());
     }
 
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void testFindPageAcrossDevices() throws Exception {
+        final Set<String> idsForSearch = IntStream.range(0, 3)
+                .mapToObj(i -> UUID.randomUUID().toString())
+                .collect(Collectors.toSet());
+        final long now = System.currentTimeMillis();
+
+        // every device returns the two latest of its notifications, one second apart
+        Map<String, List<DeviceNotification>> notificationMap = new HashMap<>();
+        int offset = 0;
+        for (String deviceId : idsForSearch) {
+            List<DeviceNotification> notifications = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                DeviceNotification notification = new DeviceNotification();
+                notification.setId(System.nanoTime());
+                notification.setDeviceId(deviceId);
+                notification.setNotification(RandomStringUtils.randomAlphabetic(10));
+                notification.setTimestamp(new Date(now - 1000L * (offset++)));
+                notifications.add(notification);
+            }
+            notificationMap.put(deviceId, notifications);
+        }
+
+        when(requestHandler.handle(any(Request.class))).then(invocation -> {
+            Request request = invocation.getArgumentAt(0, Request.class);
+            String deviceId = request.getBody().cast(NotificationSearchRequest.class).getDeviceId();
+            return Response.newBuilder()
+                    .withBody(new NotificationSearchResponse(notificationMap.get(deviceId)))
+                    .buildSuccess();
+        });
+
+        notificationService.find(idsForSearch, Collections.emptySet(), null, null, "timestamp", "desc", 1, 2)
+                .thenAccept(notifications -> {
+                    assertEquals(2, notifications.size());
+                    assertEquals(now - 1000L, notifications.get(0).getTimestamp().getTime());
+                    assertEquals(now - 2000L, notifications.get(1).getTimestamp().getTime());
+                })
+                .exceptionally(ex -> {
+                    fail(ex.toString());
+                    return null;
+                }).get(15, TimeUnit.SECONDS);
+
+        verify(requestHandler, times(3)).handle(argument.capture());
+
+        NotificationSearchRequest request = argument.getValue().getBody().cast(NotificationSearchRequest.class);
+        assertEquals(Integer.valueOf(0), request.getSkip());
+        assertEquals(Integer.valueOf(3), request.getTake());
+        assertEquals("timestamp", request.getSortField());
+    }
+
     @Test
     @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
     public void testSubmitDeviceNotificationShouldInsertSingleNotification() throws Exception {
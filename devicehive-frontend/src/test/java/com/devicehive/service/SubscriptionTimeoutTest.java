@@ -0,0 +1,109 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.service.exception.BackendException;
+import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.time.TimestampService;
+import com.devicehive.shim.kafka.client.KafkaRpcClient;
+import com.devicehive.shim.kafka.client.RequestResponseMatcher;
+import com.devicehive.shim.kafka.client.ServerResponseListener;
+import com.devicehive.util.HiveValidator;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.kafka.clients.producer.Producer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Subscriptions the backend never answers are failed by the request deadline of the RPC client.
+ */
+@SuppressWarnings("unchecked")
+public class SubscriptionTimeoutTest {
+
+    private RequestResponseMatcher matcher;
+    private KafkaRpcClient rpcClient;
+    private DeviceNotificationService notificationService;
+    private DeviceCommandService commandService;
+
+    @Before
+    public void setUp() throws Exception {
+        matcher = new RequestResponseMatcher();
+        rpcClient = new KafkaRpcClient("request_topic", "response_topic", mock(Producer.class), matcher,
+                mock(ServerResponseListener.class), 100);
+        AtomicLong ids = new AtomicLong();
+        LongIdGenerator idGenerator = ids::incrementAndGet;
+        TimestampService timestampService = mock(TimestampService.class);
+        HiveValidator hiveValidator = mock(HiveValidator.class);
+        notificationService = new DeviceNotificationService(timestampService, rpcClient, hiveValidator, idGenerator, matcher);
+        commandService = new DeviceCommandService(timestampService, hiveValidator, rpcClient, idGenerator, matcher);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        rpcClient.shutdown();
+    }
+
+    @Test
+    public void shouldFailNotificationSubscriptionOnTimeout() throws Exception {
+        Pair<Long, CompletableFuture<List<DeviceNotification>>> pair = notificationService.subscribe(
+                Collections.singleton("device"), null, null, (notification, subscriptionId) -> fail("No events expected"));
+
+        assertTimedOut(pair.getRight());
+    }
+
+    @Test
+    public void shouldFailCommandSubscriptionOnTimeout() throws Exception {
+        Pair<Long, CompletableFuture<List<DeviceCommand>>> pair = commandService.sendSubscribeRequest(
+                Collections.singleton("device"), null, null, false, null, (command, subscriptionId) -> fail("No events expected"));
+
+        assertTimedOut(pair.getRight());
+    }
+
+    @Test
+    public void shouldFailCommandUpdateSubscriptionOnTimeout() throws Exception {
+        assertTimedOut(commandService.sendSubscribeToUpdateRequest(1L, "device", (command, subscriptionId) -> fail("No events expected")));
+    }
+
+    private void assertTimedOut(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Subscription must fail");
+        } catch (ExecutionException e) {
+            assertEquals(BackendException.class, e.getCause().getClass());
+            assertEquals(504, ((BackendException) e.getCause()).getErrorCode());
+        }
+        assertEquals(1, matcher.getExpiredCount());
+        assertEquals(0, matcher.getInFlightCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryMergerTest {
+
+    @Test
+    public void shouldMergeSortedPages() throws Exception {
+        List<CompletableFuture<List<Integer>>> pages = Arrays.asList(
+                CompletableFuture.completedFuture(Arrays.asList(9, 6, 3)),
+                CompletableFuture.completedFuture(Arrays.asList(8, 5, 2)),
+                CompletableFuture.completedFuture(Arrays.asList(7, 4, 1)));
+
+        List<Integer> page = HistoryMerger.merge(pages, Comparator.<Integer>reverseOrder(), 2, 4).get();
+
+        assertEquals(Arrays.asList(7, 6, 5, 4), page);
+    }
+
+    @Test
+    public void shouldStopAtTheEndOfShortestHistory() throws Exception {
+        List<CompletableFuture<List<Integer>>> pages = Arrays.asList(
+                CompletableFuture.completedFuture(Collections.<Integer>emptyList()),
+                CompletableFuture.completedFuture(Arrays.asList(1, 3)));
+
+        List<Integer> page = HistoryMerger.merge(pages, Comparator.<Integer>naturalOrder(), 1, 10).get();
+
+        assertEquals(Collections.singletonList(3), page);
+    }
+
+    @Test
+    public void shouldCompleteUnsortedPageWithoutWaitingForTrailingDevices() throws Exception {
+        CompletableFuture<List<Integer>> slow = new CompletableFuture<>();
+        List<CompletableFuture<List<Integer>>> pages = Arrays.asList(
+                CompletableFuture.completedFuture(Arrays.asList(1, 2, 3)), slow);
+
+        CompletableFuture<List<Integer>> page = HistoryMerger.merge(pages, null, 0, 2);
+
+        assertTrue(page.isDone());
+        assertEquals(Arrays.asList(1, 2), page.get());
+    }
+
+    @Test
+    public void shouldKeepPageOrderOfUnsortedPages() throws Exception {
+        CompletableFuture<List<Integer>> slow = new CompletableFuture<>();
+        List<CompletableFuture<List<Integer>>> pages = Arrays.asList(
+                slow, CompletableFuture.completedFuture(Arrays.asList(4, 5, 6)));
+
+        CompletableFuture<List<Integer>> page = HistoryMerger.merge(pages, null, 1, 3);
+        assertFalse(page.isDone());
+
+        slow.complete(Arrays.asList(1, 2));
+        assertEquals(Arrays.asList(2, 4, 5), page.get());
+    }
+}
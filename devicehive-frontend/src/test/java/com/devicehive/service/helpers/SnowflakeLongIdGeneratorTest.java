@@ -0,0 +1,118 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.EntityIdLayout;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnowflakeLongIdGeneratorTest {
+
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+
+    @Test
+    public void shouldGenerateIncreasingIds() {
+        SnowflakeLongIdGenerator generator = new SnowflakeLongIdGenerator(5);
+        long previous = generator.generate();
+        for (int i = 0; i < 100000; i++) {
+            long next = generator.generate();
+            assertTrue(next > previous);
+            assertTrue(next <= MAX_SAFE_INTEGER);
+            previous = next;
+        }
+    }
+
+    @Test
+    public void shouldNotCollideAcrossNodes() {
+        SnowflakeLongIdGenerator first = new SnowflakeLongIdGenerator(1);
+        SnowflakeLongIdGenerator second = new SnowflakeLongIdGenerator(2);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(ids.add(first.generate()));
+            assertTrue(ids.add(second.generate()));
+        }
+    }
+
+    @Test
+    public void shouldNotCollideAcrossThreads() throws Exception {
+        final int threads = 8;
+        final int perThread = 20000;
+        SnowflakeLongIdGenerator generator = new SnowflakeLongIdGenerator(SnowflakeLongIdGenerator.MAX_NODE_ID);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.generate());
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    public void shouldEncodeCreationTime() {
+        long before = System.currentTimeMillis();
+        long id = new SnowflakeLongIdGenerator(3).generate();
+        long after = System.currentTimeMillis();
+
+        long created = EntityIdLayout.timestampOf(id);
+        assertTrue(created >= before && created <= after);
+    }
+
+    @Test
+    public void shouldNotRunAheadOfClock() {
+        SnowflakeLongIdGenerator generator = new SnowflakeLongIdGenerator(4);
+        long id = 0;
+        for (int i = 0; i < 200000; i++) {
+            id = generator.generate();
+        }
+
+        assertTrue(EntityIdLayout.timestampOf(id)
+                <= System.currentTimeMillis() + SnowflakeLongIdGenerator.MAX_RUN_AHEAD_MILLIS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRequireNodeId() {
+        new SnowflakeLongIdGenerator("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNodeIdOutOfRange() {
+        new SnowflakeLongIdGenerator(SnowflakeLongIdGenerator.MAX_NODE_ID + 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.devicehive.service.security.jwt;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.security.jwt.JwtPayload;
+import com.devicehive.security.jwt.TokenType;
+import io.jsonwebtoken.SignatureException;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JwtPayloadCacheTest {
+
+    private static JwtPayload payload(long expiration) {
+        return JwtPayload.newBuilder()
+                .withUserId(1L)
+                .withTokenType(TokenType.ACCESS)
+                .withExpirationDate(new Date(expiration))
+                .buildPayload();
+    }
+
+    @Test
+    public void shouldVerifyTokenOnce() {
+        JwtPayloadCache cache = new JwtPayloadCache(100, 60000, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        JwtPayload expected = payload(System.currentTimeMillis() + 60000);
+        Function<String, JwtPayload> loader = token -> {
+            loads.incrementAndGet();
+            return expected;
+        };
+
+        assertSame(expected, cache.get("token", loader));
+        assertSame(expected, cache.get("token", loader));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void shouldCacheInvalidSignature() {
+        JwtPayloadCache cache = new JwtPayloadCache(100, 60000, 60000);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, JwtPayload> loader = token -> {
+            loads.incrementAndGet();
+            throw new SignatureException("invalid");
+        };
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.get("token", loader);
+                fail();
+            } catch (SignatureException e) {
+                // expected
+            }
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getNegativeHits());
+    }
+
+    @Test
+    public void shouldReloadExpiredToken() {
+        JwtPayloadCache cache = new JwtPayloadCache(100, 60000, 0);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, JwtPayload> loader = token -> {
+            loads.incrementAndGet();
+            return payload(System.currentTimeMillis() - 1);
+        };
+
+        cache.get("token", loader);
+        cache.get("token", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void shouldStayWithinBound() {
+        JwtPayloadCache cache = new JwtPayloadCache(100, 60000, 60000);
+        long expiration = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 1000; i++) {
+            cache.get("token" + i, token -> payload(expiration));
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getRejections());
+
+        cache.sweep();
+        assertEquals(90, cache.size());
+        assertEquals(10, cache.getEvictions());
+    }
+}
@@ -0,0 +1,91 @@
+package com.devicehive.websockets.converters;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.ServerResponsesFactory;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventMessageSerializerTest {
+
+    private final EventMessageSerializer serializer = new EventMessageSerializer(100, 10000);
+
+    private static DeviceNotification notification() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1L);
+        notification.setDeviceId("device<&>");
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date(1500000000000L));
+        notification.setParameters(new JsonStringWrapper("{\"value\":\"\\u00e9\"}"));
+        return notification;
+    }
+
+    private static DeviceCommand command(String status) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(2L);
+        command.setDeviceId("device");
+        command.setCommand("reboot");
+        command.setTimestamp(new Date(1500000000000L));
+        command.setStatus(status);
+        return command;
+    }
+
+    @Test
+    public void shouldMatchNotificationInsertMessage() {
+        assertEquals(ServerResponsesFactory.createNotificationInsertMessage(notification(), 7L).toString(),
+                serializer.createNotificationInsertMessage(notification(), 7L));
+        assertEquals(ServerResponsesFactory.createNotificationInsertMessage(notification(), 8L).toString(),
+                serializer.createNotificationInsertMessage(notification(), 8L));
+    }
+
+    @Test
+    public void shouldMatchCommandMessages() {
+        assertEquals(ServerResponsesFactory.createCommandMessage(command(null), 7L, false).toString(),
+                serializer.createCommandMessage(command(null), 7L, false));
+        assertEquals(ServerResponsesFactory.createCommandMessage(command(null), 7L, true).toString(),
+                serializer.createCommandMessage(command(null), 7L, true));
+    }
+
+    @Test
+    public void shouldSerializeChangedCommandAgain() {
+        serializer.createCommandMessage(command("pending"), 7L, true);
+        assertEquals(ServerResponsesFactory.createCommandMessage(command("done"), 7L, true).toString(),
+                serializer.createCommandMessage(command("done"), 7L, true));
+    }
+
+    @Test
+    public void shouldSerializeCommandWithChangedLastUpdatedAgain() {
+        DeviceCommand before = command("done");
+        before.setLastUpdated(new Date(1500000001000L));
+        serializer.createCommandMessage(before, 7L, true);
+
+        DeviceCommand after = command("done");
+        after.setLastUpdated(new Date(1500000002000L));
+        assertEquals(ServerResponsesFactory.createCommandMessage(after, 7L, true).toString(),
+                serializer.createCommandMessage(after, 7L, true));
+    }
+}
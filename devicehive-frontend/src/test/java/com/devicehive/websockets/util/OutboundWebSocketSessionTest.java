@@ -0,0 +1,158 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OutboundWebSocketSessionTest {
+
+    private WebSocketSession delegate;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor writer = tasks::add;
+
+    @Before
+    public void setUp() {
+        delegate = mock(WebSocketSession.class);
+        when(delegate.isOpen()).thenReturn(true);
+        when(delegate.getId()).thenReturn("session");
+    }
+
+    private OutboundWebSocketSession session(OutboundQueuePolicy policy) {
+        return new OutboundWebSocketSession(delegate, writer, policy, 3, 1024, 10000);
+    }
+
+    private void runWriter() {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> sentPayloads() throws Exception {
+        ArgumentCaptor<WebSocketMessage> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(delegate, atLeastOnce()).sendMessage(captor.capture());
+        return captor.getAllValues().stream().map(m -> (String) m.getPayload()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldSendQueuedMessagesInOrder() throws Exception {
+        OutboundWebSocketSession session = session(OutboundQueuePolicy.DROP_OLDEST);
+        session.sendMessage(new TextMessage("1"));
+        session.sendMessage(new TextMessage("2"), "key");
+        runWriter();
+
+        assertEquals(asList("1", "2"), sentPayloads());
+        assertEquals(0, session.getQueueSize());
+        assertEquals(2, session.getSentCount());
+    }
+
+    @Test
+    public void shouldDropOldestEventsButKeepResponses() throws Exception {
+        OutboundWebSocketSession session = session(OutboundQueuePolicy.DROP_OLDEST);
+        session.sendMessage(new TextMessage("response"));
+        for (int i = 1; i <= 4; i++) {
+            session.sendMessage(new TextMessage("event" + i), "key" + i);
+        }
+        runWriter();
+
+        assertEquals(asList("response", "event3", "event4"), sentPayloads());
+        assertEquals(2, session.getDroppedCount());
+    }
+
+    @Test
+    public void shouldCoalesceEventsOfSameKey() throws Exception {
+        OutboundWebSocketSession session = session(OutboundQueuePolicy.COALESCE);
+        session.sendMessage(new TextMessage("temperature1"), "temperature");
+        session.sendMessage(new TextMessage("humidity1"), "humidity");
+        session.sendMessage(new TextMessage("temperature2"), "temperature");
+        runWriter();
+
+        assertEquals(asList("temperature2", "humidity1"), sentPayloads());
+        assertEquals(1, session.getCoalescedCount());
+    }
+
+    @Test
+    public void shouldDisconnectOnOverflow() throws Exception {
+        OutboundWebSocketSession session = session(OutboundQueuePolicy.DISCONNECT);
+        for (int i = 1; i <= 4; i++) {
+            session.sendMessage(new TextMessage("event" + i), "key" + i);
+        }
+        runWriter();
+
+        verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(delegate, never()).sendMessage(any(WebSocketMessage.class));
+    }
+
+    @Test
+    public void shouldCloseSessionStalledInSend() throws Exception {
+        OutboundWebSocketSession session = new OutboundWebSocketSession(delegate, writer, OutboundQueuePolicy.DROP_OLDEST,
+                3, 1024, 1);
+        assertFalse(session.closeIfStalled());
+        // the watchdog runs on its own thread while the writer is blocked in the send
+        doAnswer(invocation -> {
+            Thread.sleep(10);
+            session.closeIfStalled();
+            return null;
+        }).when(delegate).sendMessage(any(WebSocketMessage.class));
+        session.sendMessage(new TextMessage("1"));
+        runWriter();
+
+        verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    public void shouldDiscardQueueWhenWriterIsShutDown() throws Exception {
+        Executor shutDown = task -> {
+            throw new RejectedExecutionException();
+        };
+        OutboundWebSocketSession session = new OutboundWebSocketSession(delegate, shutDown, OutboundQueuePolicy.DROP_OLDEST,
+                3, 1024, 10000);
+        session.sendMessage(new TextMessage("1"));
+        session.sendMessage(new TextMessage("2"));
+
+        assertEquals(0, session.getQueueSize());
+        verify(delegate, never()).sendMessage(any(WebSocketMessage.class));
+    }
+}
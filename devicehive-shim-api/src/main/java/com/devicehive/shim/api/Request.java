@@ -126,7 +126,7 @@ public class Request {
 
     public static class Builder<T extends Body> {
         private T body;
-        private String correlationId = UUID.randomUUID().toString();
+        private String correlationId;
         private boolean singleReply = true;
         private String partitionKey;
 
@@ -135,6 +135,11 @@ public class Request {
             return this;
         }
 
+        public Builder<T> withCorrelationId(String correlationId) {
+            this.correlationId = correlationId;
+            return this;
+        }
+
         public Builder<T> withSingleReply(boolean singleReply) {
             this.singleReply = singleReply;
             return this;
@@ -146,6 +151,9 @@ public class Request {
         }
 
         public Request build() {
+            if (correlationId == null) {
+                correlationId = UUID.randomUUID().toString();
+            }
             return new Request(
                     body, singleReply,
                     correlationId,
@@ -23,12 +23,19 @@ package com.devicehive.shim.api.client;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public interface RpcClient {
 
     void call(Request request, Consumer<Response> callback);
 
+    /**
+     * Same as {@link #call(Request, Consumer)}, but the callback receives a failed response
+     * if the first response does not arrive within timeout.
+     */
+    void call(Request request, Consumer<Response> callback, long timeout, TimeUnit unit);
+
     void push(Request request);
 
     default void start() { }
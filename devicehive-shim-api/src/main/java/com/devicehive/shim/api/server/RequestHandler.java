@@ -23,8 +23,18 @@ package com.devicehive.shim.api.server;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface RequestHandler {
 
     Response handle(Request request);
 
+    /**
+     * Handles the request without blocking the calling worker thread, the response is sent once the returned
+     * future completes. Handlers waiting for remote calls override it; by default the request is handled in place.
+     */
+    default CompletableFuture<Response> handleAsync(Request request) {
+        return CompletableFuture.completedFuture(handle(request));
+    }
+
 }
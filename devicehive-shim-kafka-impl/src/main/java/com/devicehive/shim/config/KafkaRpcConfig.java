@@ -21,6 +21,7 @@ package com.devicehive.shim.config;
  */
 
 
+import com.devicehive.shim.kafka.serializer.WireFormat;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.beans.factory.annotation.Value;
@@ -85,6 +86,9 @@ public class KafkaRpcConfig {
     @Value("${buffer.memory:33554432}")
     private String bufferMemory;
 
+    @Value("${rpc.wire.format:json}")
+    private String wireFormat;
+
     public Properties producerProps() {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
@@ -142,4 +146,8 @@ public class KafkaRpcConfig {
     public int getConnectionTimeout() {
         return connectionTimeout;
     }
+
+    public WireFormat getWireFormat() {
+        return WireFormat.of(wireFormat);
+    }
 }
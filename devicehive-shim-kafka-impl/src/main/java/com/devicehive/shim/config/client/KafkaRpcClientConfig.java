@@ -24,9 +24,11 @@ import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.client.RpcClient;
 import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.config.server.KafkaRpcServerConfig;
+import com.devicehive.shim.kafka.client.CallbackDispatcher;
 import com.devicehive.shim.kafka.client.KafkaRpcClient;
 import com.devicehive.shim.kafka.client.RequestResponseMatcher;
 import com.devicehive.shim.kafka.client.ServerResponseListener;
+import com.devicehive.shim.kafka.client.TimeoutWheel;
 import com.devicehive.shim.kafka.serializer.RequestSerializer;
 import com.devicehive.shim.kafka.serializer.ResponseSerializer;
 import com.devicehive.shim.kafka.topic.KafkaTopicService;
@@ -92,6 +94,18 @@ public class KafkaRpcClientConfig {
     @Value("${rpc.client.response-consumer.threads:3}")
     private int responseConsumerThreads;
 
+    @Value("${rpc.client.callback.lanes:4}")
+    private int callbackLanes;
+
+    @Value("${rpc.client.callback.queue-size:1024}")
+    private int callbackQueueSize;
+
+    @Value("${rpc.client.callback.overflow-policy:block}")
+    private String callbackOverflowPolicy;
+
+    @Value("${rpc.client.request.timeout:60000}")
+    private long requestTimeout;
+
     @PostConstruct
     private void initializeTopics() {
         kafkaTopicService.createTopic(REQUEST_TOPIC);
@@ -99,20 +113,26 @@ public class KafkaRpcClientConfig {
     }
 
     @Bean
-    public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+    public CallbackDispatcher callbackDispatcher() {
+        return new CallbackDispatcher(callbackLanes, callbackQueueSize, CallbackDispatcher.OverflowPolicy.of(callbackOverflowPolicy));
+    }
+
+    @Bean
+    public RequestResponseMatcher requestResponseMatcher(CallbackDispatcher callbackDispatcher) {
+        return new RequestResponseMatcher(callbackDispatcher, new TimeoutWheel(), requestTimeout);
     }
 
     @Bean
     public Producer<String, Request> kafkaRequestProducer(Gson gson) {
-        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(gson));
+        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(gson, kafkaRpcConfig.getWireFormat()));
     }
 
     @Profile("!test")
     @Bean(destroyMethod = "shutdown")
     public RpcClient rpcClient(Producer<String, Request> requestProducer, RequestResponseMatcher responseMatcher,
                                ServerResponseListener responseListener) {
-        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener);
+        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener,
+                requestTimeout);
         client.start();
         return client;
     }
@@ -126,7 +146,8 @@ public class KafkaRpcClientConfig {
     @Bean(destroyMethod = "shutdown")
     public RpcClient testRpcClient(Producer<String, Request> requestProducer, RequestResponseMatcher responseMatcher,
                                ServerResponseListener responseListener) {
-        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener);
+        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener,
+                requestTimeout);
         client.start();
         return client;
     }
@@ -136,7 +157,7 @@ public class KafkaRpcClientConfig {
         ExecutorService executor = Executors.newFixedThreadPool(responseConsumerThreads);
         Properties consumerProps = kafkaRpcConfig.clientConsumerProps();
         return new ServerResponseListener(RESPONSE_TOPIC, responseConsumerThreads,
-                responseMatcher, consumerProps, executor, new ResponseSerializer(gson));
+                responseMatcher, consumerProps, executor, new ResponseSerializer(gson, kafkaRpcConfig.getWireFormat()));
     }
 
 }
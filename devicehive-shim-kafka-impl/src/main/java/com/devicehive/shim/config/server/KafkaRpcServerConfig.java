@@ -84,7 +84,7 @@ public class KafkaRpcServerConfig {
 
     @Bean(name = "server-producer")
     public Producer<String, Response> kafkaResponseProducer(Gson gson) {
-        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new ResponseSerializer(gson));
+        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new ResponseSerializer(gson, kafkaRpcConfig.getWireFormat()));
     }
 
     @Bean
@@ -133,7 +133,7 @@ public class KafkaRpcServerConfig {
 
     @Bean
     public RequestConsumer requestConsumer(Gson gson) {
-        return new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads, new RequestSerializer(gson));
+        return new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads, new RequestSerializer(gson, kafkaRpcConfig.getWireFormat()));
     }
 
     @Bean
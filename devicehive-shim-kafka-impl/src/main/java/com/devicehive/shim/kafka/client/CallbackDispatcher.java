@@ -0,0 +1,256 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes response callbacks on a fixed number of single-threaded lanes with bounded queues.
+ * Callbacks with the same key (correlation id) always go to the same lane, so responses of one subscription
+ * are delivered in the order they were received.
+ */
+public class CallbackDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(CallbackDispatcher.class);
+
+    /**
+     * What to do with a callback when its lane queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Wait for space in the queue, slowing down the response consumer. The wait ends with
+         * {@link RejectedExecutionException} if the dispatcher is shut down meanwhile.
+         */
+        BLOCK,
+
+        /**
+         * Discard the oldest queued callback of the lane.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Reject the new callback with {@link RejectedExecutionException}.
+         */
+        FAIL;
+
+        public static OverflowPolicy of(String name) {
+            for (OverflowPolicy policy : values()) {
+                if (name != null && policy.name().equalsIgnoreCase(name.trim().replace('-', '_'))) {
+                    return policy;
+                }
+            }
+            return BLOCK;
+        }
+    }
+
+    private static final long SHUTDOWN_CHECK_MILLIS = 100;
+
+    private final Lane[] lanes;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean shutdown;
+
+    public CallbackDispatcher() {
+        this(4, 1024, OverflowPolicy.BLOCK);
+    }
+
+    public CallbackDispatcher(int laneCount, int queueSize, OverflowPolicy overflowPolicy) {
+        if (laneCount <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Lane count and queue size must be positive");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, queueSize);
+            lanes[i].start();
+        }
+    }
+
+    public void dispatch(String key, Runnable callback) {
+        dispatch(key, callback, null);
+    }
+
+    /**
+     * @param onDrop run on the dispatching thread if the callback is later discarded by
+     *               {@link OverflowPolicy#DROP_OLDEST}; a rejected callback is reported by the exception instead
+     * @throws RejectedExecutionException if the queue is full with {@link OverflowPolicy#FAIL} or the dispatcher is
+     *                                    shut down
+     */
+    public void dispatch(String key, Runnable callback, Runnable onDrop) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Callback dispatcher is shut down");
+        }
+        Lane lane = lane(key);
+        Task task = new Task(callback, onDrop);
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    while (!lane.queue.offer(task, SHUTDOWN_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (shutdown) {
+                            throw new RejectedExecutionException("Callback dispatcher is shut down");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for callback queue", e);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!lane.queue.offer(task)) {
+                    Task oldest = lane.queue.poll();
+                    if (oldest != null) {
+                        dropped.increment();
+                        oldest.drop();
+                    }
+                }
+                break;
+            case FAIL:
+                if (!lane.queue.offer(task)) {
+                    dropped.increment();
+                    throw new RejectedExecutionException("Callback queue of lane " + lane.index + " is full");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Queues the callback unless its lane is full, whatever the overflow policy, so that the caller never waits.
+     *
+     * @param onDrop run if the callback is later discarded by {@link OverflowPolicy#DROP_OLDEST}
+     * @return false if the lane is full or the dispatcher is shut down
+     */
+    public boolean tryDispatch(String key, Runnable callback, Runnable onDrop) {
+        return !shutdown && lane(key).queue.offer(new Task(callback, onDrop));
+    }
+
+    private Lane lane(String key) {
+        return lanes[(key != null ? key.hashCode() & Integer.MAX_VALUE : 0) % lanes.length];
+    }
+
+    /**
+     * @return number of callbacks waiting in all lanes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return how long the oldest queued callback has been waiting, in milliseconds
+     */
+    public long getLagMillis() {
+        long now = System.nanoTime();
+        long lag = 0;
+        for (Lane lane : lanes) {
+            Task head = lane.queue.peek();
+            if (head != null) {
+                lag = Math.max(lag, now - head.enqueuedAt);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(lag);
+    }
+
+    /**
+     * @return number of callbacks discarded or rejected because of full queues
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${rpc.client.callback.stats.period:60000}")
+    public void logStats() {
+        logger.info("Callback dispatcher: {} lanes, queued={}, lag={} ms, dropped={}",
+                lanes.length, getQueueDepth(), getLagMillis(), getDroppedCount());
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        for (Lane lane : lanes) {
+            lane.running = false;
+            lane.interrupt();
+        }
+    }
+
+    private static class Task {
+        private final Runnable callback;
+        private final Runnable onDrop;
+        private final long enqueuedAt = System.nanoTime();
+
+        private Task(Runnable callback, Runnable onDrop) {
+            this.callback = callback;
+            this.onDrop = onDrop;
+        }
+
+        private void drop() {
+            if (onDrop == null) {
+                return;
+            }
+            try {
+                onDrop.run();
+            } catch (Exception e) {
+                logger.error("Drop handler failed", e);
+            }
+        }
+    }
+
+    private static class Lane extends Thread {
+        private final int index;
+        private final BlockingQueue<Task> queue;
+        private volatile boolean running = true;
+
+        private Lane(int index, int queueSize) {
+            super("rpc-callback-lane-" + index);
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    // a callback may leave the interrupt flag set, only shutdown stops the lane
+                    continue;
+                }
+                try {
+                    task.callback.run();
+                } catch (Throwable e) {
+                    // the lane must outlive any callback, or dispatches blocked on its queue would wait forever
+                    logger.error("Response callback failed", e);
+                }
+            }
+        }
+    }
+}
@@ -38,19 +38,29 @@ import java.util.function.Consumer;
 public class KafkaRpcClient implements RpcClient {
     private static final Logger logger = LoggerFactory.getLogger(KafkaRpcClient.class);
 
+    public static final long DEFAULT_REQUEST_TIMEOUT = 60000;
+
     private String requestTopic;
     private String replyToTopic;
     private Producer<String, Request> requestProducer;
     private RequestResponseMatcher requestResponseMatcher;
     private ServerResponseListener responseListener;
+    private long requestTimeout;
 
     public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
                           RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener) {
+        this(requestTopic, replyToTopic, requestProducer, requestResponseMatcher, responseListener, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
+                          RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener,
+                          long requestTimeout) {
         this.requestTopic = requestTopic;
         this.replyToTopic = replyToTopic;
         this.requestProducer = requestProducer;
         this.requestResponseMatcher = requestResponseMatcher;
         this.responseListener = responseListener;
+        this.requestTimeout = requestTimeout;
     }
 
     @Override
@@ -61,7 +71,12 @@ public class KafkaRpcClient implements RpcClient {
 
     @Override
     public void call(Request request, Consumer<Response> callback) {
-        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback);
+        call(request, callback, requestTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void call(Request request, Consumer<Response> callback, long timeout, TimeUnit unit) {
+        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback, timeout, unit);
         logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
         push(request);
@@ -78,10 +93,11 @@ public class KafkaRpcClient implements RpcClient {
                 (recordMetadata, e) -> {
                     if (e != null) {
                         logger.error("Send request failed", e);
-                        requestResponseMatcher.removeRequestCallback(request.getCorrelationId());
+                        requestResponseMatcher.failRequest(request.getCorrelationId(), 503,
+                                "Request could not be sent: " + e.getMessage());
+                    } else {
+                        logger.debug("Request {} sent successfully", request.getCorrelationId());
                     }
-                    logger.debug("Request {} sent successfully", request.getCorrelationId());
-                    //TODO [rafa] in case sending fails - we need to notify the caller using the callback passed.
                 });
     }
 
@@ -89,6 +105,7 @@ public class KafkaRpcClient implements RpcClient {
     public void shutdown() {
         requestProducer.close();
         responseListener.shutdown();
+        requestResponseMatcher.shutdown();
     }
 
     private void pingServer() {
@@ -20,64 +20,312 @@ package com.devicehive.shim.kafka.client;
  * #L%
  */
 
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.shim.api.Body;
 import com.devicehive.shim.api.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class RequestResponseMatcher {
     private static final Logger logger = LoggerFactory.getLogger(RequestResponseMatcher.class);
 
-    private final ConcurrentHashMap<String, Consumer<Response>> correlationMap = new ConcurrentHashMap<>();
-    private final Map<Long, Set<String>> subscriptionMap = new HashMap<>();
+    private final ConcurrentHashMap<String, PendingRequest> correlationMap = new ConcurrentHashMap<>();
+    /**
+     * Correlation ids of requests serving each subscription. Updated from callback lanes and from websocket/REST
+     * threads, so every change of a subscription entry is done atomically with {@link ConcurrentHashMap#compute}.
+     */
+    private final ConcurrentHashMap<Long, Set<String>> subscriptionMap = new ConcurrentHashMap<>();
 
-    //TODO [rafa] we do not really need FJP, but rather some other pool implementation. Though FJP looks good, it might be over kill for our use case.
-    private final ForkJoinPool executionPool = new ForkJoinPool();
+    /**
+     * Recently removed subscriptions. A subscribe response handled after the removal makes {@link #addSubscription}
+     * drop the request instead of re-creating the entry. Tombstones expire after twice the longest request timeout, well
+     * past the point after which no subscribe response is delivered.
+     */
+    private final Set<Long> removedSubscriptions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Longest request timeout in milliseconds: the configured one, or a longer one passed to a single request.
+     */
+    private final AtomicLong maxRequestTimeout;
+
+    private final LongAdder expired = new LongAdder();
+
+    private final CallbackDispatcher dispatcher;
+    private final TimeoutWheel timeoutWheel;
+
+    public RequestResponseMatcher() {
+        this(new CallbackDispatcher(), new TimeoutWheel());
+    }
+
+    public RequestResponseMatcher(CallbackDispatcher dispatcher, TimeoutWheel timeoutWheel) {
+        this(dispatcher, timeoutWheel, KafkaRpcClient.DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param requestTimeout default request timeout in milliseconds, see {@code rpc.client.request.timeout}
+     */
+    public RequestResponseMatcher(CallbackDispatcher dispatcher, TimeoutWheel timeoutWheel, long requestTimeout) {
+        this.dispatcher = dispatcher;
+        this.timeoutWheel = timeoutWheel;
+        this.maxRequestTimeout = new AtomicLong(requestTimeout);
+    }
 
     void addRequestCallback(String correlationId, Consumer<Response> callback) {
-        correlationMap.put(correlationId, callback);
+        correlationMap.put(correlationId, new PendingRequest(callback));
+    }
+
+    /**
+     * Registers callback that is failed with 504 error code unless the first response arrives within timeout.
+     * Requests expecting multiple responses (subscriptions) are not limited after the first one.
+     */
+    void addRequestCallback(String correlationId, Consumer<Response> callback, long timeout, TimeUnit unit) {
+        maxRequestTimeout.accumulateAndGet(unit.toMillis(timeout), Math::max);
+        PendingRequest request = new PendingRequest(callback);
+        correlationMap.put(correlationId, request);
+        request.deadline = timeoutWheel.schedule(() -> expire(correlationId, request), timeout, unit);
     }
 
     void removeRequestCallback(String correlationId) {
-        correlationMap.remove(correlationId);
+        PendingRequest request = correlationMap.remove(correlationId);
+        if (request != null) {
+            request.cancelDeadline();
+        }
+    }
+
+    private void expire(String correlationId, PendingRequest request) {
+        if (request.claim(PendingRequest.FAILED)) {
+            expired.increment();
+            logger.warn("Request {} timed out", correlationId);
+            failClaimed(correlationId, request, 504, "Request timed out");
+        }
+    }
+
+    /**
+     * Fails the request with the error unless its first response or another failure has claimed it already, e.g.
+     * when the request could not be sent.
+     */
+    void failRequest(String correlationId, int errorCode, String message) {
+        PendingRequest request = correlationMap.get(correlationId);
+        if (request != null && request.claim(PendingRequest.FAILED)) {
+            failClaimed(correlationId, request, errorCode, message);
+        }
+    }
+
+    private void failClaimed(String correlationId, PendingRequest request, int errorCode, String message) {
+        correlationMap.remove(correlationId, request);
+        request.cancelDeadline();
+        Response response = Response.newBuilder()
+                .withBody(new ErrorResponse(message))
+                .withCorrelationId(correlationId)
+                .buildFailed(errorCode);
+        dispatchFailure(correlationId, request.callback, response);
+    }
+
+    /**
+     * Hands the failure of a request to its lane without waiting, as this runs on the timeout wheel or the producer I/O
+     * thread, neither of which may stall behind a full lane. If the lane is full the callback is completed on a pool thread instead; the request
+     * has received no responses, so there is nothing to keep it in order with.
+     */
+    private void dispatchFailure(String correlationId, Consumer<Response> callback, Response response) {
+        Runnable offLane = () -> ForkJoinPool.commonPool().execute(() -> complete(callback, response));
+        if (!dispatcher.tryDispatch(correlationId, () -> callback.accept(response), offLane)) {
+            logger.warn("Callback queue is full, completing failed request {} off the lane", correlationId);
+            offLane.run();
+        }
     }
 
     void offerResponse(Response response) {
-        Consumer<Response> callback = correlationMap.get(response.getCorrelationId());
-        if (callback != null) {
-            executionPool.execute(() -> {
-                try {
-                    callback.accept(response);
-                } finally {
-                    if (response.isLast()) {
-                        correlationMap.remove(response.getCorrelationId());
+        if (response.getCorrelationIds() != null) {
+            response.getCorrelationIds().forEach(correlationId -> offerResponse(correlationId, forCallback(correlationId, response)));
+        } else {
+            offerResponse(response.getCorrelationId(), response);
+        }
+    }
+
+    /**
+     * Copy of a batched response addressed to a single request, so callbacks do not share the instance and each sees
+     * its own correlation id.
+     */
+    private static Response forCallback(String correlationId, Response batch) {
+        Response.Builder<Body> builder = Response.newBuilder()
+                .withBody(batch.getBody())
+                .withCorrelationId(correlationId)
+                .withLast(batch.isLast());
+        return batch.isFailed() ? builder.buildFailed(batch.getErrorCode()) : builder.buildSuccess();
+    }
+
+    /**
+     * The first response claims the request before dispatch, so a timeout firing meanwhile does nothing, and a response
+     * arriving after the timeout has claimed it is discarded; the callback gets either of them, never both. A response
+     * that is rejected or dropped from a full queue fails the request if the caller is still waiting for it, i.e. it was
+     * the first or the last one; a dropped intermediate subscription event is only counted by the dispatcher.
+     */
+    private void offerResponse(String correlationId, Response response) {
+        PendingRequest request = correlationMap.get(correlationId);
+        if (request != null) {
+            boolean first = request.claim(PendingRequest.RESPONDED);
+            if (!first && request.isFailed()) {
+                logger.debug("Response for {} arrived after the request had failed", correlationId);
+                return;
+            }
+            if (first) {
+                request.cancelDeadline();
+            }
+            Consumer<Response> callback = request.callback;
+            boolean awaited = first || response.isLast();
+            Runnable onDrop = () -> {
+                logger.error("Response for {} was dropped from a full callback queue", correlationId);
+                if (awaited) {
+                    fail(correlationId, request);
+                }
+            };
+            try {
+                dispatcher.dispatch(correlationId, () -> {
+                    try {
+                        callback.accept(response);
+                    } finally {
+                        if (response.isLast()) {
+                            correlationMap.remove(correlationId, request);
+                        }
                     }
+                }, onDrop);
+            } catch (RejectedExecutionException e) {
+                logger.error("Response for {} was rejected: {}", correlationId, e.getMessage());
+                if (awaited) {
+                    fail(correlationId, request);
                 }
-            });
+            }
         } else {
-            logger.warn("Callback was not found for {}. Map size: {}, response: {}", response.getCorrelationId(), correlationMap.size(), response.getBody());
+            logger.warn("Callback was not found for {}. Map size: {}, response: {}", correlationId, correlationMap.size(), response.getBody());
         }
     }
 
-    public void addSubscription(Long subscriptionId, String correlationId) {
-        if (subscriptionMap.containsKey(subscriptionId)) {
-            Set<String> corrIds = subscriptionMap.get(subscriptionId);
-            corrIds.add(correlationId);
-        } else {
-            Set<String> set = new HashSet<>();
-            set.add(correlationId);
-            subscriptionMap.put(subscriptionId, set);
+    /**
+     * Removes the request and completes its callback with 503 error on the calling thread, since the dispatcher did
+     * not take the response.
+     */
+    private void fail(String correlationId, PendingRequest request) {
+        if (!correlationMap.remove(correlationId, request)) {
+            return;
+        }
+        request.state.set(PendingRequest.FAILED);
+        complete(request.callback, Response.newBuilder()
+                .withBody(new ErrorResponse("Response was not delivered, callback queue is full"))
+                .withCorrelationId(correlationId)
+                .buildFailed(503));
+    }
+
+    private static void complete(Consumer<Response> callback, Response response) {
+        try {
+            callback.accept(response);
+        } catch (Exception e) {
+            logger.error("Response callback failed", e);
         }
     }
 
+    public CallbackDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @return number of requests waiting for responses, including active subscriptions
+     */
+    public int getInFlightCount() {
+        return correlationMap.size();
+    }
+
+    /**
+     * @return number of requests failed because of timeout
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${rpc.client.request.stats.period:60000}")
+    public void logStats() {
+        logger.info("Pending requests: in-flight={}, expired={}", getInFlightCount(), getExpiredCount());
+    }
+
+    void shutdown() {
+        timeoutWheel.shutdown();
+        dispatcher.shutdown();
+    }
+
+    public void addSubscription(Long subscriptionId, String correlationId) {
+        subscriptionMap.compute(subscriptionId, (id, corrIds) -> {
+            if (removedSubscriptions.contains(id)) {
+                removeRequestCallback(correlationId);
+                return corrIds;
+            }
+            Set<String> ids = corrIds != null ? corrIds : ConcurrentHashMap.newKeySet();
+            ids.add(correlationId);
+            return ids;
+        });
+    }
+
     public void removeSubscription(Long subscriptionId) {
-        if (subscriptionMap.containsKey(subscriptionId)) {
-            subscriptionMap.get(subscriptionId).forEach(correlationMap::remove);
-            subscriptionMap.remove(subscriptionId);
+        subscriptionMap.compute(subscriptionId, (id, corrIds) -> {
+            if (corrIds != null) {
+                corrIds.forEach(this::removeRequestCallback);
+            }
+            if (removedSubscriptions.add(id)) {
+                timeoutWheel.schedule(() -> removedSubscriptions.remove(id), 2 * maxRequestTimeout.get(), TimeUnit.MILLISECONDS);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes all subscriptions, e.g. of a closing session, together with their correlation entries.
+     */
+    public void removeSubscriptions(Collection<Long> subscriptionIds) {
+        subscriptionIds.forEach(this::removeSubscription);
+    }
+
+    /**
+     * Callback of a request with the state of its first response. The first response and a failure of the request
+     * claim it with a single compare-and-set, so only one of them reaches the callback.
+     */
+    private static class PendingRequest {
+        private static final int AWAITING = 0;
+        private static final int RESPONDED = 1;
+        private static final int FAILED = 2;
+
+        private final Consumer<Response> callback;
+        private final AtomicInteger state = new AtomicInteger(AWAITING);
+        private volatile TimeoutWheel.Timeout deadline;
+
+        private PendingRequest(Consumer<Response> callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * @return true if the request was still waiting for its first response and is now in the given state
+         */
+        private boolean claim(int newState) {
+            return state.compareAndSet(AWAITING, newState);
+        }
+
+        private boolean isFailed() {
+            return state.get() == FAILED;
+        }
+
+        private void cancelDeadline() {
+            TimeoutWheel.Timeout timeout = deadline;
+            if (timeout != null) {
+                timeout.cancel();
+            }
         }
     }
 }
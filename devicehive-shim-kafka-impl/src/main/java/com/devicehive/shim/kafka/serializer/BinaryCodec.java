@@ -0,0 +1,425 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.eventbus.events.CommandEvent;
+import com.devicehive.model.eventbus.events.CommandUpdateEvent;
+import com.devicehive.model.eventbus.events.CommandsUpdateEvent;
+import com.devicehive.model.eventbus.events.NotificationEvent;
+import com.devicehive.model.rpc.*;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.api.Response;
+import com.google.gson.Gson;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binary encoding of shim {@link Request} and {@link Response} messages.
+ *
+ * Every message starts with the {@link #MARKER} byte and the {@link #VERSION} byte, followed by envelope fields and
+ * the body. JSON messages start with '{', so the marker tells the formats apart regardless of the version, and a
+ * message of an unknown version is rejected instead of being parsed as JSON. Bodies of the
+ * notification and command hot path are written field by field and identified by {@link Action} ordinal, the same
+ * key {@link com.devicehive.json.adapters.RuntimeTypeAdapterFactory} uses. Any other body is embedded as Gson JSON,
+ * so new {@link Body} subtypes work without codec changes.
+ */
+public class BinaryCodec {
+
+    public static final byte MARKER = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    private static final byte NO_BODY = 0;
+    private static final byte BINARY_BODY = 1;
+    private static final byte JSON_BODY = 2;
+
+    /**
+     * Exact classes written field by field. Subclasses sharing the same action (e.g. test fixtures) may carry extra
+     * state and therefore go through JSON.
+     */
+    private static final Set<Class<? extends Body>> BINARY_BODIES = new HashSet<>(Arrays.asList(
+            ErrorResponse.class,
+            NotificationEvent.class,
+            NotificationInsertRequest.class,
+            NotificationInsertResponse.class,
+            CommandEvent.class,
+            CommandUpdateEvent.class,
+            CommandsUpdateEvent.class,
+            CommandInsertRequest.class,
+            CommandInsertResponse.class,
+            CommandUpdateRequest.class,
+            CommandsUpdateRequest.class));
+
+    private final Gson gson;
+
+    public BinaryCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * @return true if the message is binary encoded, false if it is JSON
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MARKER;
+    }
+
+    public byte[] encode(Request request) {
+        try {
+            ReusableOutputBuffer bytes = ReusableOutputBuffer.get();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MARKER);
+            out.writeByte(VERSION);
+            out.writeByte(request.getType().ordinal());
+            out.writeBoolean(request.isSingleReplyExpected());
+            writeString(out, request.getCorrelationId());
+            writeString(out, request.getPartitionKey());
+            writeString(out, request.getReplyTo());
+            writeBody(out, request.getBody());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Request serialization failed", e);
+        }
+    }
+
+    public byte[] encode(Response response) {
+        try {
+            ReusableOutputBuffer bytes = ReusableOutputBuffer.get();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MARKER);
+            out.writeByte(VERSION);
+            out.writeBoolean(response.isLast());
+            out.writeBoolean(response.isFailed());
+            out.writeInt(response.getErrorCode());
+            writeString(out, response.getCorrelationId());
+            writeBody(out, response.getBody());
+            writeStrings(out, response.getCorrelationIds());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Response serialization failed", e);
+        }
+    }
+
+    public Request decodeRequest(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            readVersion(in);
+            RequestType type = RequestType.values()[in.readByte()];
+            boolean singleReply = in.readBoolean();
+            String correlationId = readString(in);
+            String partitionKey = readString(in);
+            String replyTo = readString(in);
+            Request request = Request.newBuilder()
+                    .withBody(readBody(in))
+                    .withCorrelationId(correlationId)
+                    .withPartitionKey(partitionKey)
+                    .withSingleReply(singleReply)
+                    .build();
+            request.setReplyTo(replyTo);
+            request.setType(type);
+            return request;
+        } catch (IOException e) {
+            throw new SerializationException("Request deserialization failed", e);
+        }
+    }
+
+    public Response decodeResponse(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            readVersion(in);
+            boolean last = in.readBoolean();
+            boolean failed = in.readBoolean();
+            int errorCode = in.readInt();
+            String correlationId = readString(in);
+            Response.Builder<Body> builder = Response.newBuilder()
+                    .withCorrelationId(correlationId)
+                    .withLast(last)
+                    .withBody(readBody(in))
+                    .withCorrelationIds(readCorrelationIds(in));
+            return failed ? builder.buildFailed(errorCode) : builder.buildSuccess();
+        } catch (IOException e) {
+            throw new SerializationException("Response deserialization failed", e);
+        }
+    }
+
+    private static void readVersion(DataInputStream in) throws IOException {
+        if (in.readByte() != MARKER) {
+            throw new SerializationException("Not a binary message");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new SerializationException("Unsupported binary message version " + version);
+        }
+    }
+
+    private void writeBody(DataOutputStream out, Body body) throws IOException {
+        if (body == null) {
+            out.writeByte(NO_BODY);
+        } else if (BINARY_BODIES.contains(body.getClass())) {
+            out.writeByte(BINARY_BODY);
+            out.writeShort(body.getAction().ordinal());
+            switch (body.getAction()) {
+                case ERROR_RESPONSE:
+                    writeString(out, ((ErrorResponse) body).getMessage());
+                    break;
+                case NOTIFICATION_EVENT:
+                    writeNotification(out, ((NotificationEvent) body).getNotification());
+                    writeLong(out, ((NotificationEvent) body).getNetworkId());
+                    break;
+                case NOTIFICATION_INSERT_REQUEST:
+                    writeNotification(out, ((NotificationInsertRequest) body).getDeviceNotification());
+                    writeLong(out, ((NotificationInsertRequest) body).getNetworkId());
+                    break;
+                case NOTIFICATION_INSERT_RESPONSE:
+                    writeNotification(out, ((NotificationInsertResponse) body).getDeviceNotification());
+                    break;
+                case COMMAND_EVENT:
+                    writeCommand(out, ((CommandEvent) body).getCommand());
+                    writeLong(out, ((CommandEvent) body).getNetworkId());
+                    break;
+                case COMMAND_UPDATE_EVENT:
+                    writeCommand(out, ((CommandUpdateEvent) body).getDeviceCommand());
+                    break;
+                case COMMANDS_UPDATE_EVENT:
+                    writeCommand(out, ((CommandsUpdateEvent) body).getDeviceCommand());
+                    break;
+                case COMMAND_INSERT_REQUEST:
+                    writeCommand(out, ((CommandInsertRequest) body).getDeviceCommand());
+                    writeLong(out, ((CommandInsertRequest) body).getNetworkId());
+                    break;
+                case COMMAND_INSERT_RESPONSE:
+                    writeCommand(out, ((CommandInsertResponse) body).getDeviceCommand());
+                    break;
+                case COMMAND_UPDATE_REQUEST:
+                    writeCommand(out, ((CommandUpdateRequest) body).getDeviceCommand());
+                    break;
+                case COMMANDS_UPDATE_REQUEST:
+                    writeCommand(out, ((CommandsUpdateRequest) body).getDeviceCommand());
+                    break;
+            }
+        } else {
+            out.writeByte(JSON_BODY);
+            writeString(out, gson.toJson(body, Body.class));
+        }
+    }
+
+    private Body readBody(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case NO_BODY:
+                return null;
+            case JSON_BODY:
+                return gson.fromJson(readString(in), Body.class);
+            case BINARY_BODY:
+                break;
+            default:
+                throw new SerializationException("Unknown body encoding " + kind);
+        }
+
+        Action action = Action.values()[in.readShort()];
+        switch (action) {
+            case ERROR_RESPONSE:
+                return new ErrorResponse(readString(in));
+            case NOTIFICATION_EVENT:
+                return new NotificationEvent(readNotification(in), readLong(in));
+            case NOTIFICATION_INSERT_REQUEST:
+                return new NotificationInsertRequest(readNotification(in), readLong(in));
+            case NOTIFICATION_INSERT_RESPONSE:
+                return new NotificationInsertResponse(readNotification(in));
+            case COMMAND_EVENT:
+                return new CommandEvent(readCommand(in), readLong(in));
+            case COMMAND_UPDATE_EVENT:
+                return new CommandUpdateEvent(readCommand(in));
+            case COMMANDS_UPDATE_EVENT:
+                return new CommandsUpdateEvent(readCommand(in));
+            case COMMAND_INSERT_REQUEST:
+                return new CommandInsertRequest(readCommand(in), readLong(in));
+            case COMMAND_INSERT_RESPONSE:
+                return new CommandInsertResponse(readCommand(in));
+            case COMMAND_UPDATE_REQUEST:
+                return new CommandUpdateRequest(readCommand(in));
+            case COMMANDS_UPDATE_REQUEST:
+                return new CommandsUpdateRequest(readCommand(in));
+            default:
+                throw new SerializationException("Action " + action + " has no binary body encoding");
+        }
+    }
+
+    private static void writeNotification(DataOutputStream out, DeviceNotification notification) throws IOException {
+        out.writeBoolean(notification != null);
+        if (notification == null) {
+            return;
+        }
+        writeLong(out, notification.getId());
+        writeString(out, notification.getNotification());
+        writeString(out, notification.getDeviceId());
+        writeDate(out, notification.getTimestamp());
+        writeJson(out, notification.getParameters());
+    }
+
+    private static DeviceNotification readNotification(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        DeviceNotification notification = new DeviceNotification();
+        Long id = readLong(in);
+        if (id != null) {
+            notification.setId(id);
+        }
+        notification.setNotification(readString(in));
+        notification.setDeviceId(readString(in));
+        notification.setTimestamp(readDate(in));
+        notification.setParameters(readJson(in));
+        return notification;
+    }
+
+    private static void writeCommand(DataOutputStream out, DeviceCommand command) throws IOException {
+        out.writeBoolean(command != null);
+        if (command == null) {
+            return;
+        }
+        writeLong(out, command.getId());
+        writeString(out, command.getCommand());
+        writeDate(out, command.getTimestamp());
+        writeDate(out, command.getLastUpdated());
+        writeLong(out, command.getUserId());
+        writeString(out, command.getDeviceId());
+        writeJson(out, command.getParameters());
+        writeLong(out, command.getLifetime() != null ? Long.valueOf(command.getLifetime()) : null);
+        writeString(out, command.getStatus());
+        writeJson(out, command.getResult());
+        out.writeByte(command.getIsUpdated() == null ? -1 : command.getIsUpdated() ? 1 : 0);
+    }
+
+    private static DeviceCommand readCommand(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        DeviceCommand command = new DeviceCommand();
+        Long id = readLong(in);
+        if (id != null) {
+            command.setId(id);
+        }
+        command.setCommand(readString(in));
+        command.setTimestamp(readDate(in));
+        command.setLastUpdated(readDate(in));
+        command.setUserId(readLong(in));
+        command.setDeviceId(readString(in));
+        command.setParameters(readJson(in));
+        Long lifetime = readLong(in);
+        command.setLifetime(lifetime != null ? lifetime.intValue() : null);
+        command.setStatus(readString(in));
+        command.setResult(readJson(in));
+        byte isUpdated = in.readByte();
+        command.setIsUpdated(isUpdated < 0 ? null : isUpdated == 1);
+        return command;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Written after the body with an explicit presence flag.
+     */
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeBoolean(values != null);
+        if (values == null) {
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readCorrelationIds(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            throw new SerializationException("Invalid correlation id count " + size);
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        writeLong(out, value != null ? value.getTime() : null);
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        Long time = readLong(in);
+        return time != null ? new Date(time) : null;
+    }
+
+    private static void writeJson(DataOutputStream out, JsonStringWrapper value) throws IOException {
+        writeString(out, value != null ? value.getJsonString() : null);
+    }
+
+    private static JsonStringWrapper readJson(DataInputStream in) throws IOException {
+        String json = readString(in);
+        return json != null ? new JsonStringWrapper(json) : null;
+    }
+}
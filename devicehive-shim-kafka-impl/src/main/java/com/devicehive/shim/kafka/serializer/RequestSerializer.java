@@ -22,21 +22,31 @@ package com.devicehive.shim.kafka.serializer;
 
 import com.devicehive.shim.api.Request;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.util.Map;
 
 public class RequestSerializer implements Serializer<Request>, Deserializer<Request> {
     private static final Logger logger = LoggerFactory.getLogger(RequestSerializer.class);
 
     private Gson gson;
+    private BinaryCodec binaryCodec;
+    private WireFormat format;
 
     public RequestSerializer(Gson gson) {
+        this(gson, WireFormat.JSON);
+    }
+
+    public RequestSerializer(Gson gson, WireFormat format) {
         this.gson = gson;
+        this.binaryCodec = new BinaryCodec(gson);
+        this.format = format;
     }
 
     @Override
@@ -44,17 +54,27 @@ public class RequestSerializer implements Serializer<Request>, Deserializer<Requ
 
     @Override
     public Request deserialize(String s, byte[] bytes) {
+        if (BinaryCodec.isBinary(bytes)) {
+            return binaryCodec.decodeRequest(bytes);
+        }
         try {
-            return gson.fromJson(new String(bytes, "UTF-8"), Request.class);
-        } catch (UnsupportedEncodingException e) {
+            return gson.fromJson(ReusableInputDecoder.reader(bytes), Request.class);
+        } catch (JsonParseException e) {
             logger.error("Request deserialization failed", e);
-            throw new RuntimeException(e);
+            throw e;
         }
     }
 
     @Override
     public byte[] serialize(String s, Request request) {
-        return gson.toJson(request).getBytes();
+        if (format == WireFormat.BINARY) {
+            return binaryCodec.encode(request);
+        }
+        try {
+            return ReusableOutputBuffer.get().writeJson(gson, request);
+        } catch (IOException e) {
+            throw new SerializationException("Request serialization failed", e);
+        }
     }
 
     @Override
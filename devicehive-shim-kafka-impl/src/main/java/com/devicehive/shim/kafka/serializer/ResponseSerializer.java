@@ -23,21 +23,31 @@ package com.devicehive.shim.kafka.serializer;
 import com.devicehive.shim.api.Response;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.util.Map;
 
 public class ResponseSerializer implements Serializer<Response>, Deserializer<Response> {
     private static final Logger logger = LoggerFactory.getLogger(ResponseSerializer.class);
 
     private Gson gson;
+    private BinaryCodec binaryCodec;
+    private WireFormat format;
 
     public ResponseSerializer(Gson gson) {
+        this(gson, WireFormat.JSON);
+    }
+
+    public ResponseSerializer(Gson gson, WireFormat format) {
         this.gson = gson;
+        this.binaryCodec = new BinaryCodec(gson);
+        this.format = format;
     }
 
     @Override
@@ -45,17 +55,27 @@ public class ResponseSerializer implements Serializer<Response>, Deserializer<Re
 
     @Override
     public Response deserialize(String s, byte[] bytes) {
+        if (BinaryCodec.isBinary(bytes)) {
+            return binaryCodec.decodeResponse(bytes);
+        }
         try {
-            return gson.fromJson(new String(bytes, "UTF-8"), Response.class);
-        } catch (UnsupportedEncodingException e) {
-            logger.error("Request deserialization failed");
-            throw new RuntimeException(e);
+            return gson.fromJson(ReusableInputDecoder.reader(bytes), Response.class);
+        } catch (JsonParseException e) {
+            logger.error("Response deserialization failed", e);
+            throw e;
         }
     }
 
     @Override
     public byte[] serialize(String s, Response response) {
-        return gson.toJson(response).getBytes();
+        if (format == WireFormat.BINARY) {
+            return binaryCodec.encode(response);
+        }
+        try {
+            return ReusableOutputBuffer.get().writeJson(gson, response);
+        } catch (IOException e) {
+            throw new SerializationException("Response serialization failed", e);
+        }
     }
 
     @Override
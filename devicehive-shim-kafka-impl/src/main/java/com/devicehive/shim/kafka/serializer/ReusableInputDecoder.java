@@ -0,0 +1,70 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-thread UTF-8 decoder for deserializers. Messages are decoded into a retained char buffer, so that reading a
+ * message does not allocate a decoder and its buffers each time. Kafka consumers deserialize on the polling thread and
+ * the returned reader is consumed before the next message is read.
+ */
+final class ReusableInputDecoder {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ReusableInputDecoder> DECODERS = ThreadLocal.withInitial(ReusableInputDecoder::new);
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_SIZE);
+
+    private ReusableInputDecoder() {
+    }
+
+    /**
+     * Returns a reader of the UTF-8 text. It is valid until the next call on the same thread.
+     */
+    static Reader reader(byte[] bytes) {
+        return DECODERS.get().decode(bytes);
+    }
+
+    private Reader decode(byte[] bytes) {
+        // UTF-8 never decodes to more chars than bytes
+        if (chars.capacity() < bytes.length
+                || chars.capacity() > MAX_RETAINED_SIZE && bytes.length <= MAX_RETAINED_SIZE) {
+            chars = CharBuffer.allocate(Math.max(bytes.length, INITIAL_SIZE));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(bytes), chars, true);
+        decoder.flush(chars);
+        return new CharArrayReader(chars.array(), 0, chars.position());
+    }
+}
@@ -0,0 +1,82 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-thread output buffer for serializers. Kafka producers serialize on the calling thread, so the buffer and the
+ * UTF-8 writer bound to it are never shared and only the final {@link #toByteArray()} copy is allocated per message.
+ */
+class ReusableOutputBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ReusableOutputBuffer> BUFFERS = ThreadLocal.withInitial(ReusableOutputBuffer::new);
+
+    private Writer writer;
+
+    private ReusableOutputBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * Returns an empty buffer of the current thread. Buffers grown by an occasional large message are dropped,
+     * so that a thread does not hold on to them.
+     */
+    static ReusableOutputBuffer get() {
+        ReusableOutputBuffer buffer = BUFFERS.get();
+        if (buffer.buf.length > MAX_RETAINED_SIZE) {
+            buffer = new ReusableOutputBuffer();
+            BUFFERS.set(buffer);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Writes the value as JSON and returns the encoded bytes. The writer is dropped if serialization fails, as its
+     * encoder may still hold a part of the failed message.
+     */
+    byte[] writeJson(Gson gson, Object value) throws IOException {
+        if (writer == null) {
+            writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+        }
+        boolean written = false;
+        try {
+            gson.toJson(value, writer);
+            writer.flush();
+            written = true;
+        } finally {
+            if (!written) {
+                writer = null;
+            }
+        }
+        return toByteArray();
+    }
+}
@@ -0,0 +1,42 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Encoding used by {@link RequestSerializer} and {@link ResponseSerializer} to write messages into Kafka.
+ * Messages of both formats are always accepted on read, so the format may be switched node by node.
+ */
+public enum WireFormat {
+
+    /**
+     * Gson based encoding, used by all previous releases. Every message starts with '{'.
+     */
+    JSON,
+
+    /**
+     * Compact binary encoding, see {@link BinaryCodec}. Every message starts with {@link BinaryCodec#MARKER}.
+     */
+    BINARY;
+
+    public static WireFormat of(String name) {
+        return name != null && BINARY.name().equalsIgnoreCase(name.trim()) ? BINARY : JSON;
+    }
+}
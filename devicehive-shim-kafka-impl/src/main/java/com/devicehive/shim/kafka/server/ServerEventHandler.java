@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class ServerEventHandler implements MessageDispatcher, WorkHandler<ServerEvent> {
     private static final Logger logger = LoggerFactory.getLogger(ServerEventHandler.class);
@@ -48,7 +49,7 @@ public class ServerEventHandler implements MessageDispatcher, WorkHandler<Server
         final Request request = event.get();
         final String replyTo = request.getReplyTo();
 
-        Response response;
+        CompletableFuture<Response> response;
 
         switch (request.getType()) {
             case clientRequest:
@@ -57,34 +58,47 @@ public class ServerEventHandler implements MessageDispatcher, WorkHandler<Server
                 break;
             case ping:
                 logger.info("Ping request received from {}", replyTo);
-                response = Response.newBuilder().buildSuccess();
+                response = CompletableFuture.completedFuture(Response.newBuilder().buildSuccess());
                 break;
             default:
                 logger.warn("Unknown type of request received {} from client with topic {}, correlationId = {}",
                         request.getType(), replyTo, request.getCorrelationId());
-                response = Response.newBuilder()
-                        .buildFailed(404);
+                response = CompletableFuture.completedFuture(Response.newBuilder()
+                        .buildFailed(404));
         }
 
-        // set correlationId explicitly to prevent missing it in request
-        response.setCorrelationId(request.getCorrelationId());
-        send(replyTo, response);
+        // the worker is released right away, the reply is sent whenever the handler completes
+        response.thenAccept(r -> {
+            // set correlationId explicitly to prevent missing it in request
+            r.setCorrelationId(request.getCorrelationId());
+            send(replyTo, r);
+        }).exceptionally(ex -> {
+            logger.error("Failed to send response to {}, correlationId = {}", replyTo, request.getCorrelationId(), ex);
+            return null;
+        });
     }
 
-    private Response handleClientRequest(Request request) {
-        Response response;
+    private CompletableFuture<Response> handleClientRequest(Request request) {
+        CompletableFuture<Response> response;
         try {
-            response = Optional.ofNullable(requestHandler.handle(request))
+            response = Optional.ofNullable(requestHandler.handleAsync(request))
                     .orElseThrow(() -> new NullPointerException("Response must not be null"));
         } catch (Exception e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((r, ex) -> {
+            if (ex == null && r != null) {
+                return r;
+            }
             logger.error("Unexpected exception occurred during request handling (action='{}', handler='{}')",
-                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(), e);
+                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(),
+                    ex != null ? ex : new NullPointerException("Response must not be null"));
 
-            response = Response.newBuilder()
+            return Response.newBuilder()
                     .withLast(request.isSingleReplyExpected())
                     .buildFailed(500);
-        }
-        return response;
+        });
     }
 
     @Override
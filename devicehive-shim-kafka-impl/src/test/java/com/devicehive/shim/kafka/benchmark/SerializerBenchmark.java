@@ -0,0 +1,121 @@
+package com.devicehive.shim.kafka.benchmark;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.rpc.NotificationInsertRequest;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.serializer.WireFormat;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous String based JSON serialization of {@link RequestSerializer} with the streaming JSON and
+ * binary encodings. Not run as part of the build, start with {@link #main(String[])} from the test classpath.
+ * The GC profiler reports the allocation rate of each path ({@code gc.alloc.rate.norm}, bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    private Gson gson;
+    private RequestSerializer jsonSerializer;
+    private RequestSerializer binarySerializer;
+
+    private Request request;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setUp() {
+        gson = GsonFactory.createGson();
+        jsonSerializer = new RequestSerializer(gson, WireFormat.JSON);
+        binarySerializer = new RequestSerializer(gson, WireFormat.BINARY);
+
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1L);
+        notification.setDeviceId("e50d6085-2aba-48e9-b1c3-73c673e414be");
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date());
+        notification.setParameters(new JsonStringWrapper("{\"temperature\":36.6,\"unit\":\"C\",\"sensor\":\"t1\"}"));
+        request = Request.newBuilder()
+                .withBody(new NotificationInsertRequest(notification))
+                .withPartitionKey(notification.getDeviceId())
+                .build();
+        request.setReplyTo("response_topic_1");
+
+        jsonBytes = jsonSerializer.serialize("request_topic", request);
+        binaryBytes = binarySerializer.serialize("request_topic", request);
+    }
+
+    @Benchmark
+    public byte[] serializeStringJson() {
+        return gson.toJson(request).getBytes();
+    }
+
+    @Benchmark
+    public byte[] serializeStreamingJson() {
+        return jsonSerializer.serialize("request_topic", request);
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+        return binarySerializer.serialize("request_topic", request);
+    }
+
+    @Benchmark
+    public Request deserializeStringJson() throws UnsupportedEncodingException {
+        return gson.fromJson(new String(jsonBytes, "UTF-8"), Request.class);
+    }
+
+    @Benchmark
+    public Request deserializeStreamingJson() {
+        return jsonSerializer.deserialize("request_topic", jsonBytes);
+    }
+
+    @Benchmark
+    public Request deserializeBinary() {
+        return binarySerializer.deserialize("request_topic", binaryBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
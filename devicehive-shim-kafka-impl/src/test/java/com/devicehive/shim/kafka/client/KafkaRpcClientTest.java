@@ -0,0 +1,73 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.serializer.WireFormat;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KafkaRpcClientTest {
+
+    private final MockProducer<String, Request> producer = new MockProducer<>(false, new StringSerializer(),
+            new RequestSerializer(GsonFactory.createGson(), WireFormat.JSON));
+    private final RequestResponseMatcher matcher = new RequestResponseMatcher();
+    private final KafkaRpcClient client = new KafkaRpcClient("request_topic", "response_topic", producer, matcher,
+            null, 60000);
+
+    @After
+    public void tearDown() throws Exception {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void shouldFailCallbackWhenSendFails() throws Exception {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(Request.newBuilder().withBody(new TestRequestBody("body")).build(), future::complete);
+        producer.errorNext(new RuntimeException("broker unavailable"));
+
+        Response response = future.get(5, TimeUnit.SECONDS);
+        assertTrue(response.isFailed());
+        assertEquals(503, response.getErrorCode());
+        assertEquals(0, matcher.getInFlightCount());
+    }
+
+    @Test
+    public void shouldKeepCallbackWhenSendSucceeds() throws Exception {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(Request.newBuilder().withBody(new TestRequestBody("body")).build(), future::complete);
+        producer.completeNext();
+
+        assertFalse(future.isDone());
+        assertEquals(1, matcher.getInFlightCount());
+    }
+}
@@ -0,0 +1,76 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestResponseMatcherStressTest {
+
+    private static final int PAIRS = 4;
+    private static final int SUBSCRIPTIONS = 20000;
+
+    private final RequestResponseMatcher matcher = new RequestResponseMatcher();
+
+    @After
+    public void tearDown() throws Exception {
+        matcher.shutdown();
+    }
+
+    /**
+     * Every subscription is added by one thread and removed by another without coordination, so removals regularly
+     * overtake additions. Nothing is swept at the end: any entry re-created by a late addition is a leak.
+     */
+    @Test
+    public void shouldNotLeakCorrelationIdsWhenRemovalOvertakesAddition() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PAIRS * 2);
+        CyclicBarrier barrier = new CyclicBarrier(PAIRS * 2);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        for (int p = 0; p < PAIRS; p++) {
+            long base = (long) p * SUBSCRIPTIONS;
+            completion.submit(() -> {
+                barrier.await();
+                for (long id = base; id < base + SUBSCRIPTIONS; id++) {
+                    String correlationId = String.valueOf(id);
+                    matcher.addRequestCallback(correlationId, response -> { });
+                    matcher.addSubscription(id, correlationId);
+                }
+                return null;
+            });
+            completion.submit(() -> {
+                barrier.await();
+                for (long id = base; id < base + SUBSCRIPTIONS; id++) {
+                    matcher.removeSubscription(id);
+                }
+                return null;
+            });
+        }
+        for (int i = 0; i < PAIRS * 2; i++) {
+            completion.take().get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(0, matcher.getInFlightCount());
+    }
+}
@@ -0,0 +1,207 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.shim.api.Response;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestResponseMatcherTest {
+
+    private final RequestResponseMatcher matcher = new RequestResponseMatcher();
+
+    @After
+    public void tearDown() throws Exception {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void shouldDeliverOwnResponseToEveryCallbackOfBatch() throws Exception {
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        CompletableFuture<Response> second = new CompletableFuture<>();
+        matcher.addRequestCallback("cid-1", first::complete);
+        matcher.addRequestCallback("cid-2", second::complete);
+
+        ErrorResponse body = new ErrorResponse("batched");
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(body)
+                .withCorrelationId("cid-1")
+                .withCorrelationIds(Arrays.asList("cid-1", "cid-2"))
+                .withLast(false)
+                .buildFailed(404));
+
+        Response firstResponse = first.get(10, TimeUnit.SECONDS);
+        Response secondResponse = second.get(10, TimeUnit.SECONDS);
+        assertNotSame(firstResponse, secondResponse);
+        assertEquals("cid-1", firstResponse.getCorrelationId());
+        assertEquals("cid-2", secondResponse.getCorrelationId());
+        for (Response response : Arrays.asList(firstResponse, secondResponse)) {
+            assertNull(response.getCorrelationIds());
+            assertSame(body, response.getBody());
+            assertFalse(response.isLast());
+            assertTrue(response.isFailed());
+            assertEquals(404, response.getErrorCode());
+        }
+    }
+
+    @Test
+    public void shouldFailRequestWhenResponseIsRejected() throws Exception {
+        RequestResponseMatcher full = new RequestResponseMatcher(
+                new CallbackDispatcher(1, 1, CallbackDispatcher.OverflowPolicy.FAIL), new TimeoutWheel());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            full.getDispatcher().dispatch("blocker", () -> {
+                blocked.countDown();
+                await(release);
+            });
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            full.getDispatcher().dispatch("blocker", () -> { });
+
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            full.addRequestCallback("cid", future::complete, 100, TimeUnit.MILLISECONDS);
+            full.offerResponse(Response.newBuilder()
+                    .withBody(new ErrorResponse("rejected"))
+                    .withCorrelationId("cid")
+                    .buildSuccess());
+
+            Response response = future.getNow(null);
+            assertNotNull(response);
+            assertTrue(response.isFailed());
+            assertEquals(503, response.getErrorCode());
+            assertEquals(0, full.getInFlightCount());
+
+            Thread.sleep(300);
+            assertEquals("deadline of a failed request must not fire", 0, full.getExpiredCount());
+        } finally {
+            release.countDown();
+            full.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDeliverEitherTimeoutOrResponse() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Response> timedOut = new CompletableFuture<>();
+        matcher.addRequestCallback("late", response -> {
+            calls.incrementAndGet();
+            timedOut.complete(response);
+        }, 100, TimeUnit.MILLISECONDS);
+        assertEquals(504, timedOut.get(5, TimeUnit.SECONDS).getErrorCode());
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(new ErrorResponse("late"))
+                .withCorrelationId("late")
+                .buildSuccess());
+
+        CompletableFuture<Response> answered = new CompletableFuture<>();
+        matcher.addRequestCallback("answered", response -> {
+            calls.incrementAndGet();
+            answered.complete(response);
+        }, 100, TimeUnit.MILLISECONDS);
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(new ErrorResponse("in time"))
+                .withCorrelationId("answered")
+                .withLast(false)
+                .buildSuccess());
+        assertFalse(answered.get(5, TimeUnit.SECONDS).isFailed());
+
+        Thread.sleep(300);
+        assertEquals(2, calls.get());
+        assertEquals(1, matcher.getExpiredCount());
+    }
+
+    @Test
+    public void shouldNotBlockTimeoutsBehindFullLane() throws Exception {
+        RequestResponseMatcher full = new RequestResponseMatcher(
+                new CallbackDispatcher(1, 1, CallbackDispatcher.OverflowPolicy.BLOCK), new TimeoutWheel());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            full.getDispatcher().dispatch("blocker", () -> {
+                blocked.countDown();
+                await(release);
+            });
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            full.getDispatcher().dispatch("blocker", () -> { });
+
+            CompletableFuture<Response> first = new CompletableFuture<>();
+            CompletableFuture<Response> second = new CompletableFuture<>();
+            full.addRequestCallback("first", first::complete, 100, TimeUnit.MILLISECONDS);
+            full.addRequestCallback("second", second::complete, 200, TimeUnit.MILLISECONDS);
+
+            assertEquals(504, first.get(5, TimeUnit.SECONDS).getErrorCode());
+            assertEquals(504, second.get(5, TimeUnit.SECONDS).getErrorCode());
+        } finally {
+            release.countDown();
+            full.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDropSubscriptionAddedAfterRemoval() throws Exception {
+        matcher.addRequestCallback("cid", response -> { });
+        matcher.removeSubscription(1L);
+        matcher.addSubscription(1L, "cid");
+        assertEquals(0, matcher.getInFlightCount());
+
+        matcher.addRequestCallback("other", response -> { });
+        matcher.addSubscription(2L, "other");
+        assertEquals(1, matcher.getInFlightCount());
+        matcher.removeSubscription(2L);
+        assertEquals(0, matcher.getInFlightCount());
+    }
+
+    @Test
+    public void shouldKeepTombstonesForTwiceTheRequestTimeout() throws Exception {
+        RequestResponseMatcher shortTimeout = new RequestResponseMatcher(new CallbackDispatcher(),
+                new TimeoutWheel(10, TimeUnit.MILLISECONDS, 8), 100);
+        try {
+            shortTimeout.removeSubscription(1L);
+            shortTimeout.addRequestCallback("early", response -> { });
+            shortTimeout.addSubscription(1L, "early");
+            assertEquals(0, shortTimeout.getInFlightCount());
+
+            Thread.sleep(500);
+            shortTimeout.addRequestCallback("late", response -> { });
+            shortTimeout.addSubscription(1L, "late");
+            assertEquals(1, shortTimeout.getInFlightCount());
+        } finally {
+            shortTimeout.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.model.eventbus.events.CommandEvent;
+import com.devicehive.model.eventbus.events.NotificationEvent;
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.model.rpc.ListNetworkRequest;
+import com.devicehive.model.rpc.NotificationInsertRequest;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.kafka.serializer.BinaryCodec;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.serializer.ResponseSerializer;
+import com.devicehive.shim.kafka.serializer.WireFormat;
+import com.google.gson.Gson;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class BinaryCodecTest {
+
+    private final Gson gson = GsonFactory.createGson();
+    private final RequestSerializer binaryRequests = new RequestSerializer(gson, WireFormat.BINARY);
+    private final RequestSerializer jsonRequests = new RequestSerializer(gson, WireFormat.JSON);
+    private final ResponseSerializer binaryResponses = new ResponseSerializer(gson, WireFormat.BINARY);
+
+    @Test
+    public void shouldRoundTripNotificationRequest() throws Exception {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(42L);
+        notification.setDeviceId("device-1");
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date());
+        notification.setParameters(new JsonStringWrapper("{\"value\":36.6}"));
+
+        Request request = Request.newBuilder()
+                .withBody(new NotificationInsertRequest(notification, 5L))
+                .withPartitionKey("device-1")
+                .build();
+        request.setReplyTo("response_topic");
+
+        byte[] bytes = binaryRequests.serialize("request_topic", request);
+        assertEquals(BinaryCodec.MARKER, bytes[0]);
+        assertEquals(BinaryCodec.VERSION, bytes[1]);
+
+        Request decoded = binaryRequests.deserialize("request_topic", bytes);
+        assertEquals(request.getCorrelationId(), decoded.getCorrelationId());
+        assertEquals("device-1", decoded.getPartitionKey());
+        assertEquals("response_topic", decoded.getReplyTo());
+        assertEquals(RequestType.clientRequest, decoded.getType());
+        assertEquals(notification, decoded.getBody().cast(NotificationInsertRequest.class).getDeviceNotification());
+        assertEquals(Long.valueOf(5L), decoded.getBody().cast(NotificationInsertRequest.class).getNetworkId());
+    }
+
+    @Test
+    public void shouldRoundTripCommandResponse() throws Exception {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(7L);
+        command.setCommand("reboot");
+        command.setDeviceId("device-2");
+        command.setTimestamp(new Date());
+        command.setUserId(1L);
+        command.setLifetime(30);
+        command.setIsUpdated(false);
+
+        Response response = Response.newBuilder()
+                .withBody(new CommandEvent(command))
+                .withCorrelationId("cid")
+                .withLast(true)
+                .buildSuccess();
+
+        Response decoded = binaryResponses.deserialize("response_topic", binaryResponses.serialize("response_topic", response));
+        assertEquals(response, decoded);
+        assertEquals(command, decoded.getBody().cast(CommandEvent.class).getCommand());
+    }
+
+    @Test
+    public void shouldRoundTripFailedResponse() throws Exception {
+        Response response = Response.newBuilder()
+                .withBody(new ErrorResponse("not found"))
+                .withCorrelationId("cid")
+                .buildFailed(404);
+
+        Response decoded = binaryResponses.deserialize("response_topic", binaryResponses.serialize("response_topic", response));
+        assertTrue(decoded.isFailed());
+        assertEquals(404, decoded.getErrorCode());
+        assertEquals("not found", decoded.getBody().cast(ErrorResponse.class).getMessage());
+    }
+
+    @Test
+    public void shouldRoundTripBatchedResponse() throws Exception {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1L);
+        notification.setDeviceId("device-3");
+        notification.setNotification("temperature");
+
+        Response response = Response.newBuilder()
+                .withBody(new NotificationEvent(notification))
+                .withCorrelationId("cid-1")
+                .withCorrelationIds(Arrays.asList("cid-1", "cid-2", "cid-3"))
+                .withLast(false)
+                .buildSuccess();
+
+        Response decoded = binaryResponses.deserialize("response_topic", binaryResponses.serialize("response_topic", response));
+        assertEquals(response, decoded);
+        assertEquals(Arrays.asList("cid-1", "cid-2", "cid-3"), decoded.getCorrelationIds());
+    }
+
+    @Test
+    public void shouldEmbedJsonForOtherBodies() throws Exception {
+        ListNetworkRequest body = new ListNetworkRequest();
+        body.setName("network");
+        Request request = Request.newBuilder().withBody(body).build();
+
+        Request decoded = binaryRequests.deserialize("request_topic", binaryRequests.serialize("request_topic", request));
+        assertEquals("network", decoded.getBody().cast(ListNetworkRequest.class).getName());
+    }
+
+    @Test
+    public void shouldReadBothFormats() throws Exception {
+        Request request = Request.newBuilder().withBody(new ErrorResponse("mixed")).build();
+
+        Request fromJson = binaryRequests.deserialize("request_topic", jsonRequests.serialize("request_topic", request));
+        Request fromBinary = jsonRequests.deserialize("request_topic", binaryRequests.serialize("request_topic", request));
+        assertEquals(request.getCorrelationId(), fromJson.getCorrelationId());
+        assertEquals(request.getCorrelationId(), fromBinary.getCorrelationId());
+    }
+
+    @Test
+    public void shouldRoundTripResponseWithoutCorrelationIds() throws Exception {
+        Response response = Response.newBuilder()
+                .withBody(new ErrorResponse("single"))
+                .withCorrelationId("cid")
+                .buildSuccess();
+
+        Response decoded = binaryResponses.deserialize("response_topic", binaryResponses.serialize("response_topic", response));
+        assertNull(decoded.getCorrelationIds());
+    }
+
+    @Test(expected = SerializationException.class)
+    public void shouldRejectUnknownVersion() throws Exception {
+        byte[] bytes = binaryResponses.serialize("response_topic", Response.newBuilder()
+                .withBody(new ErrorResponse("future"))
+                .buildSuccess());
+        bytes[1] = BinaryCodec.VERSION + 1;
+        binaryResponses.deserialize("response_topic", bytes);
+    }
+}
@@ -0,0 +1,181 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.kafka.client.CallbackDispatcher;
+import com.devicehive.shim.kafka.client.CallbackDispatcher.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CallbackDispatcherTest {
+
+    private CallbackDispatcher dispatcher;
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldKeepOrderPerKey() throws Exception {
+        dispatcher = new CallbackDispatcher(4, 16, OverflowPolicy.BLOCK);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            dispatcher.dispatch("correlation_id", () -> {
+                received.add(value);
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), received.get(i));
+        }
+    }
+
+    @Test
+    public void shouldDropOldestWhenQueueIsFull() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 2, OverflowPolicy.DROP_OLDEST);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch("key", () -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 4; i++) {
+            int value = i;
+            dispatcher.dispatch("key", () -> {
+                received.add(value);
+                done.countDown();
+            });
+        }
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(2, dispatcher.getDroppedCount());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, received.size());
+        assertEquals(Integer.valueOf(2), received.get(0));
+        assertEquals(Integer.valueOf(3), received.get(1));
+    }
+
+    @Test
+    public void shouldRunDropHandlerOfDiscardedCallback() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 1, OverflowPolicy.DROP_OLDEST);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch("key", () -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.dispatch("key", () -> { }, () -> dropped.add("first"));
+        dispatcher.dispatch("key", () -> { }, () -> dropped.add("second"));
+        release.countDown();
+
+        assertEquals(Collections.singletonList("first"), dropped);
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldFailWhenQueueIsFull() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 1, OverflowPolicy.FAIL);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                dispatcher.dispatch("key", () -> await(release));
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldKeepLaneRunningAfterError() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 1, OverflowPolicy.BLOCK);
+        dispatcher.dispatch("key", () -> {
+            throw new AssertionError("callback error");
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch("key", done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectDispatchAfterShutdown() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 1, OverflowPolicy.BLOCK);
+        dispatcher.shutdown();
+        dispatcher.dispatch("key", () -> { });
+    }
+
+    @Test
+    public void shouldReleaseBlockedDispatchOnShutdown() throws Exception {
+        dispatcher = new CallbackDispatcher(1, 1, OverflowPolicy.BLOCK);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch("key", () -> {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("key", () -> { });
+
+        CountDownLatch rejected = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                dispatcher.dispatch("key", () -> { });
+            } catch (RejectedExecutionException e) {
+                rejected.countDown();
+            }
+        });
+        producer.start();
+        dispatcher.shutdown();
+        try {
+            assertTrue(rejected.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.kafka.client.TimeoutWheel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimeoutWheelTest {
+
+    private final TimeoutWheel wheel = new TimeoutWheel(10, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() throws Exception {
+        wheel.shutdown();
+    }
+
+    @Test
+    public void shouldRunExpiredTask() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch marker = new CountDownLatch(1);
+        wheel.schedule(cancelled::countDown, 50, TimeUnit.MILLISECONDS).cancel();
+        wheel.schedule(marker::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(marker.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.getCount());
+    }
+}